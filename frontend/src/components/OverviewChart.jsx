@@ -175,17 +175,18 @@ function OverviewChart({ onNavigate }) {
       try {
         setLoading(true);
         
-        // Fetch data for each payment state separately with frequency parameter
+        // Fetch data for each payment state separately with frequency parameter; the chart
+        // only plots counts, so no transactions
         const [successData, processingData, failedData, pendingData, completedData, refundedData, cancelledData, expiredData, declinedData] = await Promise.all([
-          fetchAgedMetrics('all', 'all', 'success', dateFilter, frequency),
-          fetchAgedMetrics('all', 'all', 'processing', dateFilter, frequency),
-          fetchAgedMetrics('all', 'all', 'failed', dateFilter, frequency),
-          fetchAgedMetrics('all', 'all', 'pending', dateFilter, frequency),
-          fetchAgedMetrics('all', 'all', 'completed', dateFilter, frequency),
-          fetchAgedMetrics('all', 'all', 'refunded', dateFilter, frequency),
-          fetchAgedMetrics('all', 'all', 'cancelled', dateFilter, frequency),
-          fetchAgedMetrics('all', 'all', 'expired', dateFilter, frequency),
-          fetchAgedMetrics('all', 'all', 'declined', dateFilter, frequency)
+          fetchAgedMetrics('all', 'all', 'success', dateFilter, frequency, false),
+          fetchAgedMetrics('all', 'all', 'processing', dateFilter, frequency, false),
+          fetchAgedMetrics('all', 'all', 'failed', dateFilter, frequency, false),
+          fetchAgedMetrics('all', 'all', 'pending', dateFilter, frequency, false),
+          fetchAgedMetrics('all', 'all', 'completed', dateFilter, frequency, false),
+          fetchAgedMetrics('all', 'all', 'refunded', dateFilter, frequency, false),
+          fetchAgedMetrics('all', 'all', 'cancelled', dateFilter, frequency, false),
+          fetchAgedMetrics('all', 'all', 'expired', dateFilter, frequency, false),
+          fetchAgedMetrics('all', 'all', 'declined', dateFilter, frequency, false)
         ]);
         
         // Aggregate all payment state data
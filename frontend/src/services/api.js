@@ -9,6 +9,20 @@ const api = axios.create({
   },
 });
 
+// 503 means the server shed the request (admission control) or a shared computation took too long;
+// retry a couple of times after the Retry-After it asked for.
+const MAX_503_RETRIES = 2;
+
+api.interceptors.response.use(undefined, async (error) => {
+  const { config, response } = error;
+  if (!config || !response || response.status !== 503) throw error;
+  const attempt = config.retryAttempt || 0;
+  if (attempt >= MAX_503_RETRIES) throw error;
+  const retryAfterSeconds = Number(response.headers['retry-after']) || 1;
+  await new Promise((resolve) => setTimeout(resolve, retryAfterSeconds * 1000));
+  return api({ ...config, retryAttempt: attempt + 1 });
+});
+
 export const fetchPayments = async () => {
   const response = await api.get('/payments');
   return response.data;
@@ -29,6 +43,27 @@ export const fetchRecentPayments = async (hours) => {
   return response.data;
 };
 
+// Server-side search with filters, sorting and keyset pagination.
+// Pass the previous response's nextCursor to fetch the following page.
+export const searchPayments = async (filters = {}, cursor = null, limit = 50) => {
+  const params = { limit };
+  Object.entries(filters).forEach(([key, value]) => {
+    if (value !== undefined && value !== null && value !== '' && value !== 'all') params[key] = value;
+  });
+  if (cursor) params.cursor = cursor;
+  const response = await api.get('/payments/search', { params });
+  return response.data;
+};
+
+// Indexed lookup by orderId, transactionId, paymentReferenceId, customerId or email.
+// Partial orderId/email values are matched too; field narrows the search to one identifier.
+export const lookupPayments = async (query, field = null, limit = 20) => {
+  const params = { q: query, limit };
+  if (field) params.field = field;
+  const response = await api.get('/payments/lookup', { params });
+  return response.data;
+};
+
 export const fetchStatistics = async () => {
   const response = await api.get('/payments/statistics');
   return response.data;
@@ -69,18 +104,68 @@ export const fetchOrderTypes = async () => {
   return response.data;
 };
 
-export const fetchAgedMetrics = async (orderType, paymentMethod, paymentState, dateFilter, frequency = 'daily') => {
+// includeTransactions = false returns only the buckets' counts, amounts and sketches
+export const fetchAgedMetrics = async (orderType, paymentMethod, paymentState, dateFilter, frequency = 'daily', includeTransactions = true) => {
   const params = {};
   if (orderType && orderType !== 'all') params.orderType = orderType;
   if (paymentMethod && paymentMethod !== 'all') params.paymentMethod = paymentMethod;
   if (paymentState && paymentState !== 'all') params.paymentState = paymentState;
   if (dateFilter && dateFilter !== 'all') params.dateFilter = dateFilter;
   if (frequency) params.frequency = frequency;
+  if (!includeTransactions) params.includeTransactions = false;
   
   const response = await api.get('/payments/aged-metrics', { params });
   return response.data;
 };
 
+// Aged metrics over a custom range: { from, to } or { last: '6h' }, bucket width
+// ('5m', '1h', '1d', '1w', '1mo') and time zone (defaults to the browser's)
+export const fetchBucketMetrics = async (range = {}, bucket = '1h', filters = {}) => {
+  const params = { bucket, zone: Intl.DateTimeFormat().resolvedOptions().timeZone };
+  Object.entries({ ...range, ...filters }).forEach(([key, value]) => {
+    if (value !== undefined && value !== null && value !== '' && value !== 'all') params[key] = value;
+  });
+  const response = await api.get('/payments/aged-metrics/buckets', { params });
+  return response.data;
+};
+
+// Lifecycle funnel: per-stage counts/amounts, conversion rates and stuck-in-stage aging.
+// groupBy: 'orderType', 'paymentMethod' or omitted for both
+export const fetchFunnel = async (groupBy = null) => {
+  const params = {};
+  if (groupBy) params.groupBy = groupBy;
+  const response = await api.get('/payments/funnel', { params });
+  return response.data;
+};
+
+// Payments flagged or escalated by the stuck-payment detector
+export const fetchStuckPayments = async () => {
+  const response = await api.get('/payments/stuck');
+  return response.data;
+};
+
+// Failure-rate spikes per paymentMethod / cardType (active, recent and per-series state)
+export const fetchAnomalies = async () => {
+  const response = await api.get('/payments/anomalies');
+  return response.data;
+};
+
+// Top-k customers by amount, countries by failures and failure reasons over a window ('1h', '24h', '7d', 'all')
+export const fetchLeaderboards = async (window = '24h', k = 10, board = null) => {
+  const params = { window, k };
+  if (board) params.board = board;
+  const response = await api.get('/payments/leaderboards', { params });
+  return response.data;
+};
+
+// Amount reconciliation: discrepancy summary per type and the largest discrepancies
+export const fetchReconciliation = async (type = null, limit = 100) => {
+  const params = { limit };
+  if (type) params.type = type;
+  const response = await api.get('/payments/reconciliation', { params });
+  return response.data;
+};
+
 // Alert Settings endpoints
 export const fetchAlertSettings = async () => {
   const response = await api.get('/payments/alert-settings');
@@ -0,0 +1,137 @@
+package com.ecommerce.admission;
+
+import com.ecommerce.analytics.DDSketch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Concurrency limit for one endpoint, adjusted from the latencies it observes
+ * (TCP Vegas style). Each completed request compares its latency with the lowest
+ * recently seen: the ratio estimates how many requests are queued behind the
+ * bottleneck (DB connections, CPU). Few queued and the limit in use grows it by one,
+ * too many shrinks it by one, and a failed request (5xx) cuts it multiplicatively.
+ * <p>
+ * Write endpoints are not adapted: their limit stays at the global capacity and
+ * their latency instead drives {@link #backOff(double)} on the lower classes.
+ */
+class AdaptiveConcurrencyLimit {
+    
+    // Vegas thresholds: estimated queued requests below which the limit grows / above which it shrinks
+    private static final double ALPHA = 3;
+    private static final double BETA = 6;
+    // Latency jitter ignored when estimating the queue, so sub-millisecond requests don't look congested
+    private static final long RTT_NOISE_NANOS = 1_000_000;
+    // The minimum latency is re-probed periodically so the baseline follows data growth
+    private static final int PROBE_EVERY = 1000;
+    
+    private final String endpoint;
+    private final RequestPriority priority;
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final DDSketch latencyMillis = new DDSketch();
+    
+    private double limit;
+    private int inFlight;
+    private long minRttNanos = Long.MAX_VALUE;
+    private int samplesSinceProbe;
+    private long admitted;
+    private long rejected;
+    private long failed;
+    private long increases;
+    private long decreases;
+    
+    AdaptiveConcurrencyLimit(String endpoint, RequestPriority priority, int initialLimit,
+                             int minLimit, int maxLimit, double backoffRatio) {
+        this.endpoint = endpoint;
+        this.priority = priority;
+        this.adaptive = priority != RequestPriority.WRITE;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.limit = adaptive ? Math.max(minLimit, Math.min(initialLimit, maxLimit)) : maxLimit;
+    }
+    
+    RequestPriority getPriority() {
+        return priority;
+    }
+    
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            rejected++;
+            return false;
+        }
+        inFlight++;
+        admitted++;
+        return true;
+    }
+    
+    // Counts a request turned away before reaching this endpoint's limit (class capacity exhausted)
+    synchronized void reject() {
+        rejected++;
+    }
+    
+    synchronized void onComplete(long rttNanos, boolean failure) {
+        int used = inFlight--;
+        latencyMillis.add(rttNanos / 1e6);
+        if (failure) failed++;
+        if (!adaptive) return;
+    
+        if (failure) {
+            decrease(limit * backoffRatio);
+            return;
+        }
+        if (++samplesSinceProbe >= PROBE_EVERY) {
+            samplesSinceProbe = 0;
+            minRttNanos = rttNanos;
+        } else {
+            minRttNanos = Math.min(minRttNanos, rttNanos);
+        }
+        double gradient = Math.min(1.0, (double) (minRttNanos + RTT_NOISE_NANOS) / rttNanos);
+        double queued = limit * (1 - gradient);
+        if (queued > BETA) {
+            decrease(limit - 1);
+        } else if (queued < ALPHA && used * 2 >= limit && limit < maxLimit) {
+            // Only grow while the limit is actually being used, or idle endpoints drift to maxLimit
+            limit = Math.min(maxLimit, limit + 1);
+            increases++;
+        }
+    }
+    
+    // Congestion signal from a higher priority class (write latency above its SLO)
+    synchronized void backOff(double ratio) {
+        if (adaptive) decrease(limit * ratio);
+    }
+    
+    private void decrease(double newLimit) {
+        double bounded = Math.max(minLimit, newLimit);
+        if (bounded < limit) {
+            limit = bounded;
+            decreases++;
+        }
+    }
+    
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("endpoint", endpoint);
+        stats.put("priority", priority);
+        stats.put("adaptive", adaptive);
+        stats.put("limit", (int) limit);
+        stats.put("inFlight", inFlight);
+        stats.put("admitted", admitted);
+        stats.put("rejected", rejected);
+        stats.put("failed", failed);
+        stats.put("increases", increases);
+        stats.put("decreases", decreases);
+        stats.put("minLatencyMillis", minRttNanos == Long.MAX_VALUE ? null : round(minRttNanos / 1e6));
+        stats.put("p50Millis", round(latencyMillis.quantile(0.50)));
+        stats.put("p99Millis", round(latencyMillis.quantile(0.99)));
+        return stats;
+    }
+    
+    private static Double round(Double value) {
+        return value == null ? null : Math.round(value * 100) / 100.0;
+    }
+}
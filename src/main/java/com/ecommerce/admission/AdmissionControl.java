@@ -0,0 +1,198 @@
+package com.ecommerce.admission;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether an admission-controlled request may start. Two checks, both failing
+ * fast instead of queueing on Tomcat threads and DB connections:
+ * <ul>
+ *   <li>class capacity: total requests in flight must be below the request's
+ *       {@link RequestPriority#getShare() share} of max-concurrency, so dashboards can
+ *       never take the slots reserved for single-payment reads and writes;</li>
+ *   <li>endpoint limit: an {@link AdaptiveConcurrencyLimit} per endpoint that follows
+ *       the endpoint's own latency.</li>
+ * </ul>
+ * Writes slower than {@code write-latency-slo} (or failing) back off the adaptive
+ * limits of every lower class, at most once per {@code backoff-interval}.
+ * <p>
+ * A request with a coalescing key identical to an admitted one still in flight skips
+ * the endpoint limit, which tracks the computations it would share, but still needs
+ * and holds a class-capacity slot: the shared computation may already have finished,
+ * in which case it runs its own.
+ */
+@Component
+public class AdmissionControl {
+    
+    /**
+     * Held by an admitted request and handed back through {@link #release}.
+     */
+    public static final class Permit {
+        private final AdaptiveConcurrencyLimit limit;
+        private final long startNanos;
+        private final String coalescingKey;
+        // Joined an identical in-flight request: holds a class slot but no endpoint slot
+        private final boolean shared;
+    
+        private Permit(AdaptiveConcurrencyLimit limit, long startNanos, String coalescingKey, boolean shared) {
+            this.limit = limit;
+            this.startNanos = startNanos;
+            this.coalescingKey = coalescingKey;
+            this.shared = shared;
+        }
+    }
+    
+    private final boolean enabled;
+    private final int maxConcurrency;
+    private final int initialLimit;
+    private final int minLimit;
+    private final double backoffRatio;
+    private final long writeSloNanos;
+    private final long backoffIntervalNanos;
+    private final Duration retryAfter;
+    
+    private final Map<String, AdaptiveConcurrencyLimit> limits = new ConcurrentHashMap<>();
+    private final Map<String, Permit> inFlightByKey = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastBackoffNanos = new AtomicLong(System.nanoTime());
+    private final Map<RequestPriority, LongAdder> admittedByClass = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, LongAdder> shedByClass = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, LongAdder> coalescedByClass = new EnumMap<>(RequestPriority.class);
+    private final LongAdder sloBreaches = new LongAdder();
+    private final LongAdder backoffs = new LongAdder();
+    
+    public AdmissionControl(@Value("${payments.admission.enabled:false}") boolean enabled,
+                            @Value("${payments.admission.max-concurrency:150}") int maxConcurrency,
+                            @Value("${payments.admission.initial-limit:40}") int initialLimit,
+                            @Value("${payments.admission.min-limit:1}") int minLimit,
+                            @Value("${payments.admission.backoff-ratio:0.9}") double backoffRatio,
+                            @Value("${payments.admission.write-latency-slo:250ms}") Duration writeLatencySlo,
+                            @Value("${payments.admission.backoff-interval:100ms}") Duration backoffInterval,
+                            @Value("${payments.admission.retry-after:1s}") Duration retryAfter) {
+        this.enabled = enabled;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.initialLimit = initialLimit;
+        this.minLimit = Math.max(1, minLimit);
+        this.backoffRatio = backoffRatio;
+        this.writeSloNanos = writeLatencySlo.toNanos();
+        this.backoffIntervalNanos = backoffInterval.toNanos();
+        this.retryAfter = retryAfter;
+        for (RequestPriority priority : RequestPriority.values()) {
+            admittedByClass.put(priority, new LongAdder());
+            shedByClass.put(priority, new LongAdder());
+            coalescedByClass.put(priority, new LongAdder());
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+    
+    /**
+     * Admits a request to {@code endpoint}, or returns null when it should be shed.
+     * {@code coalescingKey} identifies requests that share one computation, or is null.
+     */
+    public Permit tryAcquire(String endpoint, RequestPriority priority, String coalescingKey) {
+        AdaptiveConcurrencyLimit limit = limits.computeIfAbsent(endpoint, key ->
+            new AdaptiveConcurrencyLimit(key, priority, initialLimit, minLimit, capacity(priority), backoffRatio));
+        if (inFlight.incrementAndGet() > capacity(priority)) {
+            inFlight.decrementAndGet();
+            limit.reject();
+            shedByClass.get(priority).increment();
+            return null;
+        }
+        if (coalescingKey != null && inFlightByKey.containsKey(coalescingKey)) {
+            coalescedByClass.get(priority).increment();
+            return new Permit(limit, System.nanoTime(), coalescingKey, true);
+        }
+        if (!limit.tryAcquire()) {
+            inFlight.decrementAndGet();
+            shedByClass.get(priority).increment();
+            return null;
+        }
+        admittedByClass.get(priority).increment();
+        Permit permit = new Permit(limit, System.nanoTime(), coalescingKey, false);
+        if (coalescingKey != null) {
+            // Two identical requests admitted at once both hold a slot; later ones join the first
+            inFlightByKey.putIfAbsent(coalescingKey, permit);
+        }
+        return permit;
+    }
+    
+    /**
+     * Ends an admitted request; {@code failure} (a 5xx or an exception) counts as overload.
+     */
+    public void release(Permit permit, boolean failure) {
+        inFlight.decrementAndGet();
+        // A joined request's latency is mostly the leader's; only the leader is sampled
+        if (permit.shared) return;
+        if (permit.coalescingKey != null) {
+            inFlightByKey.remove(permit.coalescingKey, permit);
+        }
+        long rttNanos = System.nanoTime() - permit.startNanos;
+        permit.limit.onComplete(rttNanos, failure);
+        if (permit.limit.getPriority() == RequestPriority.WRITE && (failure || rttNanos > writeSloNanos)) {
+            sloBreaches.increment();
+            backOffBelow(RequestPriority.WRITE);
+        }
+    }
+    
+    private void backOffBelow(RequestPriority priority) {
+        long now = System.nanoTime();
+        long last = lastBackoffNanos.get();
+        // A burst of slow writes is one congestion event, not one per request
+        if (now - last < backoffIntervalNanos || !lastBackoffNanos.compareAndSet(last, now)) return;
+        backoffs.increment();
+        for (AdaptiveConcurrencyLimit limit : limits.values()) {
+            if (limit.getPriority().compareTo(priority) > 0) {
+                limit.backOff(backoffRatio);
+            }
+        }
+    }
+    
+    private int capacity(RequestPriority priority) {
+        return Math.max(1, (int) (maxConcurrency * priority.getShare()));
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("maxConcurrency", maxConcurrency);
+        stats.put("inFlight", inFlight.get());
+        stats.put("writeLatencySloMillis", writeSloNanos / 1_000_000);
+        stats.put("writeSloBreaches", sloBreaches.sum());
+        stats.put("backoffs", backoffs.sum());
+    
+        Map<String, Object> classes = new LinkedHashMap<>();
+        for (RequestPriority priority : RequestPriority.values()) {
+            long admitted = admittedByClass.get(priority).sum();
+            long shed = shedByClass.get(priority).sum();
+            Map<String, Object> byClass = new LinkedHashMap<>();
+            byClass.put("capacity", capacity(priority));
+            byClass.put("admitted", admitted);
+            byClass.put("coalesced", coalescedByClass.get(priority).sum());
+            byClass.put("shed", shed);
+            byClass.put("shedRatio", admitted + shed > 0 ? Math.round(shed * 10000.0 / (admitted + shed)) / 10000.0 : 0.0);
+            classes.put(priority.name(), byClass);
+        }
+        stats.put("classes", classes);
+    
+        List<Map<String, Object>> endpoints = new ArrayList<>();
+        limits.values().stream()
+            .sorted(Comparator.comparing(AdaptiveConcurrencyLimit::getPriority))
+            .forEach(limit -> endpoints.add(limit.getStats()));
+        stats.put("endpoints", endpoints);
+        return stats;
+    }
+}
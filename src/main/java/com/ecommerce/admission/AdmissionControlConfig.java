@@ -0,0 +1,24 @@
+package com.ecommerce.admission;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class AdmissionControlConfig implements WebMvcConfigurer {
+    
+    private final AdmissionControl admissionControl;
+    private final ObjectMapper objectMapper;
+    
+    public AdmissionControlConfig(AdmissionControl admissionControl, ObjectMapper objectMapper) {
+        this.admissionControl = admissionControl;
+        this.objectMapper = objectMapper;
+    }
+    
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new AdmissionInterceptor(admissionControl, objectMapper))
+            .addPathPatterns("/api/**");
+    }
+}
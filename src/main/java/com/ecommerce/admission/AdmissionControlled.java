@@ -0,0 +1,25 @@
+package com.ecommerce.admission;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Puts a controller endpoint behind admission control with the given priority.
+ * Endpoints without it (filters, settings, ops endpoints) are never shed.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AdmissionControlled {
+    
+    RequestPriority value();
+    
+    /**
+     * True when identical concurrent requests share one computation (see SingleFlight).
+     * A request identical to one already admitted then joins it without taking an
+     * endpoint slot of its own, so a dashboard fan-out is not shed by the endpoint's
+     * limit for work it doesn't add; it still counts against its class's capacity.
+     */
+    boolean coalesced() default false;
+}
@@ -0,0 +1,84 @@
+package com.ecommerce.admission;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Applies {@link AdmissionControl} to handlers annotated with {@link AdmissionControlled}.
+ * Shed requests get 503 with Retry-After before the handler runs. For
+ * {@link AdmissionControlled#coalesced() coalesced} endpoints, requests with the same
+ * path and parameters (in any order) as one in flight join it instead of taking an
+ * endpoint slot.
+ * <p>
+ * The permit lives in a request attribute so asynchronous handlers (write-behind
+ * createPayment) hold it until the async dispatch completes, not just until the
+ * request thread is released.
+ */
+public class AdmissionInterceptor implements AsyncHandlerInterceptor {
+    
+    private static final String PERMIT_ATTRIBUTE = AdmissionInterceptor.class.getName() + ".permit";
+    
+    private final AdmissionControl admissionControl;
+    private final ObjectMapper objectMapper;
+    
+    public AdmissionInterceptor(AdmissionControl admissionControl, ObjectMapper objectMapper) {
+        this.admissionControl = admissionControl;
+        this.objectMapper = objectMapper;
+    }
+    
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!admissionControl.isEnabled() || request.getDispatcherType() != DispatcherType.REQUEST
+                || !(handler instanceof HandlerMethod method)) {
+            return true;
+        }
+        AdmissionControlled annotation = method.getMethodAnnotation(AdmissionControlled.class);
+        if (annotation == null) return true;
+    
+        String endpoint = request.getMethod() + " " + request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String coalescingKey = annotation.coalesced() ? coalescingKey(request) : null;
+        AdmissionControl.Permit permit = admissionControl.tryAcquire(endpoint, annotation.value(), coalescingKey);
+        if (permit == null) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, admissionControl.getRetryAfter().toSeconds())));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(),
+                Map.of("error", "Overloaded, " + endpoint + " is shedding " + annotation.value() + " requests"));
+            return false;
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, permit);
+        return true;
+    }
+    
+    // Path plus parameters sorted by name, so reordered query strings are the same request
+    private static String coalescingKey(HttpServletRequest request) {
+        StringBuilder key = new StringBuilder(request.getRequestURI());
+        new TreeMap<>(request.getParameterMap()).forEach((name, values) ->
+            key.append('&').append(name).append('=').append(String.join(",", values)));
+        return key.toString();
+    }
+    
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        // Not called on the initial dispatch of an async request, only once its async dispatch ends
+        Object permit = request.getAttribute(PERMIT_ATTRIBUTE);
+        if (permit == null) return;
+        request.removeAttribute(PERMIT_ATTRIBUTE);
+        // 503 is this server's own back-pressure (e.g. a coalesced caller that timed out waiting),
+        // not a sign the endpoint is failing; counting it would cut the limit it is reacting to
+        int status = response.getStatus();
+        boolean failure = ex != null || (status >= 500 && status != HttpStatus.SERVICE_UNAVAILABLE.value());
+        admissionControl.release((AdmissionControl.Permit) permit, failure);
+    }
+}
@@ -0,0 +1,25 @@
+package com.ecommerce.admission;
+
+/**
+ * Admission classes, highest priority first. A class is only admitted while the total
+ * number of admission-controlled requests in flight is below its share of
+ * {@code payments.admission.max-concurrency}, so analytics are shed first and writes last.
+ */
+public enum RequestPriority {
+    // createPayment and status updates
+    WRITE(1.0),
+    // Single-payment reads, e.g. a drill-down from the dashboard
+    READ(0.8),
+    // Dashboards: aged metrics, statistics, leaderboards, list and search pages
+    ANALYTICS(0.5);
+    
+    private final double share;
+    
+    RequestPriority(double share) {
+        this.share = share;
+    }
+    
+    public double getShare() {
+        return share;
+    }
+}
@@ -0,0 +1,60 @@
+package com.ecommerce.analytics;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+/**
+ * Buckets by age relative to a fixed "now": bucket {@code i} holds timestamps that
+ * are {@code i} whole units old, i.e. in (now - (i + 1) units, now - i units].
+ * <p>
+ * The boundaries are computed once per request in the given zone - days, weeks and
+ * months on the local calendar, so "1 day ago" is the same wall-clock time
+ * yesterday even across a DST change - and each timestamp is placed with a binary
+ * search over them instead of per-row calendar arithmetic.
+ */
+public final class AgeBuckets {
+    
+    // Ascending epoch millis; edges[j] = now - (count - j) units, edges[count] = now
+    private final long[] edges;
+    private final int count;
+    
+    private AgeBuckets(long[] edges) {
+        this.edges = edges;
+        this.count = edges.length - 1;
+    }
+    
+    public static AgeBuckets of(Instant now, ZoneId zone, ChronoUnit unit, int count) {
+        ZonedDateTime end = now.atZone(zone);
+        long[] edges = new long[count + 1];
+        for (int age = 0; age <= count; age++) {
+            edges[count - age] = end.minus(age, unit).toInstant().toEpochMilli();
+        }
+        return new AgeBuckets(edges);
+    }
+    
+    public int getCount() {
+        return count;
+    }
+    
+    /**
+     * Exclusive lower bound of the oldest bucket.
+     */
+    public Instant getStart() {
+        return Instant.ofEpochMilli(edges[0]);
+    }
+    
+    /**
+     * Age bucket of the timestamp, or -1 when it is in the future or older than
+     * the last bucket.
+     */
+    public int indexOf(long epochMilli) {
+        int position = Arrays.binarySearch(edges, epochMilli);
+        // Edges are inclusive upper bounds: a timestamp on edges[j] belongs below it
+        int j = position >= 0 ? position - 1 : -position - 2;
+        if (j < 0 || j >= count) return -1;
+        return count - 1 - j;
+    }
+}
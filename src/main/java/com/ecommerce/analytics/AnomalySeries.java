@@ -0,0 +1,179 @@
+package com.ecommerce.analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Per-minute failure rate for one series (e.g. DECLINED payments by CREDIT_CARD):
+ * failures over attempts, with a streaming baseline, in constant memory.
+ * <p>
+ * Each closed minute updates exponentially weighted means of its failures and
+ * attempts, plus seasonal means per UTC hour of day; the baseline rate is their
+ * ratio, so busy minutes weigh more than quiet ones. The seasonal rate is used once
+ * that hour has a full hour of history, otherwise the overall one. The current,
+ * still open minute is scored as events arrive against a binomial with the baseline
+ * rate, so a checkout peak with an unchanged failure rate does not alarm but a
+ * rising rate is visible before the minute ends.
+ */
+public class AnomalySeries {
+    
+    private static final int SEASONS = 24;
+    // Longest gap replayed minute by minute; older history has decayed away by then
+    private static final int MAX_GAP_MINUTES = 24 * 60;
+    
+    private final double alpha;
+    private long minute = -1;
+    private int count;
+    private int attempts;
+    private double failureMean;
+    private double attemptMean;
+    private long samples;
+    private final double[] seasonalFailures = new double[SEASONS];
+    private final double[] seasonalAttempts = new double[SEASONS];
+    private final int[] seasonalSamples = new int[SEASONS];
+    private String lastDetail;
+    
+    public AnomalySeries(double alpha) {
+        this.alpha = alpha;
+    }
+    
+    /**
+     * Counts an attempt and/or a failure in {@code epochMinute}. Events for minutes
+     * that are already closed are ignored.
+     */
+    public synchronized void add(long epochMinute, boolean attempt, boolean failure, String detail) {
+        if (epochMinute < minute) return;
+        advanceTo(epochMinute);
+        if (attempt) attempts++;
+        if (failure) {
+            count++;
+            if (detail != null) lastDetail = detail;
+        }
+    }
+    
+    /**
+     * Closes every minute before {@code epochMinute}, counting quiet minutes as zero.
+     */
+    public synchronized void advanceTo(long epochMinute) {
+        if (minute < 0) {
+            minute = epochMinute;
+            return;
+        }
+        if (epochMinute - minute > MAX_GAP_MINUTES) {
+            close(minute, count, attempts);
+            minute = epochMinute - MAX_GAP_MINUTES;
+            count = 0;
+            attempts = 0;
+        }
+        while (minute < epochMinute) {
+            close(minute, count, attempts);
+            minute++;
+            count = 0;
+            attempts = 0;
+        }
+    }
+    
+    public synchronized int getCount() {
+        return count;
+    }
+    
+    // A failure without a counted attempt (e.g. SUCCESS -> FAILED) is its own attempt
+    public synchronized int getAttempts() {
+        return Math.max(attempts, count);
+    }
+    
+    public synchronized long getMinute() {
+        return minute;
+    }
+    
+    public synchronized long getSamples() {
+        return samples;
+    }
+    
+    public synchronized String getLastDetail() {
+        return lastDetail;
+    }
+    
+    public synchronized double rate() {
+        int n = getAttempts();
+        return n == 0 ? 0.0 : (double) count / n;
+    }
+    
+    public synchronized double expectedRate() {
+        int season = seasonOf(minute);
+        if (seasonalSamples[season] >= 60 && seasonalAttempts[season] > 0) {
+            return seasonalFailures[season] / seasonalAttempts[season];
+        }
+        return attemptMean > 0 ? failureMean / attemptMean : 0.0;
+    }
+    
+    // Failures expected this minute at the baseline rate, for the attempts so far
+    public synchronized double expected() {
+        return getAttempts() * expectedRate();
+    }
+    
+    /**
+     * Binomial z-score of the open minute's failures given its attempts and the
+     * baseline rate. The deviation is floored at 1 so a series whose rate has been
+     * zero does not alarm on its first failure.
+     */
+    public synchronized double score() {
+        int n = getAttempts();
+        double p = expectedRate();
+        double deviation = Math.sqrt(Math.max(n * p * (1 - p), 1.0));
+        return (count - n * p) / deviation;
+    }
+    
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeLong(minute);
+        out.writeInt(count);
+        out.writeInt(attempts);
+        out.writeDouble(failureMean);
+        out.writeDouble(attemptMean);
+        out.writeLong(samples);
+        for (int i = 0; i < SEASONS; i++) {
+            out.writeDouble(seasonalFailures[i]);
+            out.writeDouble(seasonalAttempts[i]);
+            out.writeInt(seasonalSamples[i]);
+        }
+        out.writeUTF(lastDetail != null ? lastDetail : "");
+    }
+    
+    public synchronized void readFrom(DataInput in) throws IOException {
+        minute = in.readLong();
+        count = in.readInt();
+        attempts = in.readInt();
+        failureMean = in.readDouble();
+        attemptMean = in.readDouble();
+        samples = in.readLong();
+        for (int i = 0; i < SEASONS; i++) {
+            seasonalFailures[i] = in.readDouble();
+            seasonalAttempts[i] = in.readDouble();
+            seasonalSamples[i] = in.readInt();
+        }
+        String detail = in.readUTF();
+        lastDetail = detail.isEmpty() ? null : detail;
+    }
+    
+    private void close(long closedMinute, int closedCount, int closedAttempts) {
+        int closedTotal = Math.max(closedAttempts, closedCount);
+        failureMean += alpha * (closedCount - failureMean);
+        attemptMean += alpha * (closedTotal - attemptMean);
+        samples++;
+        
+        int season = seasonOf(closedMinute);
+        if (seasonalSamples[season] == 0) {
+            seasonalFailures[season] = closedCount;
+            seasonalAttempts[season] = closedTotal;
+        } else {
+            seasonalFailures[season] += alpha * (closedCount - seasonalFailures[season]);
+            seasonalAttempts[season] += alpha * (closedTotal - seasonalAttempts[season]);
+        }
+        seasonalSamples[season]++;
+    }
+    
+    private static int seasonOf(long epochMinute) {
+        return (int) ((epochMinute / 60) % SEASONS);
+    }
+}
@@ -0,0 +1,119 @@
+package com.ecommerce.analytics;
+
+import com.ecommerce.model.Payment;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fixed-size sketches kept next to a bucket's count and amount: distinct customers,
+ * IP addresses and countries (HyperLogLog) and the amount distribution (DDSketch).
+ * Bucket sketches merge into totals or wider time ranges without revisiting rows.
+ */
+public class BucketSketches {
+    
+    private final HyperLogLog customers;
+    private final HyperLogLog ipAddresses;
+    private final HyperLogLog countries;
+    private final DDSketch amounts;
+    
+    public BucketSketches() {
+        this(HyperLogLog.DEFAULT_PRECISION);
+    }
+    
+    public BucketSketches(int precision) {
+        this(new HyperLogLog(precision), new HyperLogLog(precision), new HyperLogLog(precision), new DDSketch());
+    }
+    
+    private BucketSketches(HyperLogLog customers, HyperLogLog ipAddresses, HyperLogLog countries, DDSketch amounts) {
+        this.customers = customers;
+        this.ipAddresses = ipAddresses;
+        this.countries = countries;
+        this.amounts = amounts;
+    }
+    
+    public void add(Payment payment) {
+        add(payment.getCustomerId(), payment.getIpAddress(), payment.getCountry(), payment.getAmount());
+    }
+    
+    public void add(String customerId, String ipAddress, String country, Double amount) {
+        customers.add(customerId);
+        ipAddresses.add(ipAddress);
+        countries.add(country);
+        amounts.add(amount);
+    }
+    
+    public BucketSketches merge(BucketSketches other) {
+        customers.merge(other.customers);
+        ipAddresses.merge(other.ipAddresses);
+        countries.merge(other.countries);
+        amounts.merge(other.amounts);
+        return this;
+    }
+    
+    public BucketSketches copy() {
+        return new BucketSketches(customers.copy(), ipAddresses.copy(), countries.copy(), amounts.copy());
+    }
+    
+    public int getPrecision() {
+        return customers.getPrecision();
+    }
+    
+    public long uniqueCustomers() {
+        return customers.cardinality();
+    }
+    
+    public long uniqueIpAddresses() {
+        return ipAddresses.cardinality();
+    }
+    
+    public long uniqueCountries() {
+        return countries.cardinality();
+    }
+    
+    public Double amountQuantile(double q) {
+        return amounts.quantile(q);
+    }
+    
+    // Adds the sketch estimates to a bucket/total map of the aged-metrics response
+    public void writeTo(Map<String, Object> target) {
+        write(target, uniqueCustomers(), uniqueIpAddresses(), uniqueCountries(),
+                amountQuantile(0.50), amountQuantile(0.95), amountQuantile(0.99));
+    }
+    
+    // The estimates of a bucket without payments, without allocating its sketches
+    public static void writeEmptyTo(Map<String, Object> target) {
+        write(target, 0, 0, 0, null, null, null);
+    }
+    
+    public void writeTo(DataOutput out) throws IOException {
+        customers.writeTo(out);
+        ipAddresses.writeTo(out);
+        countries.writeTo(out);
+        amounts.writeTo(out);
+    }
+    
+    public static BucketSketches readFrom(DataInput in) throws IOException {
+        return new BucketSketches(HyperLogLog.readFrom(in), HyperLogLog.readFrom(in), HyperLogLog.readFrom(in), DDSketch.readFrom(in));
+    }
+    
+    private static void write(Map<String, Object> target, long customers, long ipAddresses, long countries,
+                              Double p50, Double p95, Double p99) {
+        target.put("uniqueCustomers", customers);
+        target.put("uniqueIpAddresses", ipAddresses);
+        target.put("uniqueCountries", countries);
+        
+        Map<String, Object> percentiles = new LinkedHashMap<>();
+        percentiles.put("p50", round(p50));
+        percentiles.put("p95", round(p95));
+        percentiles.put("p99", round(p99));
+        target.put("amountPercentiles", percentiles);
+    }
+    
+    private static Double round(Double value) {
+        return value == null ? null : Math.round(value * 100.0) / 100.0;
+    }
+}
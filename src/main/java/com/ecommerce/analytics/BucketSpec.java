@@ -0,0 +1,240 @@
+package com.ecommerce.analytics;
+
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Equal-width time buckets over [from, to) in a time zone, e.g. "last 6 hours at
+ * 5-minute resolution" or "this year by month".
+ * <p>
+ * The first bucket starts at {@code from} truncated to the width's unit in the
+ * zone. The bucket of a timestamp is computed, not searched: minutes and hours are
+ * elapsed time, so the index is a division of epoch millis; days, weeks and months
+ * follow the local calendar, so the index is a division of the local epoch day or
+ * month number. Either way it is O(1) per row.
+ */
+public final class BucketSpec {
+    
+    public enum Unit {
+        MINUTES,
+        HOURS,
+        DAYS,
+        WEEKS,
+        MONTHS
+    }
+    
+    private static final Pattern WIDTH = Pattern.compile("(\\d{1,6})\\s*(m|min|h|d|w|mo)");
+    private static final DateTimeFormatter MINUTE_LABEL = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final DateTimeFormatter MONTH_LABEL = DateTimeFormatter.ofPattern("yyyy-MM");
+    
+    private final ZoneId zone;
+    private final int width;
+    private final Unit unit;
+    private final ZonedDateTime start;
+    private final long startMillis;
+    private final long endMillis;
+    private final int bucketCount;
+    // Minutes/hours: bucket width in millis. Days/weeks: width in days. Months: width in months.
+    private final long step;
+    // Days/weeks: local epoch day of the first bucket. Months: local month number (year * 12 + month - 1).
+    private final long startIndex;
+    
+    private BucketSpec(Instant from, Instant to, int width, Unit unit, ZoneId zone) {
+        this.zone = zone;
+        this.width = width;
+        this.unit = unit;
+        this.start = align(from.atZone(zone), unit);
+        this.startMillis = start.toInstant().toEpochMilli();
+        this.endMillis = to.toEpochMilli();
+        
+        switch (unit) {
+            case MINUTES:
+                step = width * 60_000L;
+                startIndex = 0;
+                break;
+            case HOURS:
+                step = width * 3_600_000L;
+                startIndex = 0;
+                break;
+            case DAYS:
+                step = width;
+                startIndex = start.toLocalDate().toEpochDay();
+                break;
+            case WEEKS:
+                step = width * 7L;
+                startIndex = start.toLocalDate().toEpochDay();
+                break;
+            default:
+                step = width;
+                startIndex = monthNumber(start.toLocalDate());
+        }
+        
+        long lastBucket = indexOfUnbounded(endMillis - 1);
+        this.bucketCount = (int) Math.min(lastBucket + 1, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * @param width e.g. "5m", "1h", "1d", "2w", "1mo"
+     */
+    public static BucketSpec of(Instant from, Instant to, String width, ZoneId zone) {
+        if (!to.isAfter(from)) throw new IllegalArgumentException("'to' must be after 'from'");
+        Matcher matcher = parseWidth(width);
+        return new BucketSpec(from, to, Integer.parseInt(matcher.group(1)), unitOf(matcher.group(2)), zone);
+    }
+    
+    /**
+     * The instant {@code span} (same syntax as a bucket width, e.g. "6h" or "3mo")
+     * before {@code to}, counting days and months on the zone's calendar.
+     */
+    public static Instant before(Instant to, String span, ZoneId zone) {
+        Matcher matcher = parseWidth(span);
+        long amount = Long.parseLong(matcher.group(1));
+        ZonedDateTime end = to.atZone(zone);
+        switch (unitOf(matcher.group(2))) {
+            case MINUTES:
+                return end.minusMinutes(amount).toInstant();
+            case HOURS:
+                return end.minusHours(amount).toInstant();
+            case DAYS:
+                return end.minusDays(amount).toInstant();
+            case WEEKS:
+                return end.minusWeeks(amount).toInstant();
+            default:
+                return end.minusMonths(amount).toInstant();
+        }
+    }
+    
+    private static Matcher parseWidth(String width) {
+        Matcher matcher = WIDTH.matcher(width == null ? "" : width.trim().toLowerCase(Locale.ROOT));
+        if (!matcher.matches() || Integer.parseInt(matcher.group(1)) <= 0) {
+            throw new IllegalArgumentException("Expected a positive width like 5m, 1h, 1d, 1w or 1mo: " + width);
+        }
+        return matcher;
+    }
+    
+    private static Unit unitOf(String suffix) {
+        switch (suffix) {
+            case "m":
+            case "min":
+                return Unit.MINUTES;
+            case "h":
+                return Unit.HOURS;
+            case "d":
+                return Unit.DAYS;
+            case "w":
+                return Unit.WEEKS;
+            default:
+                return Unit.MONTHS;
+        }
+    }
+    
+    public int getBucketCount() {
+        return bucketCount;
+    }
+    
+    public ZoneId getZone() {
+        return zone;
+    }
+    
+    public String getWidth() {
+        switch (unit) {
+            case MINUTES:
+                return width + "m";
+            case HOURS:
+                return width + "h";
+            case DAYS:
+                return width + "d";
+            case WEEKS:
+                return width + "w";
+            default:
+                return width + "mo";
+        }
+    }
+    
+    /**
+     * Bucket of the timestamp, or -1 when it is outside [from, to).
+     */
+    public int indexOf(long epochMilli) {
+        if (epochMilli < startMillis || epochMilli >= endMillis) return -1;
+        return (int) indexOfUnbounded(epochMilli);
+    }
+    
+    public ZonedDateTime bucketStart(int index) {
+        switch (unit) {
+            case MINUTES:
+            case HOURS:
+                return Instant.ofEpochMilli(startMillis + index * step).atZone(zone);
+            case DAYS:
+            case WEEKS:
+                return start.toLocalDate().plusDays(index * step).atStartOfDay(zone);
+            default:
+                return start.toLocalDate().plusMonths(index * step).atStartOfDay(zone);
+        }
+    }
+    
+    /**
+     * End of the bucket, exclusive; the last bucket ends at {@code to}.
+     */
+    public ZonedDateTime bucketEnd(int index) {
+        ZonedDateTime next = bucketStart(index + 1);
+        return next.toInstant().toEpochMilli() > endMillis ? Instant.ofEpochMilli(endMillis).atZone(zone) : next;
+    }
+    
+    public String label(int index) {
+        ZonedDateTime bucketStart = bucketStart(index);
+        switch (unit) {
+            case MINUTES:
+            case HOURS:
+                return bucketStart.format(MINUTE_LABEL);
+            case DAYS:
+                return bucketStart.toLocalDate().toString();
+            case WEEKS:
+                return "Week of " + bucketStart.toLocalDate();
+            default:
+                return bucketStart.format(MONTH_LABEL);
+        }
+    }
+    
+    private long indexOfUnbounded(long epochMilli) {
+        switch (unit) {
+            case MINUTES:
+            case HOURS:
+                return (epochMilli - startMillis) / step;
+            case DAYS:
+            case WEEKS:
+                return Math.floorDiv(localEpochDay(epochMilli) - startIndex, step);
+            default:
+                return Math.floorDiv(monthNumber(LocalDate.ofEpochDay(localEpochDay(epochMilli))) - startIndex, step);
+        }
+    }
+    
+    private long localEpochDay(long epochMilli) {
+        long epochSecond = Math.floorDiv(epochMilli, 1000);
+        int offset = zone.getRules().getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+        return Math.floorDiv(epochSecond + offset, 86_400);
+    }
+    
+    private static long monthNumber(LocalDate date) {
+        return date.getYear() * 12L + date.getMonthValue() - 1;
+    }
+    
+    private static ZonedDateTime align(ZonedDateTime from, Unit unit) {
+        switch (unit) {
+            case MINUTES:
+                return from.truncatedTo(ChronoUnit.MINUTES);
+            case HOURS:
+                return from.truncatedTo(ChronoUnit.HOURS);
+            case DAYS:
+                return from.toLocalDate().atStartOfDay(from.getZone());
+            case WEEKS:
+                return from.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay(from.getZone());
+            default:
+                return from.toLocalDate().withDayOfMonth(1).atStartOfDay(from.getZone());
+        }
+    }
+}
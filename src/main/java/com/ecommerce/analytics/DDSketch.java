@@ -0,0 +1,131 @@
+package com.ecommerce.analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * DDSketch quantile sketch for non-negative values such as payment amounts.
+ * Values are counted in logarithmic bins of ratio gamma = (1 + a) / (1 - a), so any
+ * reported quantile is within relative accuracy a of the true value. Memory grows
+ * with the log of the value range, not with the number of values, and two sketches
+ * with the same accuracy merge by adding bin counts.
+ */
+public class DDSketch {
+    
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    
+    // Values below this are counted as zero
+    private static final double MIN_INDEXABLE = 1e-9;
+    
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final TreeMap<Integer, Long> bins = new TreeMap<>();
+    private long zeroCount;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    
+    public DDSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+    
+    public DDSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+    
+    public void add(Double value) {
+        if (value == null || value.isNaN() || value < 0) return;
+        if (value < MIN_INDEXABLE) {
+            zeroCount++;
+        } else {
+            bins.merge((int) Math.ceil(Math.log(value) / logGamma), 1L, Long::sum);
+        }
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+    
+    public void merge(DDSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with different accuracy");
+        }
+        for (Map.Entry<Integer, Long> bin : other.bins.entrySet()) {
+            bins.merge(bin.getKey(), bin.getValue(), Long::sum);
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+    
+    /**
+     * Returns the estimated value at quantile q (0..1), or null when the sketch is empty.
+     */
+    public Double quantile(double q) {
+        if (count == 0) return null;
+        if (q <= 0) return min;
+        if (q >= 1) return max;
+        
+        long rank = (long) Math.floor(q * (count - 1));
+        if (rank < zeroCount) return 0.0;
+        long seen = zeroCount;
+        for (Map.Entry<Integer, Long> bin : bins.entrySet()) {
+            seen += bin.getValue();
+            if (seen > rank) {
+                // Midpoint of the bin in the relative-error sense, clamped to the observed range
+                double value = 2 * Math.pow(gamma, bin.getKey()) / (gamma + 1);
+                return Math.max(min, Math.min(max, value));
+            }
+        }
+        return max;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+    
+    public DDSketch copy() {
+        DDSketch copy = new DDSketch(relativeAccuracy);
+        copy.merge(this);
+        return copy;
+    }
+    
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeDouble(relativeAccuracy);
+        out.writeLong(zeroCount);
+        out.writeLong(count);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeInt(bins.size());
+        for (Map.Entry<Integer, Long> bin : bins.entrySet()) {
+            out.writeInt(bin.getKey());
+            out.writeLong(bin.getValue());
+        }
+    }
+    
+    public static DDSketch readFrom(DataInput in) throws IOException {
+        DDSketch sketch = new DDSketch(in.readDouble());
+        sketch.zeroCount = in.readLong();
+        sketch.count = in.readLong();
+        sketch.min = in.readDouble();
+        sketch.max = in.readDouble();
+        int bins = in.readInt();
+        for (int i = 0; i < bins; i++) {
+            sketch.bins.put(in.readInt(), in.readLong());
+        }
+        return sketch;
+    }
+}
@@ -0,0 +1,208 @@
+package com.ecommerce.analytics;
+
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentStatus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Running lifecycle funnel for one group of payments (e.g. one orderType and
+ * paymentMethod). Stage counts and amounts are additive, so groups can be seeded
+ * from a grouped query, updated per payment and merged into coarser rollups.
+ * <p>
+ * Payments stuck in a non-terminal stage are tracked by the time they entered it,
+ * as a sorted multiset, which gives both the average and the oldest age in the
+ * stage without rescanning. Rollups only need those two, so merging copies each
+ * stage's count, entry-time sum and oldest entry rather than the whole multiset.
+ */
+public class FunnelAccumulator {
+    
+    public enum Stage {
+        APPROVAL,
+        APPROVED,
+        DEPOSITING,
+        DEPOSITED,
+        REFUND,
+        REFUNDED
+    }
+    
+    public enum StuckStage {
+        APPROVAL,
+        DEPOSIT,
+        REVERSAL,
+        REFUND
+    }
+    
+    private long payments;
+    private final long[] stageCounts = new long[Stage.values().length];
+    private final double[] stageAmounts = new double[Stage.values().length];
+    private long reversalCount;
+    private double reversalAmount;
+    private final Map<StuckStage, TreeMap<Long, Integer>> stuck = new EnumMap<>(StuckStage.class);
+    private final Map<StuckStage, Long> stuckEnteredSum = new EnumMap<>(StuckStage.class);
+    private final Map<StuckStage, Long> stuckCounts = new EnumMap<>(StuckStage.class);
+    
+    /**
+     * Non-terminal stage a payment is waiting in, or null if it is not waiting.
+     * Deposit, refund and reversal stages come from orderStatus; approval from status.
+     */
+    public static StuckStage stuckStageOf(PaymentStatus status, String orderStatus) {
+        if (orderStatus != null) {
+            if (orderStatus.equals("DEPOSIT_PENDING") || orderStatus.equals("DEPOSIT_PROCESSING")) return StuckStage.DEPOSIT;
+            if (orderStatus.equals("REFUND_PENDING") || orderStatus.equals("REFUND_PROCESSING")) return StuckStage.REFUND;
+            if (orderStatus.equals("REVERSE_APPROVAL_PENDING")) return StuckStage.REVERSAL;
+        }
+        if (status == PaymentStatus.PENDING || status == PaymentStatus.PROCESSING) return StuckStage.APPROVAL;
+        return null;
+    }
+    
+    public synchronized void addPayment(Payment payment) {
+        payments++;
+        addStage(Stage.APPROVAL, payment.getApprovalAmount());
+        addStage(Stage.APPROVED, payment.getApprovedAmount());
+        addStage(Stage.DEPOSITING, payment.getDepositingAmount());
+        addStage(Stage.DEPOSITED, payment.getDepositedAmount());
+        addStage(Stage.REFUND, payment.getRefundAmount());
+        addStage(Stage.REFUNDED, payment.getRefundedAmount());
+        if (payment.getReversingApprovalAmount() != null && payment.getReversingApprovalAmount() > 0) {
+            reversalCount++;
+            reversalAmount += payment.getReversingApprovalAmount();
+        }
+    }
+    
+    /**
+     * Adds pre-aggregated totals, e.g. one row of a grouped query.
+     */
+    public synchronized void addTotals(long paymentCount, long[] counts, double[] amounts,
+                                       long reversals, double reversalSum) {
+        payments += paymentCount;
+        for (int i = 0; i < stageCounts.length; i++) {
+            stageCounts[i] += counts[i];
+            stageAmounts[i] += amounts[i];
+        }
+        reversalCount += reversals;
+        reversalAmount += reversalSum;
+    }
+    
+    /**
+     * Writes the stage totals (not the stuck entries, which are owned by whoever
+     * tracks the individual payments) in the layout {@link #readTotals} expects.
+     */
+    public synchronized void writeTotals(DataOutput out) throws IOException {
+        out.writeLong(payments);
+        out.writeInt(stageCounts.length);
+        for (int i = 0; i < stageCounts.length; i++) {
+            out.writeLong(stageCounts[i]);
+            out.writeDouble(stageAmounts[i]);
+        }
+        out.writeLong(reversalCount);
+        out.writeDouble(reversalAmount);
+    }
+    
+    public void readTotals(DataInput in) throws IOException {
+        long paymentCount = in.readLong();
+        int stages = in.readInt();
+        if (stages != stageCounts.length) throw new IOException("Expected " + stageCounts.length + " funnel stages, got " + stages);
+        long[] counts = new long[stages];
+        double[] amounts = new double[stages];
+        for (int i = 0; i < stages; i++) {
+            counts[i] = in.readLong();
+            amounts[i] = in.readDouble();
+        }
+        addTotals(paymentCount, counts, amounts, in.readLong(), in.readDouble());
+    }
+    
+    public synchronized void enterStuck(StuckStage stage, long enteredAtEpochSecond) {
+        stuck.computeIfAbsent(stage, s -> new TreeMap<>()).merge(enteredAtEpochSecond, 1, Integer::sum);
+        stuckEnteredSum.merge(stage, enteredAtEpochSecond, Long::sum);
+        stuckCounts.merge(stage, 1L, Long::sum);
+    }
+    
+    public synchronized void leaveStuck(StuckStage stage, long enteredAtEpochSecond) {
+        TreeMap<Long, Integer> entries = stuck.get(stage);
+        if (entries == null || !entries.containsKey(enteredAtEpochSecond)) return;
+        entries.computeIfPresent(enteredAtEpochSecond, (k, n) -> n > 1 ? n - 1 : null);
+        stuckEnteredSum.merge(stage, -enteredAtEpochSecond, Long::sum);
+        stuckCounts.merge(stage, -1L, Long::sum);
+    }
+    
+    /**
+     * Adds this group's totals and stuck summary to a rollup. The rollup is for
+     * reporting only: it keeps each stage's oldest entry, not every entry, so
+     * {@link #leaveStuck} must not be called on it.
+     */
+    public synchronized void mergeInto(FunnelAccumulator target) {
+        target.addTotals(payments, stageCounts, stageAmounts, reversalCount, reversalAmount);
+        for (Map.Entry<StuckStage, TreeMap<Long, Integer>> entry : stuck.entrySet()) {
+            long count = stuckCounts.getOrDefault(entry.getKey(), 0L);
+            if (count == 0) continue;
+            target.addStuckSummary(entry.getKey(), count, stuckEnteredSum.getOrDefault(entry.getKey(), 0L),
+                    entry.getValue().firstKey());
+        }
+    }
+    
+    private synchronized void addStuckSummary(StuckStage stage, long count, long enteredSum, long oldest) {
+        stuck.computeIfAbsent(stage, s -> new TreeMap<>()).merge(oldest, 1, Integer::sum);
+        stuckEnteredSum.merge(stage, enteredSum, Long::sum);
+        stuckCounts.merge(stage, count, Long::sum);
+    }
+    
+    public synchronized Map<String, Object> toMap(long nowEpochSecond) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("payments", payments);
+        
+        List<Map<String, Object>> stages = new ArrayList<>();
+        long previous = payments;
+        for (Stage stage : Stage.values()) {
+            long count = stageCounts[stage.ordinal()];
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("stage", stage.name());
+            s.put("count", count);
+            s.put("amount", round(stageAmounts[stage.ordinal()]));
+            s.put("conversionFromPrevious", rate(count, previous));
+            s.put("conversionFromStart", rate(count, payments));
+            stages.add(s);
+            previous = count;
+        }
+        result.put("stages", stages);
+        
+        Map<String, Object> reversals = new LinkedHashMap<>();
+        reversals.put("count", reversalCount);
+        reversals.put("amount", round(reversalAmount));
+        result.put("reversals", reversals);
+        
+        List<Map<String, Object>> stuckStages = new ArrayList<>();
+        for (StuckStage stage : StuckStage.values()) {
+            TreeMap<Long, Integer> entries = stuck.get(stage);
+            long count = stuckCounts.getOrDefault(stage, 0L);
+            if (count == 0 || entries == null || entries.isEmpty()) continue;
+            double averageEntered = (double) stuckEnteredSum.getOrDefault(stage, 0L) / count;
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("stage", stage.name());
+            s.put("count", count);
+            s.put("averageAgeHours", round((nowEpochSecond - averageEntered) / 3600.0));
+            s.put("oldestAgeHours", round((nowEpochSecond - entries.firstKey()) / 3600.0));
+            stuckStages.add(s);
+        }
+        result.put("stuck", stuckStages);
+        return result;
+    }
+    
+    private void addStage(Stage stage, Double amount) {
+        if (amount != null && amount > 0) {
+            stageCounts[stage.ordinal()]++;
+            stageAmounts[stage.ordinal()] += amount;
+        }
+    }
+    
+    private static Double rate(long count, long base) {
+        return base > 0 ? Math.round(count * 10000.0 / base) / 100.0 : 0.0;
+    }
+    
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
@@ -0,0 +1,35 @@
+package com.ecommerce.analytics;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64-bit hashing for the sketches. String.hashCode() is only 32 bits and poorly
+ * mixed for short, similar keys such as "CUST00001", so values are hashed with
+ * FNV-1a over their UTF-8 bytes and finished with the MurmurHash3 fmix64 step.
+ */
+final class Hashing {
+    
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    private Hashing() {
+    }
+    
+    static long hash64(String value) {
+        long h = FNV_OFFSET;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= FNV_PRIME;
+        }
+        return fmix64(h);
+    }
+    
+    static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,153 @@
+package com.ecommerce.analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Weighted Space-Saving summary of the heaviest keys in a stream, e.g. customers by
+ * amount. At most {@code capacity} keys are tracked; a new key replaces the lightest
+ * one and inherits its weight as error, so every reported weight is an overestimate
+ * by at most {@code error}, and any key heavier than total / capacity is guaranteed
+ * to be tracked. Top-k reads walk the counters in weight order, so they cost O(k).
+ * <p>
+ * Summaries with the same capacity merge (used to combine time buckets into a window).
+ */
+public class SpaceSaving {
+    
+    private static final Comparator<Counter> BY_WEIGHT = Comparator
+            .comparingDouble((Counter c) -> c.weight)
+            .thenComparing(c -> c.key);
+    
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    private final TreeSet<Counter> byWeight = new TreeSet<>(BY_WEIGHT);
+    
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.capacity = capacity;
+    }
+    
+    public void add(String key, double weight) {
+        if (key == null || !(weight > 0)) return;
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            byWeight.remove(counter);
+            counter.weight += weight;
+            byWeight.add(counter);
+        } else if (counters.size() < capacity) {
+            put(new Counter(key, weight, 0));
+        } else {
+            Counter lightest = byWeight.pollFirst();
+            counters.remove(lightest.key);
+            put(new Counter(key, lightest.weight + weight, lightest.weight));
+        }
+    }
+    
+    /**
+     * Adds {@code other} into this summary. A key missing from a full summary may have
+     * weighed up to that summary's lightest counter, so that much is added to its
+     * weight and error, keeping weights overestimates.
+     */
+    public void merge(SpaceSaving other) {
+        if (other.capacity != capacity) {
+            throw new IllegalArgumentException("Cannot merge summaries with different capacity");
+        }
+        double thisFloor = floor();
+        double otherFloor = other.floor();
+        Map<String, Counter> merged = new HashMap<>();
+        for (Counter c : counters.values()) {
+            Counter o = other.counters.get(c.key);
+            merged.put(c.key, o != null
+                    ? new Counter(c.key, c.weight + o.weight, c.error + o.error)
+                    : new Counter(c.key, c.weight + otherFloor, c.error + otherFloor));
+        }
+        for (Counter o : other.counters.values()) {
+            if (!merged.containsKey(o.key)) {
+                merged.put(o.key, new Counter(o.key, o.weight + thisFloor, o.error + thisFloor));
+            }
+        }
+        
+        counters.clear();
+        byWeight.clear();
+        merged.values().stream()
+                .sorted(BY_WEIGHT.reversed())
+                .limit(capacity)
+                .forEach(this::put);
+    }
+    
+    /**
+     * Up to {@code k} heaviest keys, heaviest first, each as key, weight and error.
+     */
+    public List<Map<String, Object>> top(int k) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        Iterator<Counter> it = byWeight.descendingIterator();
+        while (it.hasNext() && result.size() < k) {
+            Counter c = it.next();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("key", c.key);
+            entry.put("value", Math.round(c.weight * 100.0) / 100.0);
+            entry.put("error", Math.round(c.error * 100.0) / 100.0);
+            result.add(entry);
+        }
+        return result;
+    }
+    
+    public SpaceSaving copy() {
+        SpaceSaving copy = new SpaceSaving(capacity);
+        counters.values().forEach(c -> copy.put(new Counter(c.key, c.weight, c.error)));
+        return copy;
+    }
+    
+    public boolean isEmpty() {
+        return counters.isEmpty();
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(counters.size());
+        for (Counter c : counters.values()) {
+            out.writeUTF(c.key);
+            out.writeDouble(c.weight);
+            out.writeDouble(c.error);
+        }
+    }
+    
+    public static SpaceSaving readFrom(DataInput in, int capacity) throws IOException {
+        SpaceSaving summary = new SpaceSaving(capacity);
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            Counter c = new Counter(in.readUTF(), in.readDouble(), in.readDouble());
+            if (summary.counters.size() < capacity) summary.put(c);
+        }
+        return summary;
+    }
+    
+    // Upper bound on the weight of any key this summary does not track
+    private double floor() {
+        return counters.size() < capacity ? 0 : byWeight.first().weight;
+    }
+    
+    private void put(Counter counter) {
+        counters.put(counter.key, counter);
+        byWeight.add(counter);
+    }
+    
+    private static final class Counter {
+        final String key;
+        double weight;
+        final double error;
+        
+        Counter(String key, double weight, double error) {
+            this.key = key;
+            this.weight = weight;
+            this.error = error;
+        }
+    }
+}
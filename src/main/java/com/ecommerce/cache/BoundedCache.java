@@ -0,0 +1,112 @@
+package com.ecommerce.cache;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded LRU cache with a time-to-live. Entries beyond {@code capacity} evict
+ * the least recently used one; entries older than {@code ttl} are dropped on access.
+ * <p>
+ * With a version order, {@link #put} keeps an entry that is newer than the value
+ * offered. A reader that loaded a row just before a concurrent write committed then
+ * can't overwrite the written-through value with the one it read.
+ */
+public class BoundedCache<K, V> {
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long loadedAtNanos;
+
+        private Entry(V value, long loadedAtNanos) {
+            this.value = value;
+            this.loadedAtNanos = loadedAtNanos;
+        }
+    }
+
+    private final String name;
+    private final int capacity;
+    private final long ttlNanos;
+    private final Comparator<? super V> versionOrder;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private long hits;
+    private long misses;
+    private long puts;
+    private long staleIgnored;
+    private long invalidations;
+    private long evictions;
+    private long expirations;
+
+    public BoundedCache(String name, int capacity, Duration ttl, Comparator<? super V> versionOrder) {
+        this.name = name;
+        this.capacity = Math.max(1, capacity);
+        this.ttlNanos = ttl.toNanos();
+        this.versionOrder = versionOrder;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() <= BoundedCache.this.capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value, or null when absent or expired.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && isExpired(entry, System.nanoTime())) {
+            entries.remove(key);
+            expirations++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        long now = System.nanoTime();
+        Entry<V> existing = entries.get(key);
+        if (existing != null && versionOrder != null && !isExpired(existing, now)
+                && versionOrder.compare(existing.value, value) > 0) {
+            staleIgnored++;
+            return;
+        }
+        entries.put(key, new Entry<>(value, now));
+        puts++;
+    }
+
+    public synchronized void invalidate(K key) {
+        if (entries.remove(key) != null) invalidations++;
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return now - entry.loadedAtNanos > ttlNanos;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        long lookups = hits + misses;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("size", entries.size());
+        stats.put("capacity", capacity);
+        stats.put("ttlSeconds", ttlNanos / 1_000_000_000L);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRatio", lookups > 0 ? Math.round(hits * 10000.0 / lookups) / 10000.0 : 0.0);
+        stats.put("puts", puts);
+        stats.put("staleIgnored", staleIgnored);
+        stats.put("invalidations", invalidations);
+        stats.put("evictions", evictions);
+        stats.put("expirations", expirations);
+        return stats;
+    }
+}
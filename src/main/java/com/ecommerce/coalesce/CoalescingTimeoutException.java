@@ -0,0 +1,16 @@
+package com.ecommerce.coalesce;
+
+import java.time.Duration;
+
+/**
+ * Thrown to a caller that waited longer than the timeout for an identical in-flight
+ * request to finish; the caller should retry shortly.
+ */
+public class CoalescingTimeoutException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public CoalescingTimeoutException(String name, Duration timeout) {
+        super("Timed out after " + timeout.toMillis() + "ms waiting for an in-flight " + name + " request");
+    }
+}
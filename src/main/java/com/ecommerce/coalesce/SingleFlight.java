@@ -0,0 +1,86 @@
+package com.ecommerce.coalesce;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent identical requests into one computation. The first caller for
+ * a key runs it on its own thread; callers arriving while it runs wait for and share
+ * its result (or exception) instead of repeating the work. Nothing is cached: once
+ * the computation finishes the next caller starts a fresh one.
+ * <p>
+ * Waiters give up after {@code timeout} with a {@link CoalescingTimeoutException};
+ * the running computation is not affected.
+ */
+public class SingleFlight<K, V> {
+    
+    private final String name;
+    private final Duration timeout;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    
+    public SingleFlight(String name, Duration timeout) {
+        this.name = name;
+        this.timeout = timeout;
+    }
+    
+    public V execute(K key, Supplier<V> computation) {
+        requests.increment();
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing == null) {
+            executions.increment();
+            try {
+                V value = computation.get();
+                flight.complete(value);
+                return value;
+            } catch (RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, flight);
+            }
+        }
+        
+        coalesced.increment();
+        try {
+            return existing.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            throw new CoalescingTimeoutException(name, timeout);
+        } catch (ExecutionException e) {
+            // Same failure the leader saw, e.g. IllegalArgumentException for bad parameters
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for an in-flight " + name + " request", e);
+        }
+    }
+    
+    /**
+     * Request counts and the coalescing ratio: the share of requests answered by
+     * another request's computation.
+     */
+    public Map<String, Object> getStats() {
+        long total = requests.sum();
+        long shared = coalesced.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", total);
+        stats.put("executions", executions.sum());
+        stats.put("coalesced", shared);
+        stats.put("timeouts", timeouts.sum());
+        stats.put("inFlight", inFlight.size());
+        stats.put("coalescingRatio", total > 0 ? Math.round(shared * 10000.0 / total) / 10000.0 : 0.0);
+        stats.put("timeoutMillis", timeout.toMillis());
+        return stats;
+    }
+}
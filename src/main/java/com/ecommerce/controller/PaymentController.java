@@ -1,17 +1,44 @@
 package com.ecommerce.controller;
 
-import com.ecommerce.dto.PaymentStatistics;
+import com.ecommerce.admission.AdmissionControl;
+import com.ecommerce.admission.AdmissionControlled;
+import com.ecommerce.admission.RequestPriority;
+import com.ecommerce.coalesce.CoalescingTimeoutException;
+import com.ecommerce.datasource.ReadWriteRoutingDataSource;
+import com.ecommerce.dto.BucketMetricsQuery;
+import com.ecommerce.dto.PaymentPage;
+import com.ecommerce.dto.PaymentSearchCriteria;
+import com.ecommerce.dto.PaymentSummary;
+import com.ecommerce.eventlog.PaymentEventLog;
+import com.ecommerce.index.PaymentLookupIndex;
+import com.ecommerce.ingest.IngestionQueueFullException;
+import com.ecommerce.ingest.IngestionStoppedException;
+import com.ecommerce.ingest.PaymentIngestionPipeline;
 import com.ecommerce.model.Payment;
 import com.ecommerce.model.PaymentStatus;
 import com.ecommerce.model.PaymentMethod;
 import com.ecommerce.model.AlertSettings;
+import com.ecommerce.partition.PaymentPartitions;
+import com.ecommerce.reconciliation.ReconciliationService;
 import com.ecommerce.service.PaymentService;
+import com.ecommerce.service.AnomalyDetectionService;
+import com.ecommerce.service.LeaderboardService;
+import com.ecommerce.service.StuckPaymentDetector;
 import com.ecommerce.service.AlertSettingsService;
+import com.ecommerce.service.FunnelAnalyticsService;
+import com.ecommerce.snapshot.AnalyticsSnapshotService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @RestController
@@ -19,20 +46,61 @@ import java.util.stream.Collectors;
 @CrossOrigin(origins = "*")
 public class PaymentController {
     
+    // Filter options only change with a deploy; browsers reuse them instead of asking on every dashboard load
+    private static final CacheControl FILTER_OPTIONS_CACHE = CacheControl.maxAge(1, TimeUnit.HOURS);
+    
     private final PaymentService paymentService;
     private final AlertSettingsService alertSettingsService;
+    private final FunnelAnalyticsService funnelAnalyticsService;
+    private final StuckPaymentDetector stuckPaymentDetector;
+    private final AnomalyDetectionService anomalyDetectionService;
+    private final LeaderboardService leaderboardService;
+    private final ReconciliationService reconciliationService;
+    private final PaymentIngestionPipeline ingestionPipeline;
+    private final PaymentEventLog paymentEventLog;
+    private final AnalyticsSnapshotService analyticsSnapshotService;
+    private final PaymentPartitions paymentPartitions;
+    private final ObjectProvider<ReadWriteRoutingDataSource> routingDataSource;
+    private final AdmissionControl admissionControl;
+    private final ObjectMapper objectMapper;
     
-    public PaymentController(PaymentService paymentService, AlertSettingsService alertSettingsService) {
+    public PaymentController(PaymentService paymentService, AlertSettingsService alertSettingsService,
+                             FunnelAnalyticsService funnelAnalyticsService,
+                             StuckPaymentDetector stuckPaymentDetector,
+                             AnomalyDetectionService anomalyDetectionService,
+                             LeaderboardService leaderboardService,
+                             ReconciliationService reconciliationService,
+                             PaymentIngestionPipeline ingestionPipeline,
+                             PaymentEventLog paymentEventLog,
+                             AnalyticsSnapshotService analyticsSnapshotService,
+                             PaymentPartitions paymentPartitions,
+                             ObjectProvider<ReadWriteRoutingDataSource> routingDataSource,
+                             AdmissionControl admissionControl,
+                             ObjectMapper objectMapper) {
         this.paymentService = paymentService;
         this.alertSettingsService = alertSettingsService;
+        this.funnelAnalyticsService = funnelAnalyticsService;
+        this.stuckPaymentDetector = stuckPaymentDetector;
+        this.anomalyDetectionService = anomalyDetectionService;
+        this.leaderboardService = leaderboardService;
+        this.reconciliationService = reconciliationService;
+        this.ingestionPipeline = ingestionPipeline;
+        this.paymentEventLog = paymentEventLog;
+        this.analyticsSnapshotService = analyticsSnapshotService;
+        this.paymentPartitions = paymentPartitions;
+        this.routingDataSource = routingDataSource;
+        this.admissionControl = admissionControl;
+        this.objectMapper = objectMapper;
     }
     
     @GetMapping
-    public List<Payment> getAllPayments() {
+    @AdmissionControlled(RequestPriority.ANALYTICS)
+    public List<PaymentSummary> getAllPayments() {
         return paymentService.getAllPayments();
     }
     
     @GetMapping("/{id}")
+    @AdmissionControlled(RequestPriority.READ)
     public ResponseEntity<Payment> getPaymentById(@PathVariable Long id) {
         Optional<Payment> payment = paymentService.getPaymentById(id);
         return payment.map(ResponseEntity::ok)
@@ -40,27 +108,129 @@ public class PaymentController {
     }
     
     @GetMapping("/status/{status}")
-    public List<Payment> getPaymentsByStatus(@PathVariable PaymentStatus status) {
+    @AdmissionControlled(RequestPriority.ANALYTICS)
+    public List<PaymentSummary> getPaymentsByStatus(@PathVariable PaymentStatus status) {
         return paymentService.getPaymentsByStatus(status);
     }
     
     @GetMapping("/recent/{hours}")
-    public List<Payment> getRecentPayments(@PathVariable int hours) {
+    @AdmissionControlled(RequestPriority.ANALYTICS)
+    public List<PaymentSummary> getRecentPayments(@PathVariable int hours) {
         return paymentService.getRecentPayments(hours);
     }
     
+    @GetMapping("/search")
+    @AdmissionControlled(RequestPriority.ANALYTICS)
+    public ResponseEntity<?> searchPayments(PaymentSearchCriteria criteria) {
+        try {
+            PaymentPage page = paymentService.searchPayments(criteria);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/lookup")
+    @AdmissionControlled(RequestPriority.READ)
+    public ResponseEntity<?> lookupPayments(
+            @RequestParam String q,
+            @RequestParam(required = false) String field,
+            @RequestParam(required = false, defaultValue = "20") int limit) {
+        PaymentLookupIndex.Field lookupField = null;
+        if (field != null && !field.isBlank() && !field.equalsIgnoreCase("all")) {
+            try {
+                lookupField = PaymentLookupIndex.Field.valueOf(
+                    field.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Unknown lookup field: " + field));
+            }
+        }
+        return ResponseEntity.ok(paymentService.lookupPayments(q, lookupField, limit));
+    }
+    
     @GetMapping("/statistics")
-    public PaymentStatistics getPaymentStatistics() {
-        return paymentService.getPaymentStatistics();
+    @AdmissionControlled(value = RequestPriority.ANALYTICS, coalesced = true)
+    public ResponseEntity<?> getPaymentStatistics() {
+        try {
+            return ResponseEntity.ok(paymentService.getPaymentStatistics());
+        } catch (CoalescingTimeoutException e) {
+            return coalescingTimeout(e);
+        }
     }
     
     @PostMapping
-    public ResponseEntity<Payment> createPayment(@RequestBody Payment payment) {
-        Payment created = paymentService.createPayment(payment);
-        return ResponseEntity.status(HttpStatus.CREATED).body(created);
+    @AdmissionControlled(RequestPriority.WRITE)
+    public CompletableFuture<ResponseEntity<Payment>> createPayment(@RequestBody Payment payment) {
+        if (!ingestionPipeline.isEnabled()) {
+            Payment created = paymentService.createPayment(payment);
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.CREATED).body(created));
+        }
+        
+        // Write-behind mode: the request thread is released while the batch commits
+        try {
+            return ingestionPipeline.submit(payment)
+                .thenApply(created -> ResponseEntity.status(HttpStatus.CREATED).body(created));
+        } catch (IngestionQueueFullException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, ingestionPipeline.getRetryAfter().toSeconds())))
+                .build());
+        } catch (IngestionStoppedException e) {
+            // Shutting down: another instance can take the write
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        }
+    }
+    
+    // Tail of the payment event log, e.g. for a consumer catching up from its last sequence
+    @GetMapping("/events")
+    public ResponseEntity<Map<String, Object>> getPaymentEvents(
+            @RequestParam(required = false, defaultValue = "1") long fromSequence,
+            @RequestParam(required = false, defaultValue = "100") int limit) {
+        List<Map<String, Object>> events = new ArrayList<>();
+        long next = paymentEventLog.replay(fromSequence, Math.max(1, Math.min(limit, 1000)), record -> {
+            Payment payment = record.payment(objectMapper);
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("sequence", record.getSequence());
+            event.put("timestamp", record.getTimestampMillis());
+            event.put("type", record.getType());
+            event.put("paymentId", record.getPaymentId());
+            event.put("previousStatus", record.getPreviousStatus());
+            event.put("status", payment.getStatus());
+            event.put("payment", payment);
+            events.add(event);
+        });
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("events", events);
+        result.put("nextSequence", next);
+        result.put("lastSequence", paymentEventLog.lastSequence());
+        result.put("deliveredThrough", paymentEventLog.deliveredThrough());
+        return ResponseEntity.ok(result);
+    }
+    
+    @GetMapping("/ingest/stats")
+    public ResponseEntity<Map<String, Object>> getIngestionStats() {
+        return ResponseEntity.ok(ingestionPipeline.getStats());
+    }
+    
+    @GetMapping("/snapshot")
+    public ResponseEntity<Map<String, Object>> getSnapshotStats() {
+        return ResponseEntity.ok(analyticsSnapshotService.getStats());
+    }
+    
+    // Saves analytics state now instead of waiting for the next scheduled snapshot
+    @PostMapping("/snapshot")
+    public ResponseEntity<Map<String, Object>> takeSnapshot() {
+        try {
+            return ResponseEntity.ok(analyticsSnapshotService.snapshot());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", e.getMessage()));
+        }
     }
     
     @PutMapping("/{id}/status")
+    @AdmissionControlled(RequestPriority.WRITE)
     public ResponseEntity<Payment> updatePaymentStatus(
             @PathVariable Long id,
             @RequestParam PaymentStatus status,
@@ -80,16 +250,129 @@ public class PaymentController {
     }
     
     @GetMapping("/aged-metrics")
-    public ResponseEntity<Map<String, Object>> getAgedMetrics(
+    @AdmissionControlled(value = RequestPriority.ANALYTICS, coalesced = true)
+    public ResponseEntity<?> getAgedMetrics(
             @RequestParam(required = false) String orderType,
             @RequestParam(required = false) String paymentMethod,
             @RequestParam(required = false) String paymentState,
             @RequestParam(required = false) String dateFilter,
-            @RequestParam(required = false, defaultValue = "daily") String frequency) {
+            @RequestParam(required = false, defaultValue = "daily") String frequency,
+            @RequestParam(required = false, defaultValue = "rows") String layout,
+            @RequestParam(required = false) String zone,
+            @RequestParam(required = false, defaultValue = "true") boolean includeTransactions) {
         
-        Map<String, Object> metrics = paymentService.getAgedMetrics(
-            orderType, paymentMethod, paymentState, dateFilter, frequency);
-        return ResponseEntity.ok(metrics);
+        try {
+            Map<String, Object> metrics = paymentService.getAgedMetrics(
+                orderType, paymentMethod, paymentState, dateFilter, frequency, layout, zone, includeTransactions);
+            return ResponseEntity.ok(metrics);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(Map.of("error", e.getMessage()));
+        } catch (CoalescingTimeoutException e) {
+            return coalescingTimeout(e);
+        }
+    }
+    
+    // How many /aged-metrics and /statistics requests shared another request's computation
+    @GetMapping("/coalescing")
+    public ResponseEntity<Map<String, Object>> getCoalescingStats() {
+        return ResponseEntity.ok(paymentService.getCoalescingStats());
+    }
+    
+    // Hits, misses and evictions of the single-payment cache behind /{id} and /lookup
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> getPaymentCacheStats() {
+        return ResponseEntity.ok(paymentService.getPaymentCacheStats());
+    }
+    
+    // Admitted and shed requests per priority class, and each endpoint's current concurrency limit
+    @GetMapping("/admission")
+    public ResponseEntity<Map<String, Object>> getAdmissionStats() {
+        return ResponseEntity.ok(admissionControl.getStats());
+    }
+    
+    // Same back-off as a request shed by admission control
+    private ResponseEntity<Map<String, String>> coalescingTimeout(CoalescingTimeoutException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, admissionControl.getRetryAfter().toSeconds())))
+            .body(Map.of("error", e.getMessage()));
+    }
+    
+    // Aged metrics over any range, bucket width and time zone, e.g. ?last=6h&bucket=5m&zone=America/New_York
+    @GetMapping("/aged-metrics/buckets")
+    @AdmissionControlled(RequestPriority.ANALYTICS)
+    public ResponseEntity<?> getBucketMetrics(BucketMetricsQuery query) {
+        try {
+            return ResponseEntity.ok(paymentService.getBucketMetrics(query));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/funnel")
+    @AdmissionControlled(RequestPriority.ANALYTICS)
+    public ResponseEntity<Map<String, Object>> getFunnel(
+            @RequestParam(required = false) String groupBy) {
+        return ResponseEntity.ok(funnelAnalyticsService.getFunnel(groupBy));
+    }
+    
+    // Read/write routing: where connections went, replica lag and pool usage
+    @GetMapping("/datasource")
+    public ResponseEntity<Map<String, Object>> getDataSourceStats() {
+        ReadWriteRoutingDataSource routing = routingDataSource.getIfAvailable();
+        return ResponseEntity.ok(routing != null ? routing.getStats() : Map.of("routing", false));
+    }
+    
+    // Per-orderType (optionally per-country) hourly aggregates behind aged metrics
+    @GetMapping("/partitions")
+    public ResponseEntity<Map<String, Object>> getPartitions() {
+        return ResponseEntity.ok(paymentPartitions.getStats());
+    }
+    
+    @GetMapping("/stuck")
+    public ResponseEntity<Map<String, Object>> getStuckPayments() {
+        return ResponseEntity.ok(stuckPaymentDetector.getStuckPayments());
+    }
+    
+    @GetMapping("/anomalies")
+    @AdmissionControlled(RequestPriority.ANALYTICS)
+    public ResponseEntity<Map<String, Object>> getAnomalies() {
+        return ResponseEntity.ok(anomalyDetectionService.getAnomalies());
+    }
+    
+    // Top customers by amount, countries by failures and failure reasons, e.g. ?window=24h&k=10
+    @GetMapping("/leaderboards")
+    @AdmissionControlled(RequestPriority.ANALYTICS)
+    public ResponseEntity<?> getLeaderboards(
+            @RequestParam(required = false) String board,
+            @RequestParam(required = false, defaultValue = "24h") String window,
+            @RequestParam(required = false, defaultValue = "10") int k) {
+        try {
+            return ResponseEntity.ok(leaderboardService.getLeaderboards(board, window, k));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/reconciliation")
+    @AdmissionControlled(RequestPriority.ANALYTICS)
+    public ResponseEntity<?> getReconciliation(
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false, defaultValue = "100") int limit) {
+        try {
+            return ResponseEntity.ok(reconciliationService.getResults(type, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    // Re-examine payments written since the last run now instead of waiting for the next scheduled run
+    @PostMapping("/reconciliation/run")
+    public ResponseEntity<Map<String, Object>> runReconciliation() {
+        return ResponseEntity.ok(reconciliationService.run());
     }
     
     // Filter endpoints for dynamic dropdowns
@@ -104,7 +387,7 @@ public class PaymentController {
                 return statusMap;
             })
             .collect(Collectors.toList());
-        return ResponseEntity.ok(statuses);
+        return ResponseEntity.ok().cacheControl(FILTER_OPTIONS_CACHE).body(statuses);
     }
     
     @GetMapping("/filters/payment-methods")
@@ -117,7 +400,7 @@ public class PaymentController {
                 return methodMap;
             })
             .collect(Collectors.toList());
-        return ResponseEntity.ok(methods);
+        return ResponseEntity.ok().cacheControl(FILTER_OPTIONS_CACHE).body(methods);
     }
     
     @GetMapping("/filters/order-types")
@@ -132,7 +415,7 @@ public class PaymentController {
         orderTypes.add(createOption("loyalty", "Loyalty"));
         orderTypes.add(createOption("cwav_telemedicine", "CWAV Telemedicine"));
         
-        return ResponseEntity.ok(orderTypes);
+        return ResponseEntity.ok().cacheControl(FILTER_OPTIONS_CACHE).body(orderTypes);
     }
     
     // Helper method to format enum names
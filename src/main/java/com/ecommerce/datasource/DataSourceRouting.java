@@ -0,0 +1,39 @@
+package com.ecommerce.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * Pins the current thread's connections to the primary, even in read-only
+ * transactions. Used for startup rebuilds of in-memory state, which must see every
+ * committed write rather than a possibly lagging replica. Has no effect when
+ * read/write routing is disabled.
+ */
+public final class DataSourceRouting {
+    
+    private static final ThreadLocal<Boolean> PRIMARY = new ThreadLocal<>();
+    
+    private DataSourceRouting() {
+    }
+    
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = PRIMARY.get();
+        PRIMARY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) PRIMARY.remove();
+            else PRIMARY.set(previous);
+        }
+    }
+    
+    public static void onPrimary(Runnable action) {
+        onPrimary(() -> {
+            action.run();
+            return null;
+        });
+    }
+    
+    static boolean isPrimaryForced() {
+        return PRIMARY.get() != null;
+    }
+}
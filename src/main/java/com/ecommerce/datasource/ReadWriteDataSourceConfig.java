@@ -0,0 +1,68 @@
+package com.ecommerce.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Read/write split, enabled with {@code payments.datasource.routing.enabled=true}.
+ * The primary pool uses {@code spring.datasource.*}; the read pool uses
+ * {@code payments.datasource.read.*} and defaults to the primary's database, which
+ * still keeps dashboard reads from taking the connections payment writes need. Point
+ * it at a replica kept in sync by the database's own replication to move the load
+ * off the primary as well.
+ */
+@Configuration
+@ConditionalOnProperty(name = "payments.datasource.routing.enabled", havingValue = "true")
+public class ReadWriteDataSourceConfig {
+    
+    @Bean
+    public ReadWriteRoutingDataSource readWriteRoutingDataSource(
+            DataSourceProperties properties,
+            @Value("${payments.datasource.write.pool-size:10}") int writePoolSize,
+            @Value("${payments.datasource.read.url:}") String readUrl,
+            @Value("${payments.datasource.read.username:}") String readUsername,
+            @Value("${payments.datasource.read.password:}") String readPassword,
+            @Value("${payments.datasource.read.pool-size:10}") int readPoolSize) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+        primary.setMaximumPoolSize(writePoolSize);
+        
+        HikariDataSource read = new HikariDataSource();
+        read.setPoolName("read");
+        read.setMaximumPoolSize(readPoolSize);
+        read.setReadOnly(true);
+        if (readUrl.isBlank()) {
+            read.setJdbcUrl(properties.determineUrl());
+            read.setDriverClassName(properties.determineDriverClassName());
+            read.setUsername(properties.determineUsername());
+            read.setPassword(properties.determinePassword());
+        } else {
+            read.setJdbcUrl(readUrl);
+            read.setUsername(readUsername.isBlank() ? properties.determineUsername() : readUsername);
+            read.setPassword(readPassword.isBlank() ? properties.determinePassword() : readPassword);
+        }
+        return new ReadWriteRoutingDataSource(primary, read);
+    }
+    
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource routing) {
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+    
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public ReplicaLagMonitor replicaLagMonitor(ReadWriteRoutingDataSource routing,
+                                               @Value("${payments.datasource.read.check-interval:1s}") Duration interval,
+                                               @Value("${payments.datasource.read.max-lag:5s}") Duration maxLag) {
+        return new ReplicaLagMonitor(routing, interval, maxLag);
+    }
+}
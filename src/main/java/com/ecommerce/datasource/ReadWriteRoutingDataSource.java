@@ -0,0 +1,114 @@
+package com.ecommerce.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends connections for read-only transactions to the read pool and everything else
+ * to the primary pool. Reads fall back to the primary while the replica is
+ * unreachable or lagging more than allowed (see {@link ReplicaLagMonitor}).
+ * <p>
+ * Must sit behind a LazyConnectionDataSourceProxy: the transaction's read-only flag
+ * is only known once the transaction has started, after the connection would
+ * otherwise already have been taken.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+    
+    enum Route {
+        PRIMARY,
+        READ
+    }
+    
+    private final HikariDataSource primary;
+    private final HikariDataSource read;
+    private final LongAdder primaryConnections = new LongAdder();
+    private final LongAdder readConnections = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private volatile boolean readAvailable;
+    private volatile long lagMillis = -1;
+    private volatile String unavailableReason = "Not checked yet";
+    
+    public ReadWriteRoutingDataSource(HikariDataSource primary, HikariDataSource read) {
+        this.primary = primary;
+        this.read = read;
+        Map<Object, Object> targets = new LinkedHashMap<>();
+        targets.put(Route.PRIMARY, primary);
+        targets.put(Route.READ, read);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+    
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || DataSourceRouting.isPrimaryForced()) {
+            primaryConnections.increment();
+            return Route.PRIMARY;
+        }
+        if (!readAvailable) {
+            fallbacks.increment();
+            primaryConnections.increment();
+            return Route.PRIMARY;
+        }
+        readConnections.increment();
+        return Route.READ;
+    }
+    
+    void markAvailable(long lagMillis) {
+        this.lagMillis = lagMillis;
+        this.readAvailable = true;
+        this.unavailableReason = null;
+    }
+    
+    void markUnavailable(long lagMillis, String reason) {
+        this.lagMillis = lagMillis;
+        this.readAvailable = false;
+        this.unavailableReason = reason;
+    }
+    
+    @Override
+    public void close() {
+        read.close();
+        primary.close();
+    }
+    
+    HikariDataSource getPrimary() {
+        return primary;
+    }
+    
+    HikariDataSource getRead() {
+        return read;
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("routing", true);
+        stats.put("readAvailable", readAvailable);
+        stats.put("lagMillis", lagMillis >= 0 ? lagMillis : null);
+        stats.put("unavailableReason", unavailableReason);
+        stats.put("primaryConnections", primaryConnections.sum());
+        stats.put("readConnections", readConnections.sum());
+        stats.put("readFallbacks", fallbacks.sum());
+        stats.put("primaryPool", poolStats(primary));
+        stats.put("readPool", poolStats(read));
+        return stats;
+    }
+    
+    private static Map<String, Object> poolStats(HikariDataSource pool) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", pool.getPoolName());
+        stats.put("maximumPoolSize", pool.getMaximumPoolSize());
+        HikariPoolMXBean bean = pool.getHikariPoolMXBean();
+        if (bean != null) {
+            stats.put("active", bean.getActiveConnections());
+            stats.put("idle", bean.getIdleConnections());
+            stats.put("waiting", bean.getThreadsAwaitingConnection());
+        }
+        return stats;
+    }
+}
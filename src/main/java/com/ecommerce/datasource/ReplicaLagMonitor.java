@@ -0,0 +1,119 @@
+package com.ecommerce.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures replica lag with a heartbeat row: every interval the current time is
+ * written to the primary and read back through the read pool. The difference is how
+ * far the replica is behind (to within one interval). Reads are routed to the
+ * primary while the replica can't be reached or is more than {@code maxLag} behind.
+ */
+public class ReplicaLagMonitor {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+    
+    private final ReadWriteRoutingDataSource routing;
+    private final Duration interval;
+    private final Duration maxLag;
+    private ScheduledExecutorService scheduler;
+    private boolean wasAvailable;
+    
+    public ReplicaLagMonitor(ReadWriteRoutingDataSource routing, Duration interval, Duration maxLag) {
+        this.routing = routing;
+        this.interval = interval;
+        this.maxLag = maxLag;
+    }
+    
+    public void start() {
+        try (Connection connection = routing.getPrimary().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS replication_heartbeat (id INT PRIMARY KEY, beat_at BIGINT NOT NULL)");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not create the replication heartbeat table", e);
+        }
+        // Decide once before serving, so reads don't go to an unchecked replica
+        check();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-lag-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::check, millis, millis, TimeUnit.MILLISECONDS);
+    }
+    
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+    
+    void check() {
+        try {
+            beat(System.currentTimeMillis());
+        } catch (SQLException e) {
+            // Without a heartbeat the lag can't be measured; keep the last decision
+            log.warn("Could not write replication heartbeat: {}", e.getMessage());
+            return;
+        }
+        
+        try {
+            Long beatAt = readBeat();
+            if (beatAt == null) {
+                update(false, -1, "No heartbeat on the replica yet");
+                return;
+            }
+            long lag = Math.max(0, System.currentTimeMillis() - beatAt);
+            if (lag > maxLag.toMillis()) {
+                update(false, lag, "Replica is " + lag + "ms behind (max " + maxLag.toMillis() + "ms)");
+            } else {
+                update(true, lag, null);
+            }
+        } catch (SQLException e) {
+            update(false, -1, "Replica unreachable: " + e.getMessage());
+        }
+    }
+    
+    private void beat(long now) throws SQLException {
+        try (Connection connection = routing.getPrimary().getConnection()) {
+            try (PreparedStatement update = connection.prepareStatement("UPDATE replication_heartbeat SET beat_at = ? WHERE id = 1")) {
+                update.setLong(1, now);
+                if (update.executeUpdate() > 0) return;
+            }
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO replication_heartbeat (id, beat_at) VALUES (1, ?)")) {
+                insert.setLong(1, now);
+                insert.executeUpdate();
+            }
+        }
+    }
+    
+    private Long readBeat() throws SQLException {
+        try (Connection connection = routing.getRead().getConnection();
+             PreparedStatement select = connection.prepareStatement("SELECT beat_at FROM replication_heartbeat WHERE id = 1");
+             ResultSet rows = select.executeQuery()) {
+            return rows.next() ? rows.getLong(1) : null;
+        }
+    }
+    
+    private void update(boolean available, long lag, String reason) {
+        if (available) {
+            routing.markAvailable(lag);
+        } else {
+            routing.markUnavailable(lag, reason);
+        }
+        if (available != wasAvailable) {
+            if (available) log.info("Routing reads to the read pool (lag {}ms)", lag);
+            else log.warn("Routing reads to the primary: {}", reason);
+            wasAvailable = available;
+        }
+    }
+}
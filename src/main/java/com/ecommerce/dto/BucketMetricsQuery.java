@@ -0,0 +1,26 @@
+package com.ecommerce.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class BucketMetricsQuery {
+    // Same filters as aged metrics
+    private String orderType;
+    private String paymentMethod;
+    private String paymentState;
+    
+    // Range: ISO instants ("2024-05-01T10:00:00Z"), or local date-times / dates in the
+    // requested zone. Without "from" the range is the "last" span before "to" (default now).
+    private String from;
+    private String to;
+    private String last = "24h";
+    
+    // Bucket width (5m, 1h, 1d, 1w, 1mo) and the zone buckets and labels follow
+    private String bucket = "1h";
+    private String zone;
+    
+    private boolean includeTransactions;
+    private String layout = "rows";
+}
@@ -0,0 +1,63 @@
+package com.ecommerce.dto;
+
+import lombok.Getter;
+
+import java.util.*;
+
+/**
+ * Column-oriented encoding of a list of flat row maps: each key is written once,
+ * with all of its values in one array, instead of once per row. Low-cardinality
+ * columns are dictionary encoded - the column holds indexes into
+ * {@code dictionaries[column]}.
+ * <pre>
+ * {"count": 2,
+ *  "columns": {"id": [1, 2], "paymentMethod": [0, 0]},
+ *  "dictionaries": {"paymentMethod": ["Credit Card"]}}
+ * </pre>
+ */
+@Getter
+public class ColumnarTable {
+    
+    private final int count;
+    private final Map<String, List<Object>> columns = new LinkedHashMap<>();
+    private final Map<String, List<Object>> dictionaries = new LinkedHashMap<>();
+    
+    private ColumnarTable(int count) {
+        this.count = count;
+    }
+    
+    /**
+     * Encodes {@code rows}, which must all have the same keys; the first row's key
+     * order becomes the column order.
+     */
+    public static ColumnarTable of(List<Map<String, Object>> rows, Collection<String> dictionaryColumns) {
+        ColumnarTable table = new ColumnarTable(rows.size());
+        if (rows.isEmpty()) return table;
+        
+        Map<String, Map<Object, Integer>> codes = new HashMap<>();
+        for (String column : rows.get(0).keySet()) {
+            table.columns.put(column, new ArrayList<>(rows.size()));
+            if (dictionaryColumns.contains(column)) {
+                table.dictionaries.put(column, new ArrayList<>());
+                codes.put(column, new HashMap<>());
+            }
+        }
+        
+        for (Map<String, Object> row : rows) {
+            for (Map.Entry<String, List<Object>> column : table.columns.entrySet()) {
+                Object value = row.get(column.getKey());
+                Map<Object, Integer> dictionary = codes.get(column.getKey());
+                if (dictionary != null) {
+                    List<Object> values = table.dictionaries.get(column.getKey());
+                    // null is a dictionary entry like any other, so every row still has an index
+                    value = dictionary.computeIfAbsent(value, v -> {
+                        values.add(v);
+                        return values.size() - 1;
+                    });
+                }
+                column.getValue().add(value);
+            }
+        }
+        return table;
+    }
+}
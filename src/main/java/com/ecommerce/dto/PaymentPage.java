@@ -0,0 +1,18 @@
+package com.ecommerce.dto;
+
+import com.ecommerce.model.Payment;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentPage {
+    private List<Payment> items;
+    private String nextCursor;
+    private boolean hasMore;
+    private int limit;
+}
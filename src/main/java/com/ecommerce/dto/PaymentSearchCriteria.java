@@ -0,0 +1,35 @@
+package com.ecommerce.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class PaymentSearchCriteria {
+    // Filters - enum values are matched case-insensitively and ignoring underscores,
+    // the same way the aged-metrics filters are matched
+    private String status;
+    private String paymentMethod;
+    private String orderType;
+    private String country;
+    private Double minAmount;
+    private Double maxAmount;
+    
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from;
+    
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;
+    
+    // Free text matched against orderId and customerEmail
+    private String q;
+    
+    // Sorting and keyset pagination
+    private String sortBy = "createdAt";
+    private String direction = "desc";
+    private String cursor;
+    private Integer limit = 50;
+}
@@ -0,0 +1,50 @@
+package com.ecommerce.dto;
+
+import com.ecommerce.model.PaymentMethod;
+import com.ecommerce.model.PaymentStatus;
+import com.ecommerce.model.ServerLocalTimestamp;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Payment as shown in list views: the columns the dashboard tables and approval/deposit
+ * views read, selected straight into this DTO (no managed entity). Leaves out the
+ * reference id, description, IP address, country and order status, which only
+ * {@code GET /api/payments/{id}} returns. Field order is the constructor order used by
+ * the {@code SELECT new} queries in PaymentRepository.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentSummary {
+    private Long id;
+    private String transactionId;
+    private String customerId;
+    private String customerName;
+    private String customerEmail;
+    private Double amount;
+    private String currency;
+    private PaymentStatus status;
+    private PaymentMethod paymentMethod;
+    private String cardType;
+    private String validationStatus;
+    private String orderType;
+    private String orderId;
+    private String errorMessage;
+    @JsonSerialize(using = ServerLocalTimestamp.Serializer.class)
+    private Instant createdAt;
+    @JsonSerialize(using = ServerLocalTimestamp.Serializer.class)
+    private Instant updatedAt;
+    private Double approvalAmount;
+    private Double approvedAmount;
+    private Double depositingAmount;
+    private Double depositedAmount;
+    private Double reversingApprovalAmount;
+    private Double reversingApprovedAmount;
+    private Double refundAmount;
+    private Double refundedAmount;
+}
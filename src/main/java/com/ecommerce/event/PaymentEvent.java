@@ -0,0 +1,34 @@
+package com.ecommerce.event;
+
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentStatus;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published by PaymentService after every payment write so in-process
+ * read models (indexes, rollups, detectors) can update incrementally
+ * instead of rescanning the payments table.
+ */
+@Value
+public class PaymentEvent {
+    
+    public enum Type {
+        CREATED,
+        STATUS_CHANGED
+    }
+    
+    Type type;
+    Payment payment;
+    PaymentStatus previousStatus;
+    LocalDateTime occurredAt;
+    
+    public static PaymentEvent created(Payment payment) {
+        return new PaymentEvent(Type.CREATED, payment, null, LocalDateTime.now());
+    }
+    
+    public static PaymentEvent statusChanged(Payment payment, PaymentStatus previousStatus) {
+        return new PaymentEvent(Type.STATUS_CHANGED, payment, previousStatus, LocalDateTime.now());
+    }
+}
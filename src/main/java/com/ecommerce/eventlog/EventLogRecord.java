@@ -0,0 +1,41 @@
+package com.ecommerce.eventlog;
+
+import com.ecommerce.event.PaymentEvent;
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Value;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * One entry of the payment event log. The payload is the payment as JSON at the
+ * time of the event, so a reader can rebuild derived state from the log alone.
+ */
+@Value
+public class EventLogRecord {
+    
+    long sequence;
+    long timestampMillis;
+    PaymentEvent.Type type;
+    long paymentId;
+    PaymentStatus previousStatus;
+    byte[] payload;
+    
+    public Payment payment(ObjectMapper objectMapper) {
+        try {
+            return objectMapper.readValue(payload, Payment.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt payload in event log record " + sequence, e);
+        }
+    }
+    
+    public PaymentEvent toPaymentEvent(ObjectMapper objectMapper) {
+        LocalDateTime occurredAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestampMillis), ZoneId.systemDefault());
+        return new PaymentEvent(type, payment(objectMapper), previousStatus, occurredAt);
+    }
+}
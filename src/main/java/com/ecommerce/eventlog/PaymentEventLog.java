@@ -0,0 +1,580 @@
+package com.ecommerce.eventlog;
+
+import com.ecommerce.datasource.DataSourceRouting;
+import com.ecommerce.event.PaymentEvent;
+import com.ecommerce.model.PaymentStatus;
+import com.ecommerce.model.ServerLocalTimestamp;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segmented log of payment events on local disk.
+ * <p>
+ * Each segment is a fixed-size memory-mapped file named after the sequence number of
+ * its first record. A record is {@code [int length][int crc32][body]} where the body
+ * holds the sequence, timestamp, event type, payment id, previous status and the
+ * payment as JSON, with its timestamps as ISO-8601 instants rather than the API's
+ * server-local seconds, so replay does not depend on the server's zone. A zero length marks the end of the written part of a segment, so
+ * the tail of the last segment is found after a restart by scanning until a zero
+ * length or a checksum mismatch (a torn write).
+ * <p>
+ * Readers replay from any sequence number. Closed segments older than
+ * {@code compact-after} are compacted in the background to the latest record per
+ * payment, which is all that is needed to rebuild state; the highest compacted
+ * sequence is kept in a watermark file because exact replay is only possible after it.
+ * <p>
+ * The log also sequences events for in-process {@link PaymentEventSubscriber}s: each
+ * event is numbered and queued while the append lock is held, and a single delivery
+ * thread hands the queue to every subscriber in order, so subscribers see one total
+ * order without the committing request waiting for them (when the log is disabled the
+ * numbering only lives in memory). A full queue ({@code delivery-queue-capacity})
+ * makes commits wait for the subscribers rather than grow without bound.
+ * <p>
+ * Events are appended after their transaction commits, not inside it: a crash between
+ * the commit and the append loses the event from the log although the payment change
+ * is durable. The log is therefore a feed for derived state that can always be
+ * rebuilt from the payments table, not a record of every change. It is disabled by
+ * default because it outlives the default in-memory database.
+ * <p>
+ * Because of that gap, a payment can be in the database before its event is
+ * sequenced. {@link #runExclusive} closes it for subscribers seeding from the
+ * database: every payment transaction holds a commit gate from just before its commit
+ * until its events have been handed out, so while the gate is closed the database
+ * holds exactly the changes of the events sequenced so far.
+ */
+@Component
+public class PaymentEventLog {
+    
+    private static final Logger log = LoggerFactory.getLogger(PaymentEventLog.class);
+    
+    private static final String SUFFIX = ".log";
+    private static final String COMPACTION_WATERMARK = "compacted-through";
+    private static final int HEADER_BYTES = 8;
+    // sequence, timestamp, event type ordinal, payment id, previous status ordinal (-1 for none)
+    private static final int FIXED_BODY_BYTES = 8 + 8 + 1 + 8 + 1;
+    
+    // The API's mapper, but writing timestamps as ISO-8601 instants
+    private final ObjectMapper payloadMapper;
+    private final ObjectProvider<PaymentEventSubscriber> subscribers;
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean forceOnAppend;
+    private final Duration compactAfter;
+    
+    private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private final Set<Long> compactedSegments = Collections.synchronizedSet(new HashSet<>());
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    // Read-held by payment transactions between commit and sequencing, write-held by runExclusive
+    private final ReentrantReadWriteLock commitGate = new ReentrantReadWriteLock(true);
+    // Sequenced events waiting for the delivery thread, in sequence order
+    private final BlockingQueue<Delivery> deliveries;
+    private final Thread deliveryThread;
+    private volatile boolean delivering = true;
+    private volatile long deliveredThrough;
+    
+    private FileChannel activeChannel;
+    private MappedByteBuffer active;
+    private long activeBase;
+    private int activeLimit;
+    private long nextSequence = 1;
+    private volatile long compactedThrough;
+    
+    public PaymentEventLog(ObjectMapper objectMapper,
+                           ObjectProvider<PaymentEventSubscriber> subscribers,
+                           @Value("${payments.event-log.enabled:false}") boolean enabled,
+                           @Value("${payments.event-log.dir:data/event-log}") String directory,
+                           @Value("${payments.event-log.segment-size:64MB}") DataSize segmentSize,
+                           @Value("${payments.event-log.force-on-append:false}") boolean forceOnAppend,
+                           @Value("${payments.event-log.compact-after:7d}") Duration compactAfter,
+                           @Value("${payments.event-log.delivery-queue-capacity:100000}") int deliveryQueueCapacity) {
+        this.payloadMapper = objectMapper.copy()
+                .setAnnotationIntrospector(new PayloadIntrospector())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.subscribers = subscribers;
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentBytes = (int) Math.min(segmentSize.toBytes(), Integer.MAX_VALUE);
+        this.forceOnAppend = forceOnAppend;
+        this.compactAfter = compactAfter;
+        this.deliveries = new LinkedBlockingQueue<>(deliveryQueueCapacity);
+        this.deliveryThread = new Thread(this::deliver, "payment-event-delivery");
+        this.deliveryThread.setDaemon(true);
+    }
+    
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        deliveryThread.start();
+        if (!enabled) return;
+        Files.createDirectories(directory);
+        Path watermark = directory.resolve(COMPACTION_WATERMARK);
+        if (Files.exists(watermark)) {
+            compactedThrough = Long.parseLong(Files.readString(watermark).trim());
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .forEach(p -> segments.put(baseOf(p), p));
+        }
+        if (segments.isEmpty()) {
+            openSegment(1);
+            return;
+        }
+        
+        // Recover the write position of the last segment
+        Map.Entry<Long, Path> last = segments.lastEntry();
+        mapActive(last.getKey(), last.getValue());
+        long lastSequence = last.getKey() - 1;
+        int position = 0;
+        Decoded decoded;
+        while ((decoded = decode(active, position, active.capacity())) != null) {
+            lastSequence = decoded.record.getSequence();
+            position = decoded.next;
+        }
+        activeLimit = position;
+        nextSequence = lastSequence + 1;
+        log.info("Opened payment event log at {} ({} segments, next sequence {})", directory, segments.size(), nextSequence);
+    }
+    
+    @PreDestroy
+    public void close() throws IOException {
+        // Hand out what is already queued before stopping
+        delivering = false;
+        try {
+            deliveryThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!deliveries.isEmpty()) {
+            log.warn("Stopped payment event delivery with {} events undelivered", deliveries.size());
+        }
+        synchronized (this) {
+            if (activeChannel != null) {
+                active.force();
+                activeChannel.close();
+                activeChannel = null;
+            }
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Enters the commit gate once per transaction that publishes payment events. The
+     * gate is left after completion, which runs after the after-commit delivery below.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void beforeCommit(PaymentEvent event) {
+        if (TransactionSynchronizationManager.hasResource(commitGate)) return;
+        commitGate.readLock().lock();
+        TransactionSynchronizationManager.bindResource(commitGate, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(commitGate);
+                commitGate.readLock().unlock();
+            }
+        });
+    }
+    
+    /**
+     * Appends and sequences a committed event and queues it for the subscribers; only
+     * this runs on the committing thread, under the append lock.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onPaymentEvent(PaymentEvent event) {
+        long sequence;
+        if (enabled) {
+            try {
+                sequence = append(event);
+            } catch (RuntimeException e) {
+                // The payment is already committed; a log failure must not fail the request
+                log.error("Failed to record {} event for payment {}", event.getType(), event.getPayment().getId(), e);
+                sequence = nextSequence++;
+            }
+        } else {
+            sequence = nextSequence++;
+        }
+        
+        // Queued under the lock so the queue stays in sequence order
+        try {
+            deliveries.put(new Delivery(sequence, event));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted before queueing sequence {} for subscribers", sequence);
+        }
+    }
+    
+    // The delivery thread: hands queued events to every subscriber, one at a time
+    private void deliver() {
+        while (delivering || !deliveries.isEmpty()) {
+            Delivery delivery;
+            try {
+                delivery = deliveries.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (delivery == null) continue;
+            for (PaymentEventSubscriber subscriber : subscribers) {
+                try {
+                    subscriber.onPaymentEvent(delivery.sequence, delivery.event);
+                } catch (RuntimeException e) {
+                    log.error("Payment event subscriber {} failed on sequence {}",
+                            subscriber.getClass().getSimpleName(), delivery.sequence, e);
+                }
+            }
+            deliveredThrough = delivery.sequence;
+        }
+    }
+    
+    /**
+     * Appends an event and returns its sequence number.
+     */
+    public synchronized long append(PaymentEvent event) {
+        byte[] payload;
+        try {
+            payload = payloadMapper.writeValueAsBytes(event.getPayment());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Payment is not serializable", e);
+        }
+        int recordLength = HEADER_BYTES + FIXED_BODY_BYTES + payload.length;
+        // Leave room for the zero-length end marker
+        if (recordLength + 4 > segmentBytes) {
+            throw new IllegalArgumentException("Event of " + recordLength + " bytes exceeds the segment size");
+        }
+        
+        try {
+            if (activeLimit + recordLength + 4 > active.capacity()) {
+                roll();
+            }
+            long paymentId = event.getPayment().getId() != null ? event.getPayment().getId() : -1L;
+            EventLogRecord record = new EventLogRecord(nextSequence++, System.currentTimeMillis(),
+                    event.getType(), paymentId, event.getPreviousStatus(), payload);
+            ByteBuffer encoded = encode(record);
+            
+            // Checksum and body first, length last: a torn write leaves a zero length or a bad checksum
+            active.put(activeLimit + 4, encoded, 4, recordLength - 4);
+            active.putInt(activeLimit, recordLength - HEADER_BYTES);
+            activeLimit += recordLength;
+            if (forceOnAppend) {
+                active.force();
+            }
+            return record.getSequence();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to payment event log", e);
+        }
+    }
+    
+    /**
+     * Reads up to {@code limit} records starting at {@code fromSequence}.
+     */
+    public List<EventLogRecord> read(long fromSequence, int limit) {
+        List<EventLogRecord> records = new ArrayList<>();
+        replay(fromSequence, limit, records::add);
+        return records;
+    }
+    
+    /**
+     * Hands every record from {@code fromSequence} on to {@code consumer}, in order,
+     * and returns the sequence number to continue from.
+     */
+    public long replay(long fromSequence, int limit, Consumer<EventLogRecord> consumer) {
+        if (!enabled || limit <= 0) return fromSequence;
+        long activeBaseSnapshot;
+        int activeLimitSnapshot;
+        synchronized (this) {
+            activeBaseSnapshot = activeBase;
+            activeLimitSnapshot = activeLimit;
+        }
+        
+        Long start = segments.floorKey(fromSequence);
+        if (start == null) start = segments.firstKey();
+        long next = fromSequence;
+        int delivered = 0;
+        for (Map.Entry<Long, Path> segment : segments.tailMap(start, true).entrySet()) {
+            if (segment.getKey() > activeBaseSnapshot) break;
+            boolean isActive = segment.getKey() == activeBaseSnapshot;
+            ByteBuffer buffer;
+            try {
+                buffer = mapReadOnly(segment.getValue());
+            } catch (NoSuchFileException e) {
+                // Replaced by compaction while we were reading - its records moved to the earlier base
+                continue;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read event log segment " + segment.getValue(), e);
+            }
+            int limitBytes = isActive ? Math.min(activeLimitSnapshot, buffer.capacity()) : buffer.capacity();
+            int position = 0;
+            Decoded decoded;
+            while ((decoded = decode(buffer, position, limitBytes)) != null) {
+                position = decoded.next;
+                if (decoded.record.getSequence() < fromSequence) continue;
+                consumer.accept(decoded.record);
+                next = decoded.record.getSequence() + 1;
+                if (++delivered >= limit) return next;
+            }
+        }
+        return next;
+    }
+    
+    public synchronized long lastSequence() {
+        return nextSequence - 1;
+    }
+    
+    // Latest sequence every subscriber has been handed
+    public long deliveredThrough() {
+        return deliveredThrough;
+    }
+    
+    /**
+     * Runs {@code action} with the commit gate closed and returns the last sequence
+     * before it, e.g. so a subscriber can seed from the database and know exactly
+     * which events its seed already includes. Payment commits wait while the action
+     * runs; subscribers are not blocked, so the action may take the subscriber's own
+     * lock. Reads inside go to the primary: a lagging replica would miss events the
+     * returned sequence claims to cover. Events up to the returned sequence may still be
+     * queued for delivery; subscribers skip them by sequence.
+     */
+    public long runExclusive(Runnable action) {
+        commitGate.writeLock().lock();
+        try {
+            long sequence = lastSequence();
+            DataSourceRouting.onPrimary(action);
+            return sequence;
+        } finally {
+            commitGate.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * True when every event after {@code sequence} is still in the log, i.e. it has not
+     * been compacted away and a subscriber can resume from it exactly.
+     */
+    public boolean canReplayFrom(long sequence) {
+        return enabled && sequence >= compactedThrough && sequence <= lastSequence();
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("directory", directory.toAbsolutePath().toString());
+        stats.put("segments", segments.size());
+        stats.put("lastSequence", lastSequence());
+        stats.put("deliveredThrough", deliveredThrough());
+        stats.put("pendingDeliveries", deliveries.size());
+        stats.put("compactedThrough", compactedThrough);
+        return stats;
+    }
+    
+    private void roll() throws IOException {
+        active.force();
+        activeChannel.close();
+        openSegment(nextSequence);
+        
+        if (compacting.compareAndSet(false, true)) {
+            Thread compactor = new Thread(() -> {
+                try {
+                    compact();
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Event log compaction failed", e);
+                } finally {
+                    compacting.set(false);
+                }
+            }, "payment-event-log-compactor");
+            compactor.setDaemon(true);
+            compactor.start();
+        }
+    }
+    
+    /**
+     * Rewrites closed segments older than {@code compact-after} into a single segment
+     * that keeps only the latest record of each payment.
+     */
+    void compact() throws IOException {
+        long activeBaseSnapshot;
+        synchronized (this) {
+            activeBaseSnapshot = activeBase;
+        }
+        long cutoff = System.currentTimeMillis() - compactAfter.toMillis();
+        List<Map.Entry<Long, Path>> eligible = new ArrayList<>();
+        for (Map.Entry<Long, Path> segment : segments.headMap(activeBaseSnapshot, false).entrySet()) {
+            if (Files.getLastModifiedTime(segment.getValue()).toMillis() > cutoff) break;
+            eligible.add(segment);
+        }
+        if (eligible.isEmpty() || (eligible.size() == 1 && compactedSegments.contains(eligible.get(0).getKey()))) {
+            return;
+        }
+        
+        // Latest record per payment, in sequence order
+        Map<Long, EventLogRecord> latest = new HashMap<>();
+        for (Map.Entry<Long, Path> segment : eligible) {
+            ByteBuffer buffer = mapReadOnly(segment.getValue());
+            int position = 0;
+            Decoded decoded;
+            while ((decoded = decode(buffer, position, buffer.capacity())) != null) {
+                latest.put(decoded.record.getPaymentId(), decoded.record);
+                position = decoded.next;
+            }
+        }
+        List<EventLogRecord> kept = new ArrayList<>(latest.values());
+        kept.sort(Comparator.comparingLong(EventLogRecord::getSequence));
+        
+        long base = eligible.get(0).getKey();
+        Path target = eligible.get(0).getValue();
+        Path temp = directory.resolve(target.getFileName() + ".compacting");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            for (EventLogRecord record : kept) {
+                out.write(encode(record));
+            }
+            out.write(ByteBuffer.allocate(4));
+            out.force(true);
+        }
+        
+        synchronized (this) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (int i = 1; i < eligible.size(); i++) {
+                segments.remove(eligible.get(i).getKey());
+                Files.deleteIfExists(eligible.get(i).getValue());
+            }
+            compactedSegments.add(base);
+            long through = kept.isEmpty() ? compactedThrough : kept.get(kept.size() - 1).getSequence();
+            Files.writeString(directory.resolve(COMPACTION_WATERMARK), Long.toString(through));
+            compactedThrough = through;
+        }
+        log.info("Compacted {} event log segments into {} ({} records kept)", eligible.size(), target.getFileName(), kept.size());
+    }
+    
+    private void openSegment(long base) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", base, SUFFIX));
+        segments.put(base, path);
+        mapActive(base, path);
+        activeLimit = 0;
+    }
+    
+    private void mapActive(long base, Path path) throws IOException {
+        activeChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(activeChannel.size(), segmentBytes);
+        active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        activeBase = base;
+    }
+    
+    private static ByteBuffer mapReadOnly(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+    
+    private static ByteBuffer encode(EventLogRecord record) {
+        int bodyLength = FIXED_BODY_BYTES + record.getPayload().length;
+        ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        body.putLong(record.getSequence());
+        body.putLong(record.getTimestampMillis());
+        body.put((byte) record.getType().ordinal());
+        body.putLong(record.getPaymentId());
+        body.put((byte) (record.getPreviousStatus() != null ? record.getPreviousStatus().ordinal() : -1));
+        body.put(record.getPayload());
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+        
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bodyLength);
+        buffer.putInt(bodyLength);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(body.array());
+        buffer.flip();
+        return buffer;
+    }
+    
+    // Returns the record at position, or null at the end of the written data or a torn record
+    private static Decoded decode(ByteBuffer buffer, int position, int limit) {
+        if (position + HEADER_BYTES > limit) return null;
+        int bodyLength = buffer.getInt(position);
+        if (bodyLength < FIXED_BODY_BYTES || position + HEADER_BYTES + bodyLength > limit) return null;
+        
+        byte[] body = new byte[bodyLength];
+        buffer.get(position + HEADER_BYTES, body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(position + 4)) return null;
+        
+        ByteBuffer in = ByteBuffer.wrap(body);
+        long sequence = in.getLong();
+        long timestamp = in.getLong();
+        PaymentEvent.Type type = PaymentEvent.Type.values()[in.get()];
+        long paymentId = in.getLong();
+        byte previous = in.get();
+        byte[] payload = new byte[in.remaining()];
+        in.get(payload);
+        EventLogRecord record = new EventLogRecord(sequence, timestamp, type, paymentId,
+                previous >= 0 ? PaymentStatus.values()[previous] : null, payload);
+        return new Decoded(record, position + HEADER_BYTES + bodyLength);
+    }
+    
+    private static long baseOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+    
+    // Drops the server-local timestamp serializer; its deserializer also reads ISO instants
+    private static final class PayloadIntrospector extends JacksonAnnotationIntrospector {
+        @Override
+        public Object findSerializer(Annotated a) {
+            Object serializer = super.findSerializer(a);
+            return serializer == ServerLocalTimestamp.Serializer.class ? null : serializer;
+        }
+    }
+    
+    private static final class Delivery {
+        private final long sequence;
+        private final PaymentEvent event;
+        
+        private Delivery(long sequence, PaymentEvent event) {
+            this.sequence = sequence;
+            this.event = event;
+        }
+    }
+    
+    private static final class Decoded {
+        private final EventLogRecord record;
+        private final int next;
+        
+        private Decoded(EventLogRecord record, int next) {
+            this.record = record;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.ecommerce.eventlog;
+
+import com.ecommerce.event.PaymentEvent;
+
+/**
+ * Derived state fed from the payment event log. Events arrive on the log's delivery
+ * thread after their commit, in sequence order and one at a time, so a subscriber can
+ * remember the last sequence it applied and a snapshot of its state can be resumed by
+ * replaying the log from there.
+ */
+public interface PaymentEventSubscriber {
+    
+    void onPaymentEvent(long sequence, PaymentEvent event);
+}
@@ -0,0 +1,84 @@
+package com.ecommerce.ids;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Compares ID generation throughput of the previous UUID-slicing transaction IDs
+ * against {@link TimeOrderedIdGenerator} at 1, 2, 4, ... up to {@code threads}
+ * threads sharing one generator. Run with {@code --spring.profiles.active=id-benchmark};
+ * results are logged.
+ */
+@Component
+@Profile("id-benchmark")
+public class IdGeneratorBenchmark implements ApplicationRunner {
+    
+    private static final Logger log = LoggerFactory.getLogger(IdGeneratorBenchmark.class);
+    
+    private final int idsPerThread;
+    private final int maxThreads;
+    
+    public IdGeneratorBenchmark(@Value("${payments.benchmark.ids.per-thread:500000}") int idsPerThread,
+                                @Value("${payments.benchmark.ids.threads:16}") int maxThreads) {
+        this.idsPerThread = idsPerThread;
+        this.maxThreads = maxThreads;
+    }
+    
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(0);
+        Supplier<String> uuid = () -> "TXN" + UUID.randomUUID().toString().replace("-", "").substring(0, 16).toUpperCase();
+        Supplier<String> timeOrdered = () -> generator.next(PaymentIdGenerator.TRANSACTION_PREFIX);
+        
+        // Warm up both so JIT compilation doesn't favour the second
+        measure(uuid, 2);
+        measure(timeOrdered, 2);
+        
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double uuidRate = measure(uuid, threads);
+            double timeOrderedRate = measure(timeOrdered, threads);
+            log.info("ID benchmark, {} threads: UUID {} ids/s, time-ordered {} ids/s ({}x)",
+                    threads, Math.round(uuidRate), Math.round(timeOrderedRate),
+                    Math.round(timeOrderedRate / uuidRate * 100) / 100.0);
+        }
+    }
+    
+    private double measure(Supplier<String> ids, int threads) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(executor.submit(() -> {
+                start.await();
+                int length = 0;
+                for (int n = 0; n < idsPerThread; n++) {
+                    length += ids.get().length();
+                }
+                return length;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Benchmark worker failed", e.getCause());
+            }
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+        return (double) threads * idsPerThread / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,66 @@
+package com.ecommerce.ids;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+
+/**
+ * Time-ordered transaction and payment reference IDs for this instance, e.g.
+ * TXN0B1Q9X3M2000K. Instances sharing a database need distinct
+ * {@code payments.ids.node-id} values (0-1023); left unset, the node id is derived
+ * from the host name and process id. Two derived ids collide with a chance of about
+ * 1 in 1024 per pair of instances, and a collision goes unnoticed until two payments
+ * get the same id, so a warning is logged when a derived id is used with a database
+ * that other instances could share (anything but in-memory H2).
+ */
+@Component
+public class PaymentIdGenerator {
+    
+    private static final Logger log = LoggerFactory.getLogger(PaymentIdGenerator.class);
+    
+    public static final String TRANSACTION_PREFIX = "TXN";
+    public static final String REFERENCE_PREFIX = "PREF";
+    
+    private final TimeOrderedIdGenerator generator;
+    
+    public PaymentIdGenerator(@Value("${payments.ids.node-id:-1}") int nodeId,
+                              @Value("${spring.datasource.url:}") String datasourceUrl) {
+        int node = nodeId >= 0 ? nodeId : derivedNodeId();
+        this.generator = new TimeOrderedIdGenerator(node);
+        if (nodeId < 0 && !datasourceUrl.startsWith("jdbc:h2:mem:")) {
+            log.warn("Payment ids use node id {} derived from the host name and process id; set payments.ids.node-id "
+                    + "to a distinct value per instance if more than one instance uses {}", node, datasourceUrl);
+        } else {
+            log.info("Payment ids use node id {}", node);
+        }
+    }
+    
+    public String transactionId() {
+        return generator.next(TRANSACTION_PREFIX);
+    }
+    
+    public String paymentReferenceId() {
+        return generator.next(REFERENCE_PREFIX);
+    }
+    
+    public TimeOrderedIdGenerator getGenerator() {
+        return generator;
+    }
+    
+    private static int derivedNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "localhost";
+        }
+        String identity = host + "/" + ManagementFactory.getRuntimeMXBean().getName();
+        return Math.floorMod(identity.hashCode(), TimeOrderedIdGenerator.MAX_NODE_ID + 1);
+    }
+}
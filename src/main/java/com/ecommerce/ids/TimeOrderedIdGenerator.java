@@ -0,0 +1,115 @@
+package com.ecommerce.ids;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free generator of time-ordered 63-bit IDs: 41 bits of milliseconds since
+ * 2024-01-01, 10 bits of node id and a 12-bit per-millisecond sequence. IDs are
+ * written as 13 fixed-width Crockford base32 characters after a prefix, so string
+ * order is time order: inserts append to the tail of the unique index, and a time
+ * range maps to an ID range (see {@link #lowerBound}).
+ * <p>
+ * The last (millisecond, sequence) pair is one AtomicLong advanced by CAS. When the
+ * sequence runs out within a millisecond, or the clock steps back, generation
+ * carries on from the last value instead of waiting, so IDs never repeat and never
+ * go backwards on one node.
+ */
+public class TimeOrderedIdGenerator {
+    
+    public static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    public static final int NODE_BITS = 10;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int ENCODED_LENGTH = 13;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    
+    private final long node;
+    // (millis since EPOCH_MILLIS << SEQUENCE_BITS) | sequence of the last ID handed out
+    private final AtomicLong last = new AtomicLong();
+    // Sequence for IDs stamped with an explicit time (seeding, backfills)
+    private final AtomicLong backfillSequence = new AtomicLong();
+    
+    public TimeOrderedIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.node = nodeId;
+    }
+    
+    public long nextId() {
+        long now = System.currentTimeMillis() - EPOCH_MILLIS;
+        while (true) {
+            long previous = last.get();
+            long next = now > (previous >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : previous + 1;
+            if (last.compareAndSet(previous, next)) {
+                return compose(next >>> SEQUENCE_BITS, next & SEQUENCE_MASK);
+            }
+        }
+    }
+    
+    public String next(String prefix) {
+        return prefix + encode(nextId());
+    }
+    
+    /**
+     * An ID stamped with {@code timestamp} instead of the clock, for payments created
+     * with a past timestamp. Unique among this generator's backfill IDs for up to
+     * 4096 IDs within the same millisecond.
+     */
+    public String at(String prefix, Instant timestamp) {
+        long millis = Math.max(0, timestamp.toEpochMilli() - EPOCH_MILLIS);
+        return prefix + encode(compose(millis, backfillSequence.getAndIncrement() & SEQUENCE_MASK));
+    }
+    
+    /**
+     * Smallest ID with {@code prefix} generated at or after {@code timestamp}, so IDs
+     * created in [from, to) are those >= lowerBound(from) and < lowerBound(to).
+     */
+    public static String lowerBound(String prefix, Instant timestamp) {
+        long millis = Math.max(0, timestamp.toEpochMilli() - EPOCH_MILLIS);
+        return prefix + encode(millis << (NODE_BITS + SEQUENCE_BITS));
+    }
+    
+    /**
+     * Creation time encoded in an ID produced by this generator.
+     */
+    public static Instant timestampOf(String id) {
+        if (id == null || id.length() < ENCODED_LENGTH) {
+            throw new IllegalArgumentException("Not a time-ordered id: " + id);
+        }
+        long value = decode(id.substring(id.length() - ENCODED_LENGTH));
+        return Instant.ofEpochMilli((value >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS);
+    }
+    
+    private long compose(long millis, long sequence) {
+        return millis << (NODE_BITS + SEQUENCE_BITS) | node << SEQUENCE_BITS | sequence;
+    }
+    
+    static String encode(long value) {
+        char[] chars = new char[ENCODED_LENGTH];
+        for (int i = ENCODED_LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return new String(chars);
+    }
+    
+    static long decode(String encoded) {
+        long value = 0;
+        for (int i = 0; i < encoded.length(); i++) {
+            char c = Character.toUpperCase(encoded.charAt(i));
+            int digit = -1;
+            for (int d = 0; d < ALPHABET.length; d++) {
+                if (ALPHABET[d] == c) {
+                    digit = d;
+                    break;
+                }
+            }
+            if (digit < 0) throw new IllegalArgumentException("Not a time-ordered id: " + encoded);
+            value = value << 5 | digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,229 @@
+package com.ecommerce.index;
+
+import com.ecommerce.datasource.DataSourceRouting;
+import com.ecommerce.event.PaymentEvent;
+import com.ecommerce.model.Payment;
+import com.ecommerce.repository.PaymentRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+/**
+ * In-process secondary indexes over the identifying fields of a payment.
+ * <p>
+ * Exact IDs (transactionId, paymentReferenceId, orderId, customerId, email) are
+ * served from hash maps. Partial orderId/email searches use a trigram index over
+ * the distinct indexed values (not over payments), so many payments sharing one
+ * email cost a single set of trigram entries. Queries shorter than a trigram
+ * fall back to a prefix scan on a sorted map. Each value's payment ids are kept
+ * newest first, so a match reads only the ids that can still make the newest
+ * {@code limit}: a value is left as soon as its next id is older than all of those.
+ * <p>
+ * The index is rebuilt once the application is ready and then maintained from
+ * {@link PaymentEvent}s; the identifying fields never change after creation, so
+ * status updates do not touch it.
+ */
+@Component
+public class PaymentLookupIndex {
+    
+    public enum Field {
+        TRANSACTION_ID,
+        PAYMENT_REFERENCE_ID,
+        ORDER_ID,
+        CUSTOMER_ID,
+        EMAIL
+    }
+    
+    private static final int GRAM = 3;
+    
+    private final PaymentRepository paymentRepository;
+    
+    private final Map<String, Long> byTransactionId = new ConcurrentHashMap<>();
+    private final Map<String, Long> byPaymentReferenceId = new ConcurrentHashMap<>();
+    // Posting sets iterate newest (largest) id first
+    private final Map<String, NavigableSet<Long>> byCustomerId = new ConcurrentHashMap<>();
+    private final NavigableMap<String, NavigableSet<Long>> byOrderId = new ConcurrentSkipListMap<>();
+    private final NavigableMap<String, NavigableSet<Long>> byEmail = new ConcurrentSkipListMap<>();
+    private final Map<String, Set<String>> orderIdTrigrams = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> emailTrigrams = new ConcurrentHashMap<>();
+    
+    public PaymentLookupIndex(PaymentRepository paymentRepository) {
+        this.paymentRepository = paymentRepository;
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        // From the primary, so no payment committed before startup is missing
+        DataSourceRouting.onPrimary(() -> {
+            try (Stream<Object[]> rows = paymentRepository.streamLookupKeys()) {
+                rows.forEach(row -> add((Long) row[0], (String) row[1], (String) row[2],
+                        (String) row[3], (String) row[4], (String) row[5]));
+            }
+        });
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPaymentEvent(PaymentEvent event) {
+        if (event.getType() == PaymentEvent.Type.CREATED) {
+            add(event.getPayment());
+        }
+    }
+    
+    public void add(Payment payment) {
+        add(payment.getId(), payment.getTransactionId(), payment.getPaymentReferenceId(),
+                payment.getOrderId(), payment.getCustomerId(), payment.getCustomerEmail());
+    }
+    
+    private void add(Long id, String transactionId, String paymentReferenceId,
+                     String orderId, String customerId, String email) {
+        if (id == null) return;
+        if (transactionId != null) byTransactionId.put(normalize(transactionId), id);
+        if (paymentReferenceId != null) byPaymentReferenceId.put(normalize(paymentReferenceId), id);
+        if (customerId != null) postings(byCustomerId, normalize(customerId)).add(id);
+        if (orderId != null) addTerm(byOrderId, orderIdTrigrams, normalize(orderId), id);
+        if (email != null) addTerm(byEmail, emailTrigrams, normalize(email), id);
+    }
+    
+    private void addTerm(NavigableMap<String, NavigableSet<Long>> terms, Map<String, Set<String>> trigrams, String term, Long id) {
+        NavigableSet<Long> ids = terms.get(term);
+        if (ids == null) {
+            ids = postings(terms, term);
+            // First time this value is seen - register its trigrams
+            for (String gram : trigramsOf(term)) {
+                trigrams.computeIfAbsent(gram, k -> ConcurrentHashMap.newKeySet()).add(term);
+            }
+        }
+        ids.add(id);
+    }
+    
+    /**
+     * Returns matching payment ids, newest first. Exact matches on any field come
+     * before partial orderId/email matches. A null field searches all fields.
+     */
+    public List<Long> lookup(String query, Field field, int limit) {
+        if (query == null || query.isBlank() || limit <= 0) return Collections.emptyList();
+        String q = normalize(query);
+        
+        NewestIds exact = new NewestIds(limit, Collections.emptySet());
+        if (field == null || field == Field.TRANSACTION_ID) addIfPresent(exact, byTransactionId.get(q));
+        if (field == null || field == Field.PAYMENT_REFERENCE_ID) addIfPresent(exact, byPaymentReferenceId.get(q));
+        if (field == null || field == Field.CUSTOMER_ID) exact.addAll(byCustomerId.getOrDefault(q, Collections.emptyNavigableSet()));
+        if (field == null || field == Field.ORDER_ID) exact.addAll(byOrderId.getOrDefault(q, Collections.emptyNavigableSet()));
+        if (field == null || field == Field.EMAIL) exact.addAll(byEmail.getOrDefault(q, Collections.emptyNavigableSet()));
+        
+        List<Long> result = exact.toList();
+        if (result.size() >= limit) return result;
+        
+        // Fewer exact matches than the limit, so all of them were kept and can be skipped
+        NewestIds partial = new NewestIds(limit - result.size(), new HashSet<>(result));
+        if (field == null || field == Field.ORDER_ID) collectPartial(byOrderId, orderIdTrigrams, q, partial);
+        if (field == null || field == Field.EMAIL) collectPartial(byEmail, emailTrigrams, q, partial);
+        result.addAll(partial.toList());
+        return result;
+    }
+    
+    public Map<String, Integer> sizes() {
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        sizes.put("transactionIds", byTransactionId.size());
+        sizes.put("paymentReferenceIds", byPaymentReferenceId.size());
+        sizes.put("orderIds", byOrderId.size());
+        sizes.put("customerIds", byCustomerId.size());
+        sizes.put("emails", byEmail.size());
+        sizes.put("orderIdTrigrams", orderIdTrigrams.size());
+        sizes.put("emailTrigrams", emailTrigrams.size());
+        return sizes;
+    }
+    
+    private void collectPartial(NavigableMap<String, NavigableSet<Long>> terms, Map<String, Set<String>> trigrams,
+                                String q, NewestIds out) {
+        if (q.length() < GRAM) {
+            // Too short for trigrams - prefix scan over the sorted terms
+            for (NavigableSet<Long> ids : terms.subMap(q, true, q + Character.MAX_VALUE, false).values()) {
+                out.addAll(ids);
+            }
+            return;
+        }
+        
+        // Intersect the posting sets of every trigram, smallest first
+        List<Set<String>> sets = new ArrayList<>();
+        for (String gram : trigramsOf(q)) {
+            Set<String> set = trigrams.get(gram);
+            if (set == null) return;
+            sets.add(set);
+        }
+        sets.sort(Comparator.comparingInt(Set::size));
+        
+        for (String term : sets.get(0)) {
+            boolean inAll = true;
+            for (int i = 1; i < sets.size() && inAll; i++) {
+                inAll = sets.get(i).contains(term);
+            }
+            // Trigrams can match out of order, so confirm the substring
+            if (inAll && term.contains(q)) {
+                out.addAll(terms.getOrDefault(term, Collections.emptyNavigableSet()));
+            }
+        }
+    }
+    
+    private static Set<String> trigramsOf(String term) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            grams.add(term.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+    
+    private static <K> NavigableSet<Long> postings(Map<K, NavigableSet<Long>> map, K key) {
+        return map.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>(Comparator.reverseOrder()));
+    }
+    
+    private static void addIfPresent(NewestIds ids, Long id) {
+        if (id != null) ids.addAll(Collections.singletonList(id));
+    }
+    
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * The newest {@code limit} ids offered, skipping excluded ones. Identity ids grow
+     * with insertion order, so the largest ids are the newest payments.
+     */
+    private static final class NewestIds {
+        private final int limit;
+        private final Set<Long> excluded;
+        // Smallest (oldest) kept id on top
+        private final PriorityQueue<Long> top = new PriorityQueue<>();
+        private final Set<Long> kept = new HashSet<>();
+        
+        private NewestIds(int limit, Set<Long> excluded) {
+            this.limit = limit;
+            this.excluded = excluded;
+        }
+        
+        // Takes ids newest first and stops at the first one that could not be kept
+        void addAll(Iterable<Long> newestFirst) {
+            for (Long id : newestFirst) {
+                if (top.size() >= limit && id <= top.peek()) return;
+                if (excluded.contains(id) || !kept.add(id)) continue;
+                top.offer(id);
+                if (top.size() > limit) kept.remove(top.poll());
+            }
+        }
+        
+        List<Long> toList() {
+            List<Long> result = new ArrayList<>(top);
+            result.sort(Comparator.reverseOrder());
+            return result;
+        }
+    }
+}
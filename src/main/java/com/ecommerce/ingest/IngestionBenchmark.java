@@ -0,0 +1,131 @@
+package com.ecommerce.ingest;
+
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentMethod;
+import com.ecommerce.service.PaymentService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares createPayment throughput of the direct path (one transaction per payment)
+ * against the write-behind group-commit pipeline, with the same number of concurrent
+ * callers. Run with {@code --spring.profiles.active=benchmark}; results are logged.
+ * <p>
+ * It inserts tens of thousands of throwaway payments, so it refuses to run unless the
+ * datasource is an in-memory H2 database.
+ */
+@Component
+@Profile("benchmark")
+public class IngestionBenchmark implements ApplicationRunner {
+    
+    private static final Logger log = LoggerFactory.getLogger(IngestionBenchmark.class);
+    
+    private final PaymentService paymentService;
+    private final String datasourceUrl;
+    private final int paymentsPerRun;
+    private final int threads;
+    private final AtomicLong sequence = new AtomicLong();
+    
+    public IngestionBenchmark(PaymentService paymentService,
+                              @Value("${spring.datasource.url:}") String datasourceUrl,
+                              @Value("${payments.benchmark.ingest.payments:20000}") int paymentsPerRun,
+                              @Value("${payments.benchmark.ingest.threads:16}") int threads) {
+        this.paymentService = paymentService;
+        this.datasourceUrl = datasourceUrl;
+        this.paymentsPerRun = paymentsPerRun;
+        this.threads = threads;
+    }
+    
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (!datasourceUrl.startsWith("jdbc:h2:mem:")) {
+            log.warn("Not running the ingestion benchmark against {}: it only runs on an in-memory H2 database", datasourceUrl);
+            return;
+        }
+        // Warm up both paths so JIT and connection pool effects don't favour the second run
+        runDirect(1000);
+        PaymentIngestionPipeline pipeline = new PaymentIngestionPipeline(
+                paymentService, "write-behind", 10000, 256, Duration.ofMillis(2), Duration.ofSeconds(1));
+        pipeline.start();
+        try {
+            runWriteBehind(pipeline, 1000);
+            
+            double direct = runDirect(paymentsPerRun);
+            double writeBehind = runWriteBehind(pipeline, paymentsPerRun);
+            log.info("Ingestion benchmark ({} payments, {} threads): direct {} payments/s, write-behind {} payments/s ({}x), pipeline stats {}",
+                    paymentsPerRun, threads, Math.round(direct), Math.round(writeBehind),
+                    Math.round(writeBehind / direct * 100) / 100.0, pipeline.getStats());
+        } finally {
+            pipeline.stop();
+        }
+    }
+    
+    private double runDirect(int count) throws InterruptedException {
+        return measure(count, () -> paymentService.createPayment(newPayment()));
+    }
+    
+    private double runWriteBehind(PaymentIngestionPipeline pipeline, int count) throws InterruptedException {
+        return measure(count, () -> {
+            while (true) {
+                try {
+                    pipeline.submit(newPayment()).join();
+                    return;
+                } catch (IngestionQueueFullException e) {
+                    // Same as a client honouring the 429 Retry-After, just much shorter
+                    Thread.onSpinWait();
+                }
+            }
+        });
+    }
+    
+    private double measure(int count, Runnable createOne) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger remaining = new AtomicInteger(count);
+        List<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            workers.add(executor.submit(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    createOne.run();
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Benchmark worker failed", e.getCause());
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return count / (elapsed / 1e9);
+    }
+    
+    private Payment newPayment() {
+        long n = sequence.incrementAndGet();
+        Payment payment = new Payment();
+        payment.setPaymentReferenceId("PREFBENCH" + n);
+        payment.setOrderId("BENCH" + n);
+        payment.setCustomerId("CUSTBENCH" + (n % 1000));
+        payment.setCustomerName("Benchmark Customer");
+        payment.setCustomerEmail("bench" + (n % 1000) + "@example.com");
+        payment.setAmount(10.0 + (n % 500));
+        payment.setCurrency("USD");
+        payment.setPaymentMethod(PaymentMethod.values()[(int) (n % PaymentMethod.values().length)]);
+        payment.setOrderType("Regular");
+        return payment;
+    }
+}
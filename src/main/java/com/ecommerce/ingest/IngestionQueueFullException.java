@@ -0,0 +1,13 @@
+package com.ecommerce.ingest;
+
+/**
+ * Thrown when the write-behind ingestion queue is full and the caller should back off.
+ */
+public class IngestionQueueFullException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public IngestionQueueFullException(int capacity) {
+        super("Ingestion queue is full (capacity " + capacity + ")");
+    }
+}
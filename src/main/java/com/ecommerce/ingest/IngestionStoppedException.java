@@ -0,0 +1,14 @@
+package com.ecommerce.ingest;
+
+/**
+ * Thrown (or used to fail a queued payment's future) once the write-behind pipeline
+ * has been stopped and will commit nothing more.
+ */
+public class IngestionStoppedException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public IngestionStoppedException() {
+        super("Ingestion pipeline is stopped");
+    }
+}
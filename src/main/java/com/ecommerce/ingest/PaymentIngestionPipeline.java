@@ -0,0 +1,219 @@
+package com.ecommerce.ingest;
+
+import com.ecommerce.model.Payment;
+import com.ecommerce.service.PaymentService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional write-behind path for createPayment ({@code payments.ingest.mode=write-behind}).
+ * <p>
+ * Requests are placed on a bounded ring buffer and a single committer thread drains
+ * whatever has accumulated (up to {@code batch-size}) into one transaction, so many
+ * inserts share one commit. Callers get a future that completes with the persisted
+ * payment, including its database id, only after that commit. A full buffer is
+ * rejected immediately with {@link IngestionQueueFullException} instead of queueing
+ * unbounded work. Once stopped, new payments are rejected with
+ * {@link IngestionStoppedException} and any the committer did not get to fail with it.
+ */
+@Component
+public class PaymentIngestionPipeline {
+    
+    private static final Logger log = LoggerFactory.getLogger(PaymentIngestionPipeline.class);
+    
+    private final PaymentService paymentService;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final long maxBatchDelayNanos;
+    private final Duration retryAfter;
+    private final BlockingQueue<PendingPayment> queue;
+    
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    
+    private volatile boolean running;
+    private Thread committer;
+    
+    public PaymentIngestionPipeline(PaymentService paymentService,
+                                    @Value("${payments.ingest.mode:direct}") String mode,
+                                    @Value("${payments.ingest.queue-capacity:10000}") int capacity,
+                                    @Value("${payments.ingest.batch-size:256}") int batchSize,
+                                    @Value("${payments.ingest.max-batch-delay:2ms}") Duration maxBatchDelay,
+                                    @Value("${payments.ingest.retry-after:1s}") Duration retryAfter) {
+        this.paymentService = paymentService;
+        this.enabled = "write-behind".equalsIgnoreCase(mode);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.maxBatchDelayNanos = maxBatchDelay.toNanos();
+        this.retryAfter = retryAfter;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+    
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        running = true;
+        committer = new Thread(this::run, "payment-ingest-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+    
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (committer != null) {
+            committer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        // Whatever the committer did not drain in time (or was offered as it exited)
+        List<PendingPayment> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            log.warn("Ingestion stopped with {} payments uncommitted", remaining.size());
+            remaining.forEach(this::failStopped);
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * How long a caller rejected with {@link IngestionQueueFullException} should wait.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+    
+    /**
+     * Queues a payment for group commit. The returned future completes once the
+     * payment's batch has committed.
+     */
+    public CompletableFuture<Payment> submit(Payment payment) {
+        if (!running) {
+            rejected.incrementAndGet();
+            throw new IngestionStoppedException();
+        }
+        PendingPayment pending = new PendingPayment(payment);
+        if (!queue.offer(pending)) {
+            rejected.incrementAndGet();
+            throw new IngestionQueueFullException(capacity);
+        }
+        // Stopped meanwhile: take it back unless the committer or stop() already has it
+        if (!running && queue.remove(pending)) {
+            rejected.incrementAndGet();
+            throw new IngestionStoppedException();
+        }
+        submitted.incrementAndGet();
+        return pending.future;
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long batchCount = batches.get();
+        stats.put("enabled", enabled);
+        stats.put("queueDepth", queue.size());
+        stats.put("queueCapacity", capacity);
+        stats.put("submitted", submitted.get());
+        stats.put("committed", committed.get());
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("batches", batchCount);
+        stats.put("averageBatchSize", batchCount > 0 ? Math.round(committed.get() * 100.0 / batchCount) / 100.0 : 0.0);
+        return stats;
+    }
+    
+    private void run() {
+        List<PendingPayment> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingPayment first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - batch.size());
+                
+                // Linger briefly for a fuller batch when traffic is light
+                long deadline = System.nanoTime() + maxBatchDelayNanos;
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    PendingPayment next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Ingestion committer failed", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    private void commit(List<PendingPayment> batch) {
+        List<Payment> payments = new ArrayList<>(batch.size());
+        for (PendingPayment pending : batch) {
+            payments.add(pending.payment);
+        }
+        
+        try {
+            List<Payment> saved = paymentService.createPayments(payments);
+            batches.incrementAndGet();
+            committed.addAndGet(saved.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(saved.get(i));
+            }
+        } catch (RuntimeException batchFailure) {
+            // One bad row (e.g. a duplicate reference id) must not fail its neighbours:
+            // retry the batch row by row so only the offending payments are rejected
+            for (PendingPayment pending : batch) {
+                try {
+                    Payment saved = paymentService.createPayments(List.of(pending.payment)).get(0);
+                    batches.incrementAndGet();
+                    committed.incrementAndGet();
+                    pending.future.complete(saved);
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                    pending.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+    
+    private void failStopped(PendingPayment pending) {
+        failed.incrementAndGet();
+        pending.future.completeExceptionally(new IngestionStoppedException());
+    }
+    
+    private static final class PendingPayment {
+        private final Payment payment;
+        private final CompletableFuture<Payment> future = new CompletableFuture<>();
+        
+        private PendingPayment(Payment payment) {
+            this.payment = payment;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.ecommerce.loadtest;
+
+import com.ecommerce.ids.TimeOrderedIdGenerator;
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentMethod;
+import com.ecommerce.model.PaymentStatus;
+import com.ecommerce.sample.SamplePaymentFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives payment writes and dashboard reads against a running instance and writes
+ * throughput and latency percentiles per request type to a JSON report.
+ * <p>
+ * Writers create payments built by {@link SamplePaymentFactory} (same validation,
+ * approval, deposit and refund distributions as the seeded data) and later move each
+ * one from PENDING to its sampled outcome with a status update. Readers mix
+ * {@code /aged-metrics} with random filters, {@code /statistics} and the overview
+ * chart's nine concurrent aged-metrics requests. With a rate set, requests are sent
+ * on a fixed schedule and latency is measured from the scheduled time, so a slow
+ * server shows up as latency rather than as fewer requests.
+ * <p>
+ * Run with {@code ./gradlew loadTest -PloadTestArgs="--duration=2m --writers=4"};
+ * options are listed in the README.
+ */
+public class LoadGenerator {
+    
+    private static final String[] DATE_FILTERS = {"last_7_days", "last_28_days", "last_30_days", "all"};
+    private static final String[] FREQUENCIES = {"hourly", "daily", "weekly", "monthly"};
+    private static final String[] OVERVIEW_STATES = {"success", "processing", "failed", "pending", "completed",
+                                                     "refunded", "cancelled", "expired", "declined"};
+    // Created payments waiting for their status update; bounded so a slow run doesn't grow it forever
+    private static final int MAX_PENDING_SETTLEMENTS = 100_000;
+    
+    private final URI target;
+    private final Duration duration;
+    private final Duration warmup;
+    private final int writers;
+    private final int readers;
+    private final double writeRate;
+    private final double readRate;
+    private final double updateRatio;
+    private final Path out;
+    
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Queue<Settlement> settlements = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingSettlements = new AtomicInteger();
+    private final AtomicInteger paymentCounter = new AtomicInteger();
+    private final TimeOrderedIdGenerator ids;
+    // The factory is not thread-safe; one per writer thread
+    private final ThreadLocal<SamplePaymentFactory> factories;
+    private final Map<String, OperationStats> stats = new LinkedHashMap<>();
+    private volatile long measureFrom;
+    
+    LoadGenerator(Map<String, String> options) {
+        this.target = URI.create(options.getOrDefault("target", "http://localhost:8080"));
+        this.duration = DurationStyle.detectAndParse(options.getOrDefault("duration", "60s"));
+        this.warmup = DurationStyle.detectAndParse(options.getOrDefault("warmup", "10s"));
+        this.writers = Integer.parseInt(options.getOrDefault("writers", "4"));
+        this.readers = Integer.parseInt(options.getOrDefault("readers", "8"));
+        this.writeRate = Double.parseDouble(options.getOrDefault("write-rate", "0"));
+        this.readRate = Double.parseDouble(options.getOrDefault("read-rate", "0"));
+        this.updateRatio = Double.parseDouble(options.getOrDefault("update-ratio", "0.5"));
+        this.out = Path.of(options.getOrDefault("out", "build/loadtest/report.json"));
+        // Reference ids are made client-side; the default node id keeps them apart from a server's
+        this.ids = new TimeOrderedIdGenerator(Integer.parseInt(
+                options.getOrDefault("node-id", String.valueOf(TimeOrderedIdGenerator.MAX_NODE_ID))));
+        this.factories = ThreadLocal.withInitial(() -> new SamplePaymentFactory(ThreadLocalRandom.current(), ids));
+        
+        for (String name : List.of("create", "updateStatus", "agedMetrics", "statistics", "overviewFanOut")) {
+            stats.put(name, new OperationStats(name));
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new LoadGenerator(options).run();
+    }
+    
+    void run() throws Exception {
+        System.out.println("Load test against " + target + ": " + writers + " writers, " + readers + " readers, "
+                + warmup.toSeconds() + "s warmup + " + duration.toSeconds() + "s measured");
+        
+        long start = System.nanoTime();
+        measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        Instant startedAt = Instant.now();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            workers.add(executor.submit(worker(end, writers, writeRate, this::writeOnce)));
+        }
+        for (int i = 0; i < readers; i++) {
+            workers.add(executor.submit(worker(end, readers, readRate, this::readOnce)));
+        }
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException e) {
+                executor.shutdownNow();
+                throw new IllegalStateException("Load test worker failed", e.getCause());
+            }
+        }
+        executor.shutdown();
+        
+        writeReport(startedAt, (System.nanoTime() - measureFrom) / 1e9);
+    }
+    
+    private interface Operation {
+        void run(Random random, long scheduledAt) throws Exception;
+    }
+    
+    /**
+     * One worker thread: closed loop when {@code rate} is 0, otherwise a fixed
+     * schedule of rate / threads requests per second.
+     */
+    private Callable<Void> worker(long end, int threads, double rate, Operation operation) {
+        return () -> {
+            Random random = ThreadLocalRandom.current();
+            long interval = rate > 0 ? (long) (threads * 1e9 / rate) : 0;
+            // Spread the threads' schedules over one interval
+            long next = System.nanoTime() + (interval > 0 ? random.nextLong(interval) : 0);
+            while (System.nanoTime() < end) {
+                if (interval > 0) {
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                    operation.run(random, next);
+                    next += interval;
+                } else {
+                    operation.run(random, System.nanoTime());
+                }
+            }
+            return null;
+        };
+    }
+    
+    private void writeOnce(Random random, long scheduledAt) throws Exception {
+        Settlement settlement = random.nextDouble() < updateRatio ? settlements.poll() : null;
+        if (settlement != null) {
+            pendingSettlements.decrementAndGet();
+            String query = "status=" + settlement.status
+                    + (settlement.errorMessage != null ? "&errorMessage=" + encode(settlement.errorMessage) : "");
+            HttpRequest request = HttpRequest.newBuilder(target.resolve("/api/payments/" + settlement.id + "/status?" + query))
+                    .PUT(HttpRequest.BodyPublishers.noBody())
+                    .timeout(Duration.ofSeconds(30))
+                    .build();
+            send("updateStatus", request, scheduledAt);
+            return;
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        Payment payment = factories.get().create(paymentCounter.incrementAndGet(), now, now);
+        PaymentStatus outcome = payment.getStatus();
+        HttpRequest request = HttpRequest.newBuilder(target.resolve("/api/payments"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(payment)))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        HttpResponse<String> response = send("create", request, scheduledAt);
+        // The server creates every payment as PENDING; queue the move to the sampled outcome
+        if (response != null && response.statusCode() == 201 && outcome != PaymentStatus.PENDING
+                && pendingSettlements.get() < MAX_PENDING_SETTLEMENTS) {
+            JsonNode id = objectMapper.readTree(response.body()).path("id");
+            if (id.isNumber()) {
+                settlements.add(new Settlement(id.asLong(), outcome, payment.getErrorMessage()));
+                pendingSettlements.incrementAndGet();
+            }
+        }
+    }
+    
+    private void readOnce(Random random, long scheduledAt) throws Exception {
+        double dice = random.nextDouble();
+        if (dice < 0.5) {
+            // Aged-metrics tab: any combination of the dropdown filters
+            String query = "orderType=" + encode(pick(random, withAll(SamplePaymentFactory.getOrderTypes())))
+                    + "&paymentMethod=" + pick(random, withAll(enumNames(PaymentMethod.values())))
+                    + "&paymentState=" + pick(random, withAll(enumNames(PaymentStatus.values())))
+                    + "&frequency=" + pick(random, Arrays.asList(FREQUENCIES));
+            String dateFilter = pick(random, Arrays.asList(DATE_FILTERS));
+            if (!dateFilter.equals("all")) query += "&dateFilter=" + dateFilter;
+            send("agedMetrics", get("/api/payments/aged-metrics?" + query), scheduledAt);
+        } else if (dice < 0.75) {
+            send("statistics", get("/api/payments/statistics"), scheduledAt);
+        } else {
+            overviewFanOut(random, scheduledAt);
+        }
+    }
+    
+    // The overview chart loads all nine payment states at once and renders when the last one arrives
+    private void overviewFanOut(Random random, long scheduledAt) {
+        String dateFilter = pick(random, Arrays.asList(DATE_FILTERS));
+        String frequency = pick(random, Arrays.asList(FREQUENCIES));
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (String state : OVERVIEW_STATES) {
+            String query = "orderType=all&paymentMethod=all&paymentState=" + state + "&frequency=" + frequency
+                    + (dateFilter.equals("all") ? "" : "&dateFilter=" + dateFilter) + "&includeTransactions=false";
+            responses.add(client.sendAsync(get("/api/payments/aged-metrics?" + query), HttpResponse.BodyHandlers.ofString()));
+        }
+        boolean ok = true;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            try {
+                ok &= response.join().statusCode() < 400;
+            } catch (CompletionException e) {
+                ok = false;
+            }
+        }
+        record("overviewFanOut", scheduledAt, ok);
+    }
+    
+    private HttpResponse<String> send(String operation, HttpRequest request, long scheduledAt) throws InterruptedException {
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            record(operation, scheduledAt, response.statusCode() < 400);
+            return response;
+        } catch (IOException e) {
+            record(operation, scheduledAt, false);
+            return null;
+        }
+    }
+    
+    private void record(String operation, long scheduledAt, boolean ok) {
+        long now = System.nanoTime();
+        if (scheduledAt >= measureFrom) {
+            stats.get(operation).record(now - scheduledAt, ok);
+        }
+    }
+    
+    private void writeReport(Instant startedAt, double seconds) throws IOException {
+        Map<String, Object> operations = new LinkedHashMap<>();
+        long total = 0;
+        for (OperationStats operation : stats.values()) {
+            Map<String, Object> result = operation.toMap(seconds);
+            operations.put(operation.getName(), result);
+            total += (Long) result.get("requests");
+            System.out.println(operation.getName() + ": " + result);
+        }
+        
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("target", target.toString());
+        config.put("warmupSeconds", warmup.toSeconds());
+        config.put("writers", writers);
+        config.put("readers", readers);
+        config.put("writeRate", writeRate);
+        config.put("readRate", readRate);
+        config.put("updateRatio", updateRatio);
+        
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startedAt.toString());
+        report.put("measuredSeconds", Math.round(seconds * 100.0) / 100.0);
+        report.put("config", config);
+        report.put("totalThroughputPerSecond", Math.round(total / seconds * 100.0) / 100.0);
+        report.put("operations", operations);
+        
+        if (out.getParent() != null) Files.createDirectories(out.getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(out.toFile(), report);
+        System.out.println("Report written to " + out.toAbsolutePath());
+    }
+    
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(target.resolve(path)).GET().timeout(Duration.ofSeconds(30)).build();
+    }
+    
+    private static List<String> withAll(List<String> values) {
+        List<String> result = new ArrayList<>(values);
+        result.add("all");
+        return result;
+    }
+    
+    private static List<String> enumNames(Enum<?>[] values) {
+        return Arrays.stream(values).map(Enum::name).toList();
+    }
+    
+    private static String pick(Random random, List<String> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+    
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+    
+    private static final class Settlement {
+        final long id;
+        final PaymentStatus status;
+        final String errorMessage;
+        
+        Settlement(long id, PaymentStatus status, String errorMessage) {
+            this.id = id;
+            this.status = status;
+            this.errorMessage = errorMessage;
+        }
+    }
+}
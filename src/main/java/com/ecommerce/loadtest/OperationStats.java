@@ -0,0 +1,55 @@
+package com.ecommerce.loadtest;
+
+import com.ecommerce.analytics.DDSketch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latency and outcome counts for one kind of load-test request. Latencies go into
+ * a DDSketch (1% relative accuracy), so percentiles need no per-request storage.
+ */
+class OperationStats {
+    
+    private final String name;
+    private final DDSketch latencyMillis = new DDSketch();
+    private long errors;
+    private double totalMillis;
+    
+    OperationStats(String name) {
+        this.name = name;
+    }
+    
+    synchronized void record(long latencyNanos, boolean ok) {
+        double millis = latencyNanos / 1e6;
+        latencyMillis.add(millis);
+        totalMillis += millis;
+        if (!ok) errors++;
+    }
+    
+    String getName() {
+        return name;
+    }
+    
+    synchronized Map<String, Object> toMap(double seconds) {
+        long count = latencyMillis.getCount();
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("mean", count > 0 ? round(totalMillis / count) : null);
+        latency.put("p50", round(latencyMillis.quantile(0.50)));
+        latency.put("p90", round(latencyMillis.quantile(0.90)));
+        latency.put("p99", round(latencyMillis.quantile(0.99)));
+        latency.put("p999", round(latencyMillis.quantile(0.999)));
+        latency.put("max", round(latencyMillis.quantile(1.0)));
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("requests", count);
+        result.put("errors", errors);
+        result.put("throughputPerSecond", round(count / seconds));
+        result.put("latencyMillis", latency);
+        return result;
+    }
+    
+    private static Double round(Double value) {
+        return value != null ? Math.round(value * 100.0) / 100.0 : null;
+    }
+}
@@ -2,15 +2,28 @@ package com.ecommerce.model;
 
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
+import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
 
 @Entity
-@Table(name = "payments")
+@Table(name = "payments", indexes = {
+    @Index(name = "idx_payments_created_at_id", columnList = "createdAt, id"),
+    @Index(name = "idx_payments_updated_at_id", columnList = "updatedAt, id"),
+    @Index(name = "idx_payments_amount_id", columnList = "amount, id"),
+    @Index(name = "idx_payments_status", columnList = "status"),
+    @Index(name = "idx_payments_payment_method", columnList = "paymentMethod"),
+    @Index(name = "idx_payments_order_type", columnList = "orderType"),
+    @Index(name = "idx_payments_country", columnList = "country"),
+    @Index(name = "idx_payments_order_id", columnList = "orderId"),
+    @Index(name = "idx_payments_customer_email", columnList = "customerEmail")
+})
 @Data
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class Payment {
@@ -57,13 +70,16 @@ public class Payment {
     @Column
     private String orderType;
     
+    // Stored as UTC instants; the JSON form is unchanged (see ServerLocalTimestamp)
     @Column(nullable = false)
-    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
-    private LocalDateTime createdAt;
+    @JsonSerialize(using = ServerLocalTimestamp.Serializer.class)
+    @JsonDeserialize(using = ServerLocalTimestamp.Deserializer.class)
+    private Instant createdAt;
     
     @Column
-    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
-    private LocalDateTime updatedAt;
+    @JsonSerialize(using = ServerLocalTimestamp.Serializer.class)
+    @JsonDeserialize(using = ServerLocalTimestamp.Deserializer.class)
+    private Instant updatedAt;
     
     @Column
     private String description;
@@ -0,0 +1,54 @@
+package com.ecommerce.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * JSON form of payment timestamps. They are stored as instants but rendered as
+ * server-local "yyyy-MM-dd'T'HH:mm:ss", which is what the API returned when they
+ * were stored as local date-times. Input may be either that form or an ISO
+ * timestamp with an offset.
+ */
+public final class ServerLocalTimestamp {
+    
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    
+    private ServerLocalTimestamp() {
+    }
+    
+    public static class Serializer extends JsonSerializer<Instant> {
+        @Override
+        public void serialize(Instant value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeString(FORMAT.format(LocalDateTime.ofInstant(value, ZoneId.systemDefault())));
+        }
+    }
+    
+    public static class Deserializer extends JsonDeserializer<Instant> {
+        @Override
+        public Instant deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            String text = p.getValueAsString();
+            if (text == null || text.isBlank()) return null;
+            try {
+                return LocalDateTime.parse(text).atZone(ZoneId.systemDefault()).toInstant();
+            } catch (DateTimeParseException e) {
+                try {
+                    return OffsetDateTime.parse(text).toInstant();
+                } catch (DateTimeParseException ignored) {
+                    return (Instant) ctxt.handleWeirdStringValue(Instant.class, text, "Expected yyyy-MM-dd'T'HH:mm:ss or an ISO offset date-time");
+                }
+            }
+        }
+    }
+}
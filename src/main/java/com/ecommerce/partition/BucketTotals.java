@@ -0,0 +1,96 @@
+package com.ecommerce.partition;
+
+import com.ecommerce.analytics.BucketSketches;
+import com.ecommerce.model.Payment;
+
+import java.util.Map;
+
+/**
+ * Count, amount and sketches per time bucket plus the totals, filled from partition
+ * hours or, for ranges older than the partitions keep, from payment rows. A bucket's
+ * sketches are allocated when the first payment or hour lands in it.
+ */
+public class BucketTotals {
+    
+    private final long[] counts;
+    private final double[] amounts;
+    private final BucketSketches[] sketches;
+    private final int sketchPrecision;
+    private long totalCount;
+    private double totalAmount;
+    // Payments in the totals but in no bucket
+    private BucketSketches outsideSketches;
+    
+    public BucketTotals(int buckets, int sketchPrecision) {
+        this.counts = new long[buckets];
+        this.amounts = new double[buckets];
+        this.sketches = new BucketSketches[buckets];
+        this.sketchPrecision = sketchPrecision;
+    }
+    
+    /**
+     * Adds to a bucket and the total; a negative bucket adds to the total only.
+     */
+    public void add(int bucket, long count, double amount) {
+        if (bucket >= 0) {
+            counts[bucket] += count;
+            amounts[bucket] += amount;
+        }
+        totalCount += count;
+        totalAmount += amount;
+    }
+    
+    public void addSketches(int bucket, BucketSketches other) {
+        sketchesOf(bucket).merge(other);
+    }
+    
+    public void addSketches(int bucket, Payment payment) {
+        sketchesOf(bucket).add(payment);
+    }
+    
+    public int getBucketCount() {
+        return counts.length;
+    }
+    
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+    
+    public double getAmount(int bucket) {
+        return amounts[bucket];
+    }
+    
+    public long getTotalCount() {
+        return totalCount;
+    }
+    
+    public double getTotalAmount() {
+        return totalAmount;
+    }
+    
+    public void writeSketchesTo(int bucket, Map<String, Object> target) {
+        if (sketches[bucket] != null) {
+            sketches[bucket].writeTo(target);
+        } else {
+            BucketSketches.writeEmptyTo(target);
+        }
+    }
+    
+    public void writeTotalSketchesTo(Map<String, Object> target) {
+        BucketSketches total = new BucketSketches(sketchPrecision);
+        if (outsideSketches != null) total.merge(outsideSketches);
+        for (BucketSketches bucket : sketches) {
+            if (bucket != null) total.merge(bucket);
+        }
+        total.writeTo(target);
+    }
+    
+    private BucketSketches sketchesOf(int bucket) {
+        if (bucket < 0) {
+            if (outsideSketches == null) outsideSketches = new BucketSketches(sketchPrecision);
+            return outsideSketches;
+        }
+        if (sketches[bucket] == null) sketches[bucket] = new BucketSketches(sketchPrecision);
+        return sketches[bucket];
+    }
+}
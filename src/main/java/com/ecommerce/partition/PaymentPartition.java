@@ -0,0 +1,233 @@
+package com.ecommerce.partition;
+
+import com.ecommerce.analytics.BucketSketches;
+import com.ecommerce.model.PaymentMethod;
+import com.ecommerce.model.PaymentStatus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.LongToIntFunction;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Aggregates of one orderType (and country, when partitioning by country): count and
+ * amount per createdAt hour, status and paymentMethod, and per hour the sketches of
+ * all its payments. Hours older than the retention are folded into one running total,
+ * so the size of a partition depends on the retention, not on the number of payments.
+ * <p>
+ * Not thread-safe; {@link PaymentPartitions} guards each partition with its own monitor.
+ * Readers merge the sketches of closed hours outside it, so those are replaced by an
+ * updated copy instead of being changed.
+ */
+class PaymentPartition {
+    
+    private static final PaymentStatus[] STATUSES = PaymentStatus.values();
+    private static final PaymentMethod[] METHODS = PaymentMethod.values();
+    
+    private final String orderType;
+    private final String country;
+    private final int sketchPrecision;
+    // Epoch hour of createdAt -> that hour's cells
+    private final TreeMap<Long, Cells> hours = new TreeMap<>();
+    private final Cells older = new Cells();
+    
+    PaymentPartition(String orderType, String country, int sketchPrecision) {
+        this.orderType = orderType;
+        this.country = country;
+        this.sketchPrecision = sketchPrecision;
+    }
+    
+    String getOrderType() {
+        return orderType;
+    }
+    
+    String getCountry() {
+        return country;
+    }
+    
+    /**
+     * Adds {@code count} payments (negative to remove them) created in {@code hour};
+     * hours before {@code firstHour} go to the running total of older payments.
+     */
+    void add(long hour, long firstHour, PaymentStatus status, PaymentMethod method, long count, double amount) {
+        Cells cells = hour < firstHour ? older : hours.computeIfAbsent(hour, h -> new Cells());
+        cells.add(status, method, count, amount);
+    }
+    
+    /**
+     * Adds a created payment to the sketches of {@code hour}. Sketches of hours before
+     * {@code openHour} (and of older payments) may be read outside the monitor and are
+     * copied first.
+     */
+    void addSketches(long hour, long firstHour, long openHour, String customerId, String ipAddress,
+                     String country, Double amount) {
+        Cells cells = hour < firstHour ? older : hours.computeIfAbsent(hour, h -> new Cells());
+        if (cells.sketches == null) {
+            cells.sketches = new BucketSketches(sketchPrecision);
+        } else if (hour < openHour) {
+            cells.sketches = cells.sketches.copy();
+        }
+        cells.sketches.add(customerId, ipAddress, country, amount);
+    }
+    
+    /**
+     * Folds the hours before {@code firstHour} into the running total of older payments.
+     */
+    void expire(long firstHour) {
+        SortedMap<Long, Cells> expired = hours.headMap(firstHour);
+        if (expired.isEmpty()) return;
+        BucketSketches olderSketches = older.sketches != null ? older.sketches.copy() : new BucketSketches(sketchPrecision);
+        for (Cells cells : expired.values()) {
+            older.addAll(cells);
+            if (cells.sketches != null) olderSketches.merge(cells.sketches);
+        }
+        older.sketches = olderSketches;
+        expired.clear();
+    }
+    
+    /**
+     * Adds the matching cells of every hour after {@code afterHour} - and of the older
+     * payments when {@code afterHour} is null - to {@code into}, in the bucket
+     * {@code bucketOf} gives the hour (or only to the total when it gives -1). With a
+     * {@code sketchSink}, also hands it each hour's sketches and bucket: as they are
+     * for closed hours, as a copy from {@code openHour} on.
+     */
+    void collect(boolean[] statuses, boolean[] methods, Long afterHour, LongToIntFunction bucketOf, BucketTotals into,
+                 long openHour, ObjIntConsumer<BucketSketches> sketchSink) {
+        if (afterHour == null) {
+            older.collect(statuses, methods, -1, into);
+            if (sketchSink != null && older.sketches != null) sketchSink.accept(older.sketches, -1);
+        }
+        SortedMap<Long, Cells> selected = afterHour == null ? hours : hours.tailMap(afterHour, false);
+        for (Map.Entry<Long, Cells> hour : selected.entrySet()) {
+            int bucket = bucketOf.applyAsInt(hour.getKey());
+            Cells cells = hour.getValue();
+            cells.collect(statuses, methods, bucket, into);
+            if (sketchSink != null && cells.sketches != null) {
+                sketchSink.accept(hour.getKey() < openHour ? cells.sketches : cells.sketches.copy(), bucket);
+            }
+        }
+    }
+    
+    Map<String, Object> toMap() {
+        Cells all = new Cells();
+        all.addAll(older);
+        hours.values().forEach(all::addAll);
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("orderType", orderType);
+        if (country != null) result.put("country", country);
+        result.put("payments", all.total());
+        result.put("hours", hours.size());
+        Map<String, Object> byStatus = new LinkedHashMap<>();
+        for (PaymentStatus status : STATUSES) {
+            long count = 0;
+            double amount = 0;
+            for (PaymentMethod method : METHODS) {
+                count += all.counts[cell(status, method)];
+                amount += all.amounts[cell(status, method)];
+            }
+            if (count == 0) continue;
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("count", count);
+            s.put("amount", Math.round(amount * 100.0) / 100.0);
+            byStatus.put(status.name(), s);
+        }
+        result.put("byStatus", byStatus);
+        return result;
+    }
+    
+    void writeTo(DataOutput out) throws IOException {
+        older.writeTo(out);
+        out.writeInt(hours.size());
+        for (Map.Entry<Long, Cells> hour : hours.entrySet()) {
+            out.writeLong(hour.getKey());
+            hour.getValue().writeTo(out);
+        }
+    }
+    
+    void readFrom(DataInput in) throws IOException {
+        older.readFrom(in);
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long hour = in.readLong();
+            hours.computeIfAbsent(hour, h -> new Cells()).readFrom(in);
+        }
+    }
+    
+    private static int cell(PaymentStatus status, PaymentMethod method) {
+        return status.ordinal() * METHODS.length + method.ordinal();
+    }
+    
+    // Count and amount per (status, paymentMethod), and the sketches of all of them
+    private static final class Cells {
+        private final long[] counts = new long[STATUSES.length * METHODS.length];
+        private final double[] amounts = new double[STATUSES.length * METHODS.length];
+        private BucketSketches sketches;
+        
+        void add(PaymentStatus status, PaymentMethod method, long count, double amount) {
+            counts[cell(status, method)] += count;
+            amounts[cell(status, method)] += amount;
+        }
+        
+        void addAll(Cells other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+                amounts[i] += other.amounts[i];
+            }
+        }
+        
+        long total() {
+            long total = 0;
+            for (long count : counts) total += count;
+            return total;
+        }
+        
+        void collect(boolean[] statuses, boolean[] methods, int bucket, BucketTotals into) {
+            long count = 0;
+            double amount = 0;
+            for (PaymentStatus status : STATUSES) {
+                if (!statuses[status.ordinal()]) continue;
+                for (PaymentMethod method : METHODS) {
+                    if (!methods[method.ordinal()]) continue;
+                    count += counts[cell(status, method)];
+                    amount += amounts[cell(status, method)];
+                }
+            }
+            if (count != 0) into.add(bucket, count, amount);
+        }
+        
+        // Non-empty cells only, keyed by enum names so adding a status or method keeps old sections readable
+        void writeTo(DataOutput out) throws IOException {
+            int cells = 0;
+            for (long count : counts) {
+                if (count != 0) cells++;
+            }
+            out.writeInt(cells);
+            for (PaymentStatus status : STATUSES) {
+                for (PaymentMethod method : METHODS) {
+                    int i = cell(status, method);
+                    if (counts[i] == 0) continue;
+                    out.writeUTF(status.name());
+                    out.writeUTF(method.name());
+                    out.writeLong(counts[i]);
+                    out.writeDouble(amounts[i]);
+                }
+            }
+            out.writeBoolean(sketches != null);
+            if (sketches != null) sketches.writeTo(out);
+        }
+        
+        void readFrom(DataInput in) throws IOException {
+            int cells = in.readInt();
+            for (int i = 0; i < cells; i++) {
+                PaymentStatus status = PaymentStatus.valueOf(in.readUTF());
+                PaymentMethod method = PaymentMethod.valueOf(in.readUTF());
+                add(status, method, in.readLong(), in.readDouble());
+            }
+            sketches = in.readBoolean() ? BucketSketches.readFrom(in) : null;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.ecommerce.partition;
+
+import com.ecommerce.analytics.BucketSketches;
+import com.ecommerce.event.PaymentEvent;
+import com.ecommerce.eventlog.PaymentEventLog;
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentMethod;
+import com.ecommerce.model.PaymentStatus;
+import com.ecommerce.repository.PaymentRepository;
+import com.ecommerce.snapshot.SnapshotParticipant;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongToIntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Aged-metrics aggregates per orderType - each business line is effectively a
+ * tenant - and optionally per country ({@code payments.partitions.by-country}):
+ * count and amount per createdAt hour, status and paymentMethod, plus per hour the
+ * distinct-count and amount sketches of its payments ({@link BucketSketches}), for
+ * the hours of the retention ({@code payments.partitions.retention}) and one total
+ * for older payments. Aged metrics filtered by orderType read only that orderType's
+ * partitions, and only the hours in range, instead of loading payment rows.
+ * <p>
+ * Sketches are kept per hour across statuses and payment methods - per cell they
+ * would cost statuses times methods as much memory - so only aggregates without a
+ * status or method filter include them.
+ * <p>
+ * Counts are seeded from one grouped query and sketches from a streamed projection,
+ * before the web server starts (with payment commits held at the event log's commit
+ * gate); maintained from the event log and saved in analytics snapshots.
+ * <p>
+ * Each partition has its own monitor, so events and reads for one orderType don't
+ * wait for another's; a read holds a partition's monitor only while summing the
+ * cells of the hours in range, merging their sketches after releasing it. The
+ * {@code structure} lock is shared by events and reads and taken exclusively only
+ * to fold expired hours, publish a rebuild and write or restore a snapshot.
+ */
+@Component
+public class PaymentPartitions implements SnapshotParticipant {
+    
+    private static final long HOUR_MILLIS = 3_600_000L;
+    
+    private final PaymentRepository paymentRepository;
+    private final PaymentEventLog eventLog;
+    private final boolean byCountry;
+    private final long retentionHours;
+    private final int sketchPrecision;
+    
+    private final Map<PartitionKey, PaymentPartition> partitions = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock structure = new ReentrantReadWriteLock();
+    // Hours before this one are folded into each partition's total of older payments; changes under the write lock
+    private volatile long firstHour = Long.MIN_VALUE;
+    // Latest hour a reader or writer has treated as current; sketches of earlier hours are copy-on-write
+    private final AtomicLong openHour = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong lastSequence = new AtomicLong();
+    
+    public PaymentPartitions(PaymentRepository paymentRepository, PaymentEventLog eventLog,
+                             @Value("${payments.partitions.by-country:false}") boolean byCountry,
+                             @Value("${payments.partitions.retention:100d}") Duration retention,
+                             @Value("${payments.partitions.sketch-precision:10}") int sketchPrecision) {
+        this.paymentRepository = paymentRepository;
+        this.eventLog = eventLog;
+        this.byCountry = byCountry;
+        this.retentionHours = Math.max(1, retention.toHours());
+        this.sketchPrecision = sketchPrecision;
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        // Filled in place outside the monitor: no reader can see these partitions yet
+        Map<PartitionKey, PaymentPartition> seeded = new HashMap<>();
+        long first = currentHour() - retentionHours + 1;
+        long sequence = eventLog.runExclusive(() -> {
+            for (Object[] row : paymentRepository.aggregateByPartitionAndHour()) {
+                partition(seeded, (String) row[0], (String) row[1]).add(((Number) row[4]).longValue(), first,
+                        (PaymentStatus) row[2], (PaymentMethod) row[3], ((Number) row[5]).longValue(), ((Number) row[6]).doubleValue());
+            }
+            try (Stream<Object[]> rows = paymentRepository.streamPartitionSketchRows()) {
+                rows.forEach(row -> partition(seeded, (String) row[0], (String) row[1]).addSketches(
+                        hourOf((Instant) row[2]), first, Long.MIN_VALUE, (String) row[3], (String) row[4], (String) row[1], (Double) row[5]));
+            }
+        });
+        structure.writeLock().lock();
+        try {
+            partitions.clear();
+            partitions.putAll(seeded);
+            firstHour = first;
+            lastSequence.set(sequence);
+        } finally {
+            structure.writeLock().unlock();
+        }
+        advance();
+    }
+    
+    @Override
+    public void onPaymentEvent(long sequence, PaymentEvent event) {
+        Payment payment = event.getPayment();
+        if (payment.getCreatedAt() == null || payment.getStatus() == null || payment.getPaymentMethod() == null) {
+            lastSequence.accumulateAndGet(sequence, Math::max);
+            return;
+        }
+        advance();
+        long hour = hourOf(payment.getCreatedAt());
+        double amount = payment.getAmount() != null ? payment.getAmount() : 0.0;
+        structure.readLock().lock();
+        try {
+            // Claimed atomically: a snapshot catch-up may replay while the delivery thread runs
+            long last;
+            do {
+                last = lastSequence.get();
+                if (sequence <= last) return;
+            } while (!lastSequence.compareAndSet(last, sequence));
+            long first = firstHour;
+            PaymentPartition partition = partition(partitions, payment.getOrderType(), payment.getCountry());
+            synchronized (partition) {
+                // orderType, country, createdAt, paymentMethod and amount never change, so a status
+                // change moves the payment between two cells of the same hour
+                if (event.getType() == PaymentEvent.Type.STATUS_CHANGED && event.getPreviousStatus() != null) {
+                    partition.add(hour, first, event.getPreviousStatus(), payment.getPaymentMethod(), -1, -amount);
+                }
+                partition.add(hour, first, payment.getStatus(), payment.getPaymentMethod(), 1, amount);
+                if (event.getType() == PaymentEvent.Type.CREATED) {
+                    // Read under the partition's monitor: a reader closes the hour before taking it
+                    partition.addSketches(hour, first, openHour(), payment.getCustomerId(), payment.getIpAddress(),
+                            payment.getCountry(), payment.getAmount());
+                }
+            }
+        } finally {
+            structure.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Whether the partitions still hold hourly aggregates for payments created at
+     * {@code from}; older payments only count in totals.
+     */
+    public boolean covers(Instant from) {
+        return hourOf(from) >= advance();
+    }
+    
+    /**
+     * Adds the payments matching the filters (each null or "all" for any; enum filters
+     * ignore case and underscores) that were created in or after the hour containing
+     * {@code since} - every payment when {@code since} is null - to {@code into}: to
+     * the bucket {@code bucketOfHourEnd} gives the end (epoch millis) of their hour, or
+     * only to the total when it gives -1. Payments without an orderType are included
+     * in every orderType, as the aged-metrics filter always has.
+     * <p>
+     * Returns whether the sketches were added too: only without a method or state filter.
+     */
+    public boolean aggregate(String orderType, String paymentMethod, String paymentState, Instant since,
+                             LongToIntFunction bucketOfHourEnd, BucketTotals into) {
+        boolean[] methods = matching(PaymentMethod.values(), paymentMethod);
+        boolean[] statuses = matching(PaymentStatus.values(), paymentState);
+        boolean withSketches = isAll(paymentMethod) && isAll(paymentState);
+        Long afterHour = since != null ? hourOf(since) - 1 : null;
+        List<BucketSketches> sketches = new ArrayList<>();
+        List<Integer> sketchBuckets = new ArrayList<>();
+        advance();
+        structure.readLock().lock();
+        try {
+            long open = openHour();
+            for (PaymentPartition partition : partitions.values()) {
+                if (orderType == null || orderType.equals("all") || partition.getOrderType() == null
+                        || partition.getOrderType().equalsIgnoreCase(orderType)) {
+                    synchronized (partition) {
+                        partition.collect(statuses, methods, afterHour, hour -> bucketOfHourEnd.applyAsInt((hour + 1) * HOUR_MILLIS),
+                                into, open, withSketches ? (hourSketches, bucket) -> {
+                                    sketches.add(hourSketches);
+                                    sketchBuckets.add(bucket);
+                                } : null);
+                    }
+                }
+            }
+        } finally {
+            structure.readLock().unlock();
+        }
+        // Closed hours' sketches are never changed in place, and open ones were copied
+        for (int i = 0; i < sketches.size(); i++) {
+            into.addSketches(sketchBuckets.get(i), sketches.get(i));
+        }
+        return withSketches;
+    }
+    
+    /**
+     * The stored spelling of an orderType given in any case (e.g. "cvc_no_show_penality"
+     * from the filter options), so it can be compared exactly; unknown values as given.
+     */
+    public String canonicalOrderType(String orderType) {
+        if (orderType == null) return null;
+        for (PartitionKey key : partitions.keySet()) {
+            if (key.orderType != null && key.orderType.equalsIgnoreCase(orderType.trim())) return key.orderType;
+        }
+        return orderType;
+    }
+    
+    public int getSketchPrecision() {
+        return sketchPrecision;
+    }
+    
+    public Map<String, Object> getStats() {
+        long first = advance();
+        List<PaymentPartition> sorted = new ArrayList<>(partitions.values());
+        sorted.sort(Comparator.comparing(PaymentPartition::getOrderType, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER))
+                .thenComparing(PaymentPartition::getCountry, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER)));
+        List<Map<String, Object>> reports = new ArrayList<>();
+        for (PaymentPartition partition : sorted) {
+            synchronized (partition) {
+                reports.add(partition.toMap());
+            }
+        }
+        
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("byCountry", byCountry);
+        stats.put("retentionHours", retentionHours);
+        stats.put("sketchPrecision", sketchPrecision);
+        stats.put("firstHour", Instant.ofEpochMilli(first * HOUR_MILLIS).toString());
+        stats.put("partitions", reports);
+        return stats;
+    }
+    
+    @Override
+    public String getSnapshotSection() {
+        return "partitions";
+    }
+    
+    @Override
+    public int getSnapshotVersion() {
+        return 2;
+    }
+    
+    @Override
+    public long writeSnapshot(DataOutput out) throws IOException {
+        // Exclusive, so the partitions are all at lastSequence
+        structure.writeLock().lock();
+        try {
+            out.writeBoolean(byCountry);
+            out.writeInt(sketchPrecision);
+            out.writeLong(firstHour);
+            out.writeInt(partitions.size());
+            for (PaymentPartition partition : partitions.values()) {
+                writeNullable(out, partition.getOrderType());
+                writeNullable(out, partition.getCountry());
+                partition.writeTo(out);
+            }
+            return lastSequence.get();
+        } finally {
+            structure.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void restoreSnapshot(DataInput in, long sequence) throws IOException {
+        if (in.readBoolean() != byCountry) {
+            throw new IOException("payments.partitions.by-country changed; rebuilding from the payments table");
+        }
+        if (in.readInt() != sketchPrecision) {
+            throw new IOException("payments.partitions.sketch-precision changed; rebuilding from the payments table");
+        }
+        Map<PartitionKey, PaymentPartition> restored = new HashMap<>();
+        long first = in.readLong();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            partition(restored, readNullable(in), readNullable(in)).readFrom(in);
+        }
+        structure.writeLock().lock();
+        try {
+            partitions.clear();
+            partitions.putAll(restored);
+            firstHour = first;
+            lastSequence.set(sequence);
+        } finally {
+            structure.writeLock().unlock();
+        }
+        // A shorter retention than the snapshot's folds the extra hours now
+        advance();
+    }
+    
+    // Moves the retention forward to the current hour and returns its first hour; folding is exclusive
+    private long advance() {
+        long first = currentHour() - retentionHours + 1;
+        if (first > firstHour) {
+            structure.writeLock().lock();
+            try {
+                if (first > firstHour) {
+                    partitions.values().forEach(p -> p.expire(first));
+                    firstHour = first;
+                }
+            } finally {
+                structure.writeLock().unlock();
+            }
+        }
+        return firstHour;
+    }
+    
+    // Never moves back, so an hour once closed for a reader stays closed for writers
+    private long openHour() {
+        return openHour.accumulateAndGet(currentHour(), Math::max);
+    }
+    
+    private PaymentPartition partition(Map<PartitionKey, PaymentPartition> into, String orderType, String country) {
+        PartitionKey key = new PartitionKey(orderType, byCountry ? country : null);
+        return into.computeIfAbsent(key, k -> new PaymentPartition(k.orderType, k.country, sketchPrecision));
+    }
+    
+    private static long currentHour() {
+        return Math.floorDiv(System.currentTimeMillis(), HOUR_MILLIS);
+    }
+    
+    private static long hourOf(Instant instant) {
+        return Math.floorDiv(instant.toEpochMilli(), HOUR_MILLIS);
+    }
+    
+    private static boolean isAll(String filter) {
+        return filter == null || filter.equals("all");
+    }
+    
+    // Which enum constants a filter value selects: all for null or "all", else those equal ignoring case and underscores
+    private static boolean[] matching(Enum<?>[] values, String filter) {
+        boolean[] selected = new boolean[values.length];
+        String normalized = filter == null || filter.equals("all") ? null : filter.toLowerCase().replace("_", "");
+        for (Enum<?> value : values) {
+            selected[value.ordinal()] = normalized == null || value.name().toLowerCase().replace("_", "").equals(normalized);
+        }
+        return selected;
+    }
+    
+    private static void writeNullable(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+    
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    
+    private static final class PartitionKey {
+        private final String orderType;
+        private final String country;
+        
+        private PartitionKey(String orderType, String country) {
+            this.orderType = orderType;
+            this.country = country;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PartitionKey)) return false;
+            PartitionKey other = (PartitionKey) o;
+            return Objects.equals(orderType, other.orderType) && Objects.equals(country, other.country);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(orderType, country);
+        }
+    }
+}
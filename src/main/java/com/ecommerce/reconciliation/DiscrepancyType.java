@@ -0,0 +1,23 @@
+package com.ecommerce.reconciliation;
+
+/**
+ * Ways a payment's lifecycle amounts can fail to reconcile.
+ */
+public enum DiscrepancyType {
+    PARTIAL_APPROVAL("Approved amount is below the amount sent for approval"),
+    DEPOSIT_BELOW_APPROVED("Deposited amount is below the approved amount"),
+    DEPOSIT_ABOVE_APPROVED("Deposited amount exceeds the approved amount"),
+    PARTIAL_REFUND("Refunded amount is below the requested refund"),
+    REFUND_ABOVE_DEPOSIT("Refunded amount exceeds the deposited amount"),
+    REFUND_PENDING("Refund requested but nothing refunded for longer than the allowed delay");
+    
+    private final String description;
+    
+    DiscrepancyType(String description) {
+        this.description = description;
+    }
+    
+    public String getDescription() {
+        return description;
+    }
+}
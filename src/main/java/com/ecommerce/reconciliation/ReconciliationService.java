@@ -0,0 +1,324 @@
+package com.ecommerce.reconciliation;
+
+import com.ecommerce.repository.PaymentRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that each payment's approval, deposit and refund amounts reconcile and keeps
+ * the payments that don't, by {@link DiscrepancyType}.
+ * <p>
+ * Runs page through the payments table in (updatedAt, id) order with a keyset cursor,
+ * {@code chunk-size} rows at a time, starting after the previous run's watermark, so
+ * only payments written since then are re-examined. The watermark stays {@code lag}
+ * behind the run's start so a write whose transaction commits after the run has read
+ * past its updatedAt is still picked up next time. Whether a pending refund is
+ * overdue depends on the clock rather than on a write, so that is decided when
+ * results are read, from the first write at which the refund was seen pending: later
+ * writes to the payment don't restart the clock.
+ * <p>
+ * Findings of payments that reconcile again are dropped; at most {@code max-findings}
+ * are kept, and payments beyond that are only counted.
+ */
+@Service
+public class ReconciliationService {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReconciliationService.class);
+    
+    // Amounts are rounded to cents, so anything below half a cent is equal
+    private static final double TOLERANCE = 0.005;
+    
+    private final PaymentRepository paymentRepository;
+    private final int chunkSize;
+    private final Duration lag;
+    private final Duration refundPendingAfter;
+    private final Duration interval;
+    private final int maxFindings;
+    
+    // Payment id -> its discrepancies as of its last examined write
+    private final Map<Long, Finding> findings = new ConcurrentHashMap<>();
+    // Payments the current run found discrepancies in but did not keep, because findings was full
+    private long untracked;
+    private Instant watermark = Instant.EPOCH;
+    private long watermarkId;
+    private volatile Map<String, Object> lastRun = Map.of();
+    private ScheduledExecutorService scheduler;
+    
+    public ReconciliationService(PaymentRepository paymentRepository,
+                                 @Value("${payments.reconciliation.chunk-size:1000}") int chunkSize,
+                                 @Value("${payments.reconciliation.lag:5s}") Duration lag,
+                                 @Value("${payments.reconciliation.refund-pending-after:3d}") Duration refundPendingAfter,
+                                 @Value("${payments.reconciliation.interval:5m}") Duration interval,
+                                 @Value("${payments.reconciliation.max-findings:100000}") int maxFindings) {
+        this.paymentRepository = paymentRepository;
+        this.chunkSize = chunkSize;
+        this.lag = lag;
+        this.refundPendingAfter = refundPendingAfter;
+        this.interval = interval;
+        this.maxFindings = maxFindings;
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "reconciliation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::runQuietly, 0, millis, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+    
+    /**
+     * Re-examines every payment written since the last run and returns the run's stats.
+     */
+    public synchronized Map<String, Object> run() {
+        long started = System.nanoTime();
+        Instant startedAt = Instant.now();
+        Instant from = watermark;
+        long examined = 0;
+        int chunks = 0;
+        untracked = 0;
+        
+        Instant after = watermark;
+        long afterId = watermarkId;
+        while (true) {
+            List<Object[]> rows = paymentRepository.findReconciliationChunk(after, afterId, PageRequest.of(0, chunkSize));
+            if (rows.isEmpty()) break;
+            chunks++;
+            for (Object[] row : rows) {
+                examine(row);
+                after = (Instant) row[ReconciliationRow.UPDATED_AT];
+                afterId = (Long) row[ReconciliationRow.ID];
+            }
+            examined += rows.size();
+            if (rows.size() < chunkSize) break;
+        }
+        
+        // Next run resumes at the last row read, but never later than lag before this run
+        Instant safe = startedAt.minus(lag);
+        if (after.isAfter(safe)) {
+            watermark = safe;
+            watermarkId = 0;
+        } else {
+            watermark = after;
+            watermarkId = afterId;
+        }
+        
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("startedAt", startedAt.toString());
+        run.put("durationMs", (System.nanoTime() - started) / 1_000_000);
+        run.put("from", from.toString());
+        run.put("examined", examined);
+        run.put("chunks", chunks);
+        run.put("watermark", watermark.toString());
+        run.put("findings", findings.size());
+        run.put("untracked", untracked);
+        lastRun = run;
+        return run;
+    }
+    
+    /**
+     * Discrepancy counts and amount differences per type, and up to {@code limit}
+     * discrepancies (optionally of one type), largest difference first.
+     */
+    public Map<String, Object> getResults(String type, int limit) {
+        DiscrepancyType filter = null;
+        if (type != null && !type.isBlank()) {
+            try {
+                filter = DiscrepancyType.valueOf(type.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown discrepancy type: " + type
+                        + " (expected one of " + Arrays.toString(DiscrepancyType.values()) + ")");
+            }
+        }
+        
+        Instant overdueBefore = Instant.now().minus(refundPendingAfter);
+        Map<DiscrepancyType, long[]> counts = new EnumMap<>(DiscrepancyType.class);
+        Map<DiscrepancyType, Double> differences = new EnumMap<>(DiscrepancyType.class);
+        List<Map<String, Object>> discrepancies = new ArrayList<>();
+        for (Finding finding : findings.values()) {
+            for (Discrepancy d : finding.discrepancies) {
+                if (d.type == DiscrepancyType.REFUND_PENDING && !finding.refundPendingSince.isBefore(overdueBefore)) continue;
+                counts.computeIfAbsent(d.type, t -> new long[1])[0]++;
+                differences.merge(d.type, d.difference(), Double::sum);
+                if (filter == null || filter == d.type) {
+                    discrepancies.add(finding.toMap(d));
+                }
+            }
+        }
+        discrepancies.sort(Comparator.comparingDouble((Map<String, Object> d) -> (Double) d.get("difference")).reversed());
+        
+        List<Map<String, Object>> summary = new ArrayList<>();
+        for (DiscrepancyType t : DiscrepancyType.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("type", t.name());
+            entry.put("description", t.getDescription());
+            entry.put("count", counts.containsKey(t) ? counts.get(t)[0] : 0L);
+            entry.put("difference", round(differences.getOrDefault(t, 0.0)));
+            summary.add(entry);
+        }
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("lastRun", lastRun);
+        result.put("refundPendingAfter", refundPendingAfter.toString());
+        result.put("summary", summary);
+        result.put("total", discrepancies.size());
+        result.put("discrepancies", discrepancies.subList(0, Math.min(Math.max(limit, 0), discrepancies.size())));
+        return result;
+    }
+    
+    private void runQuietly() {
+        try {
+            run();
+        } catch (RuntimeException e) {
+            log.warn("Reconciliation run failed", e);
+        }
+    }
+    
+    private void examine(Object[] row) {
+        Long id = (Long) row[ReconciliationRow.ID];
+        double approval = amount(row[ReconciliationRow.APPROVAL_AMOUNT]);
+        double approved = amount(row[ReconciliationRow.APPROVED_AMOUNT]);
+        double deposited = amount(row[ReconciliationRow.DEPOSITED_AMOUNT]);
+        double refund = amount(row[ReconciliationRow.REFUND_AMOUNT]);
+        double refunded = amount(row[ReconciliationRow.REFUNDED_AMOUNT]);
+        
+        List<Discrepancy> found = new ArrayList<>();
+        if (approved > 0 && approved < approval - TOLERANCE) {
+            found.add(new Discrepancy(DiscrepancyType.PARTIAL_APPROVAL, approval, approved));
+        }
+        if (deposited > 0 && deposited < approved - TOLERANCE) {
+            found.add(new Discrepancy(DiscrepancyType.DEPOSIT_BELOW_APPROVED, approved, deposited));
+        }
+        if (deposited > approved + TOLERANCE) {
+            found.add(new Discrepancy(DiscrepancyType.DEPOSIT_ABOVE_APPROVED, approved, deposited));
+        }
+        if (refunded > 0 && refunded < refund - TOLERANCE) {
+            found.add(new Discrepancy(DiscrepancyType.PARTIAL_REFUND, refund, refunded));
+        }
+        if (refunded > deposited + TOLERANCE) {
+            found.add(new Discrepancy(DiscrepancyType.REFUND_ABOVE_DEPOSIT, deposited, refunded));
+        }
+        if (refund > 0 && refunded == 0) {
+            found.add(new Discrepancy(DiscrepancyType.REFUND_PENDING, refund, refunded));
+        }
+        
+        if (found.isEmpty()) {
+            findings.remove(id);
+            return;
+        }
+        Finding previous = findings.get(id);
+        if (previous == null && findings.size() >= maxFindings) {
+            untracked++;
+            return;
+        }
+        Instant updatedAt = (Instant) row[ReconciliationRow.UPDATED_AT];
+        // Overdue counts from the first write seen with the refund pending, not the latest one
+        Instant refundPendingSince = null;
+        if (refund > 0 && refunded == 0) {
+            refundPendingSince = previous != null && previous.refundPendingSince != null ? previous.refundPendingSince : updatedAt;
+        }
+        findings.put(id, new Finding(id, (String) row[ReconciliationRow.ORDER_TYPE],
+                String.valueOf(row[ReconciliationRow.PAYMENT_METHOD]), String.valueOf(row[ReconciliationRow.STATUS]),
+                (String) row[ReconciliationRow.ORDER_STATUS], updatedAt, refundPendingSince, found));
+    }
+    
+    private static double amount(Object value) {
+        return value != null ? ((Number) value).doubleValue() : 0.0;
+    }
+    
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+    
+    // Column positions of PaymentRepository.findReconciliationChunk
+    private static final class ReconciliationRow {
+        static final int ID = 0;
+        static final int ORDER_TYPE = 1;
+        static final int PAYMENT_METHOD = 2;
+        static final int STATUS = 3;
+        static final int ORDER_STATUS = 4;
+        static final int APPROVAL_AMOUNT = 5;
+        static final int APPROVED_AMOUNT = 6;
+        static final int DEPOSITED_AMOUNT = 7;
+        static final int REFUND_AMOUNT = 8;
+        static final int REFUNDED_AMOUNT = 9;
+        static final int UPDATED_AT = 10;
+    }
+    
+    private static final class Discrepancy {
+        final DiscrepancyType type;
+        final double expected;
+        final double actual;
+        
+        Discrepancy(DiscrepancyType type, double expected, double actual) {
+            this.type = type;
+            this.expected = expected;
+            this.actual = actual;
+        }
+        
+        double difference() {
+            return Math.abs(expected - actual);
+        }
+    }
+    
+    private static final class Finding {
+        final long id;
+        final String orderType;
+        final String paymentMethod;
+        final String status;
+        final String orderStatus;
+        final Instant updatedAt;
+        // First examined write with the refund pending; null when it isn't
+        final Instant refundPendingSince;
+        final List<Discrepancy> discrepancies;
+        
+        Finding(long id, String orderType, String paymentMethod, String status, String orderStatus,
+                Instant updatedAt, Instant refundPendingSince, List<Discrepancy> discrepancies) {
+            this.id = id;
+            this.orderType = orderType;
+            this.paymentMethod = paymentMethod;
+            this.status = status;
+            this.orderStatus = orderStatus;
+            this.updatedAt = updatedAt;
+            this.refundPendingSince = refundPendingSince;
+            this.discrepancies = discrepancies;
+        }
+        
+        Map<String, Object> toMap(Discrepancy d) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("paymentId", id);
+            map.put("type", d.type.name());
+            map.put("expected", round(d.expected));
+            map.put("actual", round(d.actual));
+            map.put("difference", round(d.difference()));
+            map.put("orderType", orderType);
+            map.put("paymentMethod", paymentMethod);
+            map.put("status", status);
+            map.put("orderStatus", orderStatus);
+            map.put("updatedAt", updatedAt.toString());
+            if (d.type == DiscrepancyType.REFUND_PENDING) map.put("refundPendingSince", refundPendingSince.toString());
+            return map;
+        }
+    }
+}
@@ -1,28 +1,109 @@
 package com.ecommerce.repository;
 
+import com.ecommerce.dto.PaymentSummary;
 import com.ecommerce.model.Payment;
 import com.ecommerce.model.PaymentStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import jakarta.persistence.QueryHint;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface PaymentRepository extends JpaRepository<Payment, Long> {
-    
-    List<Payment> findByStatus(PaymentStatus status);
+public interface PaymentRepository extends JpaRepository<Payment, Long>, JpaSpecificationExecutor<Payment> {
     
     @Query("SELECT p FROM Payment p WHERE p.createdAt >= :since ORDER BY p.createdAt DESC")
-    List<Payment> findRecentPayments(@Param("since") LocalDateTime since);
+    List<Payment> findRecentPayments(@Param("since") Instant since);
     
     @Query("SELECT p FROM Payment p ORDER BY p.createdAt DESC")
     List<Payment> findAllOrderByCreatedAtDesc();
     
+    // Created in [from, to), newest first; a null orderType matches every orderType, and payments
+    // without one match any, as the aged-metrics filter always has
+    @Query("SELECT p FROM Payment p WHERE p.createdAt >= :from AND p.createdAt < :to " +
+           "AND (:orderType IS NULL OR p.orderType IS NULL OR LOWER(p.orderType) = LOWER(:orderType)) " +
+           "ORDER BY p.createdAt DESC")
+    List<Payment> findCreatedBetween(@Param("from") Instant from, @Param("to") Instant to,
+                                     @Param("orderType") String orderType);
+    
+    // List views select only the PaymentSummary columns, straight into the DTO
+    String SUMMARY_SELECT = "SELECT new com.ecommerce.dto.PaymentSummary(p.id, p.transactionId, p.customerId, " +
+           "p.customerName, p.customerEmail, p.amount, p.currency, p.status, p.paymentMethod, p.cardType, " +
+           "p.validationStatus, p.orderType, p.orderId, p.errorMessage, p.createdAt, p.updatedAt, " +
+           "p.approvalAmount, p.approvedAmount, p.depositingAmount, p.depositedAmount, " +
+           "p.reversingApprovalAmount, p.reversingApprovedAmount, p.refundAmount, p.refundedAmount) FROM Payment p ";
+    
+    @Query(SUMMARY_SELECT + "ORDER BY p.createdAt DESC")
+    List<PaymentSummary> findAllSummaries();
+    
+    @Query(SUMMARY_SELECT + "WHERE p.status = :status")
+    List<PaymentSummary> findSummariesByStatus(@Param("status") PaymentStatus status);
+    
+    @Query(SUMMARY_SELECT + "WHERE p.createdAt >= :since ORDER BY p.createdAt DESC")
+    List<PaymentSummary> findRecentSummaries(@Param("since") Instant since);
+    
     long countByStatus(PaymentStatus status);
     
     @Query("SELECT COALESCE(SUM(p.amount), 0.0) FROM Payment p WHERE p.status = :status")
     Double sumAmountByStatus(@Param("status") PaymentStatus status);
+    
+    // Identifying fields only, streamed so the lookup index can be rebuilt without hydrating entities
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("SELECT p.id, p.transactionId, p.paymentReferenceId, p.orderId, p.customerId, p.customerEmail FROM Payment p")
+    Stream<Object[]> streamLookupKeys();
+    
+    // Leaderboard seed: customer amounts and failure keys, streamed without hydrating entities
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("SELECT p.customerId, p.amount, p.createdAt, p.status, p.country, p.errorMessage, p.updatedAt FROM Payment p")
+    Stream<Object[]> streamLeaderboardRows();
+    
+    // One row per (orderType, paymentMethod): payment count, then count and amount for each
+    // lifecycle stage (approval, approved, depositing, deposited, refund, refunded, reversing)
+    @Query("SELECT p.orderType, p.paymentMethod, COUNT(p), " +
+           "SUM(CASE WHEN p.approvalAmount > 0 THEN 1 ELSE 0 END), COALESCE(SUM(p.approvalAmount), 0.0), " +
+           "SUM(CASE WHEN p.approvedAmount > 0 THEN 1 ELSE 0 END), COALESCE(SUM(p.approvedAmount), 0.0), " +
+           "SUM(CASE WHEN p.depositingAmount > 0 THEN 1 ELSE 0 END), COALESCE(SUM(p.depositingAmount), 0.0), " +
+           "SUM(CASE WHEN p.depositedAmount > 0 THEN 1 ELSE 0 END), COALESCE(SUM(p.depositedAmount), 0.0), " +
+           "SUM(CASE WHEN p.refundAmount > 0 THEN 1 ELSE 0 END), COALESCE(SUM(p.refundAmount), 0.0), " +
+           "SUM(CASE WHEN p.refundedAmount > 0 THEN 1 ELSE 0 END), COALESCE(SUM(p.refundedAmount), 0.0), " +
+           "SUM(CASE WHEN p.reversingApprovalAmount > 0 THEN 1 ELSE 0 END), COALESCE(SUM(p.reversingApprovalAmount), 0.0) " +
+           "FROM Payment p GROUP BY p.orderType, p.paymentMethod")
+    List<Object[]> aggregateFunnelByOrderTypeAndMethod();
+    
+    // Payments that may be waiting in a non-terminal lifecycle stage
+    @Query("SELECT p.id, p.orderType, p.paymentMethod, p.status, p.orderStatus, p.createdAt, p.updatedAt " +
+           "FROM Payment p WHERE p.status IN :statuses OR p.orderStatus IN :orderStatuses")
+    List<Object[]> findStuckCandidates(@Param("statuses") Collection<PaymentStatus> statuses,
+                                       @Param("orderStatuses") Collection<String> orderStatuses);
+    
+    // Keyset page of lifecycle amounts in (updatedAt, id) order, after the given position
+    @Query("SELECT p.id, p.orderType, p.paymentMethod, p.status, p.orderStatus, p.approvalAmount, p.approvedAmount, " +
+           "p.depositedAmount, p.refundAmount, p.refundedAmount, p.updatedAt FROM Payment p " +
+           "WHERE p.updatedAt > :after OR (p.updatedAt = :after AND p.id > :afterId) ORDER BY p.updatedAt, p.id")
+    List<Object[]> findReconciliationChunk(@Param("after") Instant after, @Param("afterId") long afterId, Pageable page);
+    
+    // Count and amount per status, seeds the in-memory statistics counters
+    @Query("SELECT p.status, COUNT(p), COALESCE(SUM(p.amount), 0.0) FROM Payment p GROUP BY p.status")
+    List<Object[]> aggregateByStatus();
+    
+    // Count and amount per (orderType, country, status, paymentMethod, epoch hour of createdAt),
+    // seeds the aged-metrics partitions
+    @Query("SELECT p.orderType, p.country, p.status, p.paymentMethod, " +
+           "CAST(FLOOR(EXTRACT(EPOCH FROM p.createdAt) / 3600) AS Long), COUNT(p), COALESCE(SUM(p.amount), 0.0) " +
+           "FROM Payment p GROUP BY p.orderType, p.country, p.status, p.paymentMethod, " +
+           "CAST(FLOOR(EXTRACT(EPOCH FROM p.createdAt) / 3600) AS Long)")
+    List<Object[]> aggregateByPartitionAndHour();
+    
+    // Sketch columns per orderType, country and createdAt, streamed to seed the partitions' hourly sketches
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("SELECT p.orderType, p.country, p.createdAt, p.customerId, p.ipAddress, p.amount FROM Payment p")
+    Stream<Object[]> streamPartitionSketchRows();
 }
@@ -0,0 +1,86 @@
+package com.ecommerce.repository;
+
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentMethod;
+import com.ecommerce.model.PaymentStatus;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.Instant;
+
+public final class PaymentSpecifications {
+    
+    private PaymentSpecifications() {
+    }
+    
+    public static Specification<Payment> hasStatus(PaymentStatus status) {
+        return (root, query, cb) -> status == null ? null : cb.equal(root.get("status"), status);
+    }
+    
+    public static Specification<Payment> hasPaymentMethod(PaymentMethod method) {
+        return (root, query, cb) -> method == null ? null : cb.equal(root.get("paymentMethod"), method);
+    }
+    
+    // Exact, so idx_payments_order_type / idx_payments_country apply; callers pass the stored spelling
+    public static Specification<Payment> hasOrderType(String orderType) {
+        return (root, query, cb) -> isBlank(orderType) ? null : cb.equal(root.get("orderType"), orderType.trim());
+    }
+    
+    public static Specification<Payment> hasCountry(String country) {
+        return (root, query, cb) -> isBlank(country) ? null : cb.equal(root.get("country"), country.trim());
+    }
+    
+    public static Specification<Payment> amountBetween(Double min, Double max) {
+        return (root, query, cb) -> {
+            if (min != null && max != null) return cb.between(root.get("amount"), min, max);
+            if (min != null) return cb.greaterThanOrEqualTo(root.get("amount"), min);
+            if (max != null) return cb.lessThanOrEqualTo(root.get("amount"), max);
+            return null;
+        };
+    }
+    
+    public static Specification<Payment> createdBetween(Instant from, Instant to) {
+        return (root, query, cb) -> {
+            if (from != null && to != null) return cb.between(root.get("createdAt"), from, to);
+            if (from != null) return cb.greaterThanOrEqualTo(root.get("createdAt"), from);
+            if (to != null) return cb.lessThanOrEqualTo(root.get("createdAt"), to);
+            return null;
+        };
+    }
+    
+    // Prefix of orderId or customerEmail, case-sensitive so the column indexes serve it as a range
+    // scan; substring matches go through the lookup index (/lookup)
+    public static Specification<Payment> matchesText(String text) {
+        return (root, query, cb) -> {
+            if (isBlank(text)) return null;
+            String pattern = escapeLike(text.trim()) + "%";
+            return cb.or(
+                    cb.like(root.get("orderId"), pattern, '\\'),
+                    cb.like(root.get("customerEmail"), pattern, '\\'));
+        };
+    }
+    
+    // Keyset predicate: rows strictly after (sortValue, id) in the requested order.
+    // Pairs with the (column, id) indexes declared on Payment.
+    public static <T extends Comparable<? super T>> Specification<Payment> after(
+            String sortField, T sortValue, Long id, boolean descending) {
+        return (root, query, cb) -> {
+            if (sortValue == null || id == null) return null;
+            if (descending) {
+                return cb.or(
+                        cb.lessThan(root.<T>get(sortField), sortValue),
+                        cb.and(cb.equal(root.get(sortField), sortValue), cb.lessThan(root.<Long>get("id"), id)));
+            }
+            return cb.or(
+                    cb.greaterThan(root.<T>get(sortField), sortValue),
+                    cb.and(cb.equal(root.get(sortField), sortValue), cb.greaterThan(root.<Long>get("id"), id)));
+        };
+    }
+    
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank() || value.equalsIgnoreCase("all");
+    }
+    
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
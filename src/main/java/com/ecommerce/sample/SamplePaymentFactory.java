@@ -0,0 +1,286 @@
+package com.ecommerce.sample;
+
+import com.ecommerce.ids.PaymentIdGenerator;
+import com.ecommerce.ids.TimeOrderedIdGenerator;
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentMethod;
+import com.ecommerce.model.PaymentStatus;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds payments with the sample-data distributions: validation outcome per payment
+ * method, approval/deposit/refund rules and amounts, order status and error messages.
+ * Shared by {@code PaymentService.generateSampleData} and the load generator so
+ * synthetic traffic looks like the seeded data. Not thread-safe; use one per thread.
+ */
+public class SamplePaymentFactory {
+    
+    static final String[] CUSTOMER_NAMES = {"John Doe", "Jane Smith", "Bob Johnson", "Alice Williams", "Charlie Brown",
+                                            "David Miller", "Emma Wilson", "Frank Davis", "Grace Lee", "Henry Taylor"};
+    static final String[] COUNTRIES = {"USA", "UK", "Canada", "Australia", "Germany", "France", "Japan", "Brazil"};
+    static final String[] ORDER_TYPES = {"Regular", "Subscription", "Loyalty", "CVC_No_Show_Penality", "Onetime", "CWAV_Telemedicine"};
+    static final String[] CARD_BRANDS = {"VISA", "DISCOVER", "AMEX", "MASTERCARD"};
+    static final String[] FAIL_REASONS = {"Insufficient funds", "Card declined by issuer", "Invalid card details", "Bank processing error", "Transaction limit exceeded"};
+    private static final PaymentMethod[] METHODS = PaymentMethod.values();
+    
+    private final Random random;
+    private final TimeOrderedIdGenerator ids;
+    private int creditCardCounter;
+    
+    public SamplePaymentFactory(Random random, TimeOrderedIdGenerator ids) {
+        this.random = random;
+        this.ids = ids;
+    }
+    
+    public static List<String> getOrderTypes() {
+        return List.of(ORDER_TYPES);
+    }
+    
+    /**
+     * Builds the {@code paymentCounter}-th payment, requested at {@code requestTime}.
+     * Its status is the approval outcome; requests older than 7 days at {@code now}
+     * can come out EXPIRED.
+     */
+    public Payment create(int paymentCounter, LocalDateTime requestTime, LocalDateTime now) {
+        Payment payment = new Payment();
+        
+        
+        // Generate unique IDs (the transactionId is assigned by PaymentService)
+        payment.setPaymentReferenceId(ids.at(PaymentIdGenerator.REFERENCE_PREFIX, requestTime.atZone(ZoneId.systemDefault()).toInstant()));
+        payment.setOrderId("ORD" + String.format("%06d", paymentCounter));
+        
+        // Customer details
+        payment.setCustomerId("CUST" + String.format("%05d", (paymentCounter % CUSTOMER_NAMES.length) + 1));
+        payment.setCustomerName(CUSTOMER_NAMES[paymentCounter % CUSTOMER_NAMES.length]);
+        payment.setCustomerEmail(payment.getCustomerName().toLowerCase().replace(" ", ".") + "@example.com");
+        
+        // Amount and currency
+        payment.setAmount(Math.round((random.nextDouble() * 500 + 10) * 100.0) / 100.0);
+        payment.setCurrency("USD");
+        
+        // Creation time
+        payment.setCreatedAt(requestTime.atZone(ZoneId.systemDefault()).toInstant());
+        
+        // Payment method selection
+        PaymentMethod method = METHODS[paymentCounter % METHODS.length];
+        payment.setPaymentMethod(method);
+    
+        
+        // Rule 1: Validation status and card type
+        String validationStatus;
+        if (method == PaymentMethod.CREDIT_CARD) {
+            // For credit cards, assign actual card brand
+            payment.setCardType(CARD_BRANDS[creditCardCounter % CARD_BRANDS.length]);
+            creditCardCounter++;
+            
+            // 70% VALID, 20% INVALID, 10% PENDING for credit cards
+            double validRand = random.nextDouble();
+            if (validRand < 0.70) {
+                validationStatus = "VALID";
+            } else if (validRand < 0.90) {
+                validationStatus = "INVALID";
+            } else {
+                validationStatus = "PENDING";
+            }
+            payment.setValidationStatus(validationStatus);
+        } else {
+            // For non-credit card methods, no card type
+            payment.setCardType(null);
+            
+            // 80% VALID, 15% INVALID, 5% PENDING for other methods
+            double validRand = random.nextDouble();
+            if (validRand < 0.80) {
+                validationStatus = "VALID";
+            } else if (validRand < 0.95) {
+                validationStatus = "INVALID";
+            } else {
+                validationStatus = "PENDING";
+            }
+            payment.setValidationStatus(validationStatus);
+        }
+        
+        // Order type and other details
+        payment.setOrderType(ORDER_TYPES[paymentCounter % ORDER_TYPES.length]);
+        payment.setDescription("Order payment #" + paymentCounter);
+        payment.setIpAddress("192.168." + (paymentCounter % 255) + "." + ((paymentCounter * 7) % 255));
+        payment.setCountry(COUNTRIES[paymentCounter % COUNTRIES.length]);
+    
+        
+        // Set approval amount
+        Double baseAmount = payment.getAmount();
+        payment.setApprovalAmount(baseAmount);
+        
+        // Rule 2: Only if validation_status is VALID then Approval can be success, else DECLINED
+        PaymentStatus approvalStatus;
+        String orderStatus;
+        
+        if ("VALID".equals(validationStatus)) {
+            // Rule 5: Check if approval is expired (older than 7 days)
+            long daysSinceRequest = ChronoUnit.DAYS.between(requestTime, now);
+            if (daysSinceRequest > 7 && random.nextDouble() < 0.05) { // 5% chance of expiration for old requests
+                approvalStatus = PaymentStatus.EXPIRED;
+            } else {
+                // 75% SUCCESS, 15% PROCESSING/PENDING, 5% CANCELLED, 5% FAILED
+                double rand = random.nextDouble();
+                if (rand < 0.75) {
+                    approvalStatus = PaymentStatus.SUCCESS;
+                } else if (rand < 0.85) {
+                    approvalStatus = (random.nextDouble() < 0.5) ? PaymentStatus.PROCESSING : PaymentStatus.PENDING;
+                } else if (rand < 0.90) {
+                    approvalStatus = PaymentStatus.CANCELLED;
+                } else {
+                    approvalStatus = PaymentStatus.FAILED;
+                }
+            }
+        } else if ("INVALID".equals(validationStatus)) {
+            // Invalid validation always leads to DECLINED or FAILED
+            approvalStatus = (random.nextDouble() < 0.7) ? PaymentStatus.DECLINED : PaymentStatus.FAILED;
+        } else { // PENDING validation
+            // Pending validation means processing or pending status
+            approvalStatus = (random.nextDouble() < 0.6) ? PaymentStatus.PROCESSING : PaymentStatus.PENDING;
+        }
+        
+        payment.setStatus(approvalStatus);
+        
+        // Rule 3: Approved amount = 0 for non-success states
+        if (approvalStatus == PaymentStatus.SUCCESS) {
+            // Can be partial (85-100%) or complete
+            if (random.nextDouble() < 0.85) {
+                payment.setApprovedAmount(baseAmount);
+            } else {
+                double percentage = 0.85 + (random.nextDouble() * 0.15);
+                payment.setApprovedAmount(Math.round(baseAmount * percentage * 100.0) / 100.0);
+            }
+        } else {
+            // Failed, Declined, Pending, Processing, Expired, Cancelled -> 0
+            payment.setApprovedAmount(0.0);
+        }
+    
+        
+        Double approvedAmt = payment.getApprovedAmount();
+        
+        // Rule 6: Only if Approval is Success, process Deposit
+        PaymentStatus depositStatus = null;
+        if (approvalStatus == PaymentStatus.SUCCESS && approvedAmt > 0) {
+            payment.setDepositingAmount(approvedAmt);
+            
+            // 85% deposit success, 15% deposit pending/processing/failed
+            double depositRand = random.nextDouble();
+            if (depositRand < 0.85) {
+                depositStatus = PaymentStatus.SUCCESS;
+                // Rule 8: Deposited amount = full amount only for success
+                if (random.nextDouble() < 0.90) {
+                    payment.setDepositedAmount(approvedAmt);
+                } else {
+                    double percentage = 0.90 + (random.nextDouble() * 0.10);
+                    payment.setDepositedAmount(Math.round(approvedAmt * percentage * 100.0) / 100.0);
+                }
+            } else {
+                // Deposit not successful - set deposited amount to 0
+                payment.setDepositedAmount(0.0);
+                
+                if (depositRand < 0.90) {
+                    depositStatus = PaymentStatus.PENDING;
+                } else if (depositRand < 0.95) {
+                    depositStatus = PaymentStatus.PROCESSING;
+                } else {
+                    depositStatus = PaymentStatus.FAILED;
+                }
+                
+                // Rule 4: Reverse Approval happens when deposit is pending
+                if (depositStatus == PaymentStatus.PENDING || depositStatus == PaymentStatus.PROCESSING) {
+                    payment.setReversingApprovalAmount(approvedAmt);
+                    payment.setReversingApprovedAmount(approvedAmt);
+                }
+            }
+        } else {
+            // No deposit if approval not successful
+            payment.setDepositingAmount(0.0);
+            payment.setDepositedAmount(0.0);
+            payment.setReversingApprovalAmount(0.0);
+            payment.setReversingApprovedAmount(0.0);
+        }
+        
+        Double depositedAmt = payment.getDepositedAmount();
+        
+        // Rule 7: Only if Deposit is success, it can go for refund
+        PaymentStatus refundStatus = null;
+        if (depositStatus == PaymentStatus.SUCCESS && depositedAmt != null && depositedAmt > 0) {
+            // 12% chance of refund
+            if (random.nextDouble() < 0.12) {
+                payment.setRefundAmount(depositedAmt);
+                
+                // 80% full refund, 20% partial refund
+                double refundRand = random.nextDouble();
+                if (refundRand < 0.75) {
+                    refundStatus = PaymentStatus.SUCCESS;
+                    if (random.nextDouble() < 0.80) {
+                        payment.setRefundedAmount(depositedAmt);
+                    } else {
+                        double percentage = 0.75 + (random.nextDouble() * 0.25);
+                        payment.setRefundedAmount(Math.round(depositedAmt * percentage * 100.0) / 100.0);
+                    }
+                } else {
+                    // Refund pending/processing
+                    refundStatus = (random.nextDouble() < 0.6) ? PaymentStatus.PENDING : PaymentStatus.PROCESSING;
+                    payment.setRefundedAmount(0.0);
+                }
+                
+                // Set reversing amounts for refunds
+                payment.setReversingApprovalAmount(approvedAmt);
+                payment.setReversingApprovedAmount(approvedAmt);
+            } else {
+                payment.setRefundAmount(0.0);
+                payment.setRefundedAmount(0.0);
+            }
+        } else {
+            payment.setRefundAmount(0.0);
+            payment.setRefundedAmount(0.0);
+        }
+        
+        // Rule 9: Set order status based on the latest successful stage
+        if (refundStatus == PaymentStatus.SUCCESS && payment.getRefundedAmount() != null && payment.getRefundedAmount() > 0) {
+            orderStatus = "REFUND_" + refundStatus.toString();
+        } else if (refundStatus != null && refundStatus != PaymentStatus.SUCCESS) {
+            orderStatus = "REFUND_" + refundStatus.toString();
+        } else if (depositStatus == PaymentStatus.SUCCESS && depositedAmt != null && depositedAmt > 0) {
+            orderStatus = "DEPOSIT_" + depositStatus.toString();
+        } else if (depositStatus != null && depositStatus != PaymentStatus.SUCCESS) {
+            orderStatus = "DEPOSIT_" + depositStatus.toString();
+        } else if (payment.getReversingApprovalAmount() != null && payment.getReversingApprovalAmount() > 0) {
+            orderStatus = "REVERSE_APPROVAL_PENDING";
+        } else {
+            orderStatus = "APPROVAL_" + approvalStatus.toString();
+        }
+        
+        payment.setOrderStatus(orderStatus);
+        
+        // Update timestamp
+        payment.setUpdatedAt(requestTime.plusMinutes(random.nextInt(120)).atZone(ZoneId.systemDefault()).toInstant());
+        
+        // Set error messages based on payment status
+        if (approvalStatus == PaymentStatus.FAILED) {
+            payment.setErrorMessage(FAIL_REASONS[paymentCounter % FAIL_REASONS.length]);
+        } else if (approvalStatus == PaymentStatus.DECLINED) {
+            payment.setErrorMessage("Payment declined - validation failed");
+        } else if (approvalStatus == PaymentStatus.EXPIRED) {
+            payment.setErrorMessage("Crossed 7 days");
+        } else if (approvalStatus == PaymentStatus.PROCESSING) {
+            payment.setErrorMessage("Payment is being processed");
+        } else if (approvalStatus == PaymentStatus.PENDING) {
+            payment.setErrorMessage("Payment is pending approval");
+        } else if (approvalStatus == PaymentStatus.CANCELLED) {
+            payment.setErrorMessage("Payment cancelled by user");
+        } else if (approvalStatus == PaymentStatus.SUCCESS) {
+            payment.setErrorMessage(null);
+        }
+        
+        
+        return payment;
+    }
+}
@@ -0,0 +1,183 @@
+package com.ecommerce.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel (Varghese &amp; Lauck, as used by Kafka's purgatory).
+ * <p>
+ * Level 0 has {@code wheelSize} slots of {@code tickMillis} each; every higher level
+ * covers the whole range of the level below in each of its slots. A timer is placed
+ * in the lowest level whose range covers its deadline and cascades down one level
+ * when its coarse slot comes due. Timers fire on the first tick at or after their
+ * deadline. Insert and cancel are O(1) (doubly linked slot
+ * lists), and advancing the clock only touches slots that expire.
+ * <p>
+ * Not thread-safe; callers serialize access (see StuckPaymentDetector).
+ */
+public class HierarchicalTimingWheel<T> {
+    
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<Level<T>> levels = new ArrayList<>();
+    private long currentTime;
+    private int size;
+    
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis <= 0 || wheelSize <= 1) {
+            throw new IllegalArgumentException("tickMillis must be positive and wheelSize greater than 1");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentTime = startMillis - (startMillis % tickMillis);
+        levels.add(new Level<>(tickMillis, wheelSize));
+    }
+    
+    /**
+     * Schedules {@code payload} to expire at {@code deadlineMillis}. Deadlines already
+     * in the past expire on the next {@link #advanceTo} call.
+     */
+    public Timer<T> schedule(T payload, long deadlineMillis) {
+        Timer<T> timer = new Timer<>(payload, deadlineMillis);
+        place(timer);
+        size++;
+        return timer;
+    }
+    
+    public void cancel(Timer<T> timer) {
+        if (timer.slot != null) {
+            timer.slot.remove(timer);
+            size--;
+        }
+    }
+    
+    /**
+     * Advances the wheel clock, handing every timer whose deadline is at or before
+     * {@code nowMillis} to {@code onExpired}.
+     */
+    public void advanceTo(long nowMillis, Consumer<T> onExpired) {
+        while (currentTime + tickMillis <= nowMillis) {
+            currentTime += tickMillis;
+            for (int i = 0; i < levels.size(); i++) {
+                Level<T> level = levels.get(i);
+                // A level only turns over when the clock crosses one of its slot boundaries
+                if (currentTime % level.slotMillis != 0) break;
+                Slot<T> slot = level.slots.get((int) ((currentTime / level.slotMillis) % wheelSize));
+                for (Timer<T> timer : slot.drain()) {
+                    if (timer.deadline <= currentTime) {
+                        size--;
+                        onExpired.accept(timer.payload);
+                    } else {
+                        place(timer);
+                    }
+                }
+            }
+        }
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public long currentTime() {
+        return currentTime;
+    }
+    
+    private void place(Timer<T> timer) {
+        long delay = Math.max(timer.deadline - currentTime, tickMillis);
+        int index = 0;
+        Level<T> level = levels.get(0);
+        while (delay >= level.slotMillis * wheelSize) {
+            index++;
+            if (index == levels.size()) {
+                levels.add(new Level<>(level.slotMillis * wheelSize, wheelSize));
+            }
+            level = levels.get(index);
+        }
+        // The slot turning over at or before the deadline; on higher levels the timer is
+        // then cascaded into a finer level for the remaining delay
+        long slotTime = Math.max(timer.deadline, currentTime + tickMillis);
+        long bucket = slotTime / level.slotMillis;
+        level.slots.get((int) (bucket % wheelSize)).add(timer);
+    }
+    
+    private static final class Level<T> {
+        private final long slotMillis;
+        private final List<Slot<T>> slots;
+        
+        private Level(long slotMillis, int wheelSize) {
+            this.slotMillis = slotMillis;
+            this.slots = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                slots.add(new Slot<>());
+            }
+        }
+    }
+    
+    private static final class Slot<T> {
+        // Sentinel of a circular doubly linked list
+        private final Timer<T> head = new Timer<>(null, 0);
+        
+        private Slot() {
+            head.next = head;
+            head.prev = head;
+        }
+        
+        private void add(Timer<T> timer) {
+            timer.slot = this;
+            timer.prev = head.prev;
+            timer.next = head;
+            head.prev.next = timer;
+            head.prev = timer;
+        }
+        
+        private void remove(Timer<T> timer) {
+            timer.prev.next = timer.next;
+            timer.next.prev = timer.prev;
+            timer.next = null;
+            timer.prev = null;
+            timer.slot = null;
+        }
+        
+        private List<Timer<T>> drain() {
+            List<Timer<T>> timers = new ArrayList<>();
+            Timer<T> timer = head.next;
+            while (timer != head) {
+                Timer<T> next = timer.next;
+                remove(timer);
+                timers.add(timer);
+                timer = next;
+            }
+            return timers;
+        }
+    }
+    
+    /**
+     * Handle returned by {@link #schedule} and used to cancel a pending timer.
+     */
+    public static final class Timer<T> {
+        private final T payload;
+        private final long deadline;
+        private Timer<T> next;
+        private Timer<T> prev;
+        private Slot<T> slot;
+        
+        private Timer(T payload, long deadline) {
+            this.payload = payload;
+            this.deadline = deadline;
+        }
+        
+        public T getPayload() {
+            return payload;
+        }
+        
+        public long getDeadline() {
+            return deadline;
+        }
+        
+        public boolean isPending() {
+            return slot != null;
+        }
+    }
+}
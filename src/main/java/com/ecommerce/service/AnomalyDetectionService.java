@@ -0,0 +1,250 @@
+package com.ecommerce.service;
+
+import com.ecommerce.analytics.AnomalySeries;
+import com.ecommerce.event.PaymentEvent;
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentStatus;
+import com.ecommerce.snapshot.SnapshotParticipant;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flags spikes in the rate of failed, declined and expired payments per paymentMethod
+ * and per cardType, e.g. an issuer outage showing up as a burst of "Card declined by
+ * issuer".
+ * <p>
+ * Each (outcome, dimension, value) is one {@link AnomalySeries} of per-minute
+ * failures over attempts, fed from the event log: an attempt is a payment's first
+ * move out of PENDING/PROCESSING, a failure a move into the outcome. A minute is
+ * flagged as soon as its failures reach {@code min-count} and are {@code threshold}
+ * binomial standard deviations above the series' baseline rate, without rescanning
+ * history. cardType is client-supplied, so after {@code max-card-types} distinct
+ * values the rest share an "OTHER" series.
+ */
+@Service
+public class AnomalyDetectionService implements SnapshotParticipant {
+    
+    private static final Logger log = LoggerFactory.getLogger(AnomalyDetectionService.class);
+    
+    private static final Set<PaymentStatus> OUTCOMES = EnumSet.of(
+            PaymentStatus.FAILED, PaymentStatus.DECLINED, PaymentStatus.EXPIRED);
+    private static final Set<PaymentStatus> UNDECIDED = EnumSet.of(PaymentStatus.PENDING, PaymentStatus.PROCESSING);
+    private static final String OTHER_CARD_TYPE = "OTHER";
+    private static final int RECENT_ANOMALIES = 100;
+    
+    private final double alpha;
+    private final double threshold;
+    private final int minCount;
+    private final long warmupMinutes;
+    private final long tickMillis;
+    private final int maxCardTypes;
+    
+    private final Map<String, AnomalySeries> series = new ConcurrentHashMap<>();
+    // Card types with their own series; bounded by maxCardTypes
+    private final Set<String> cardTypes = ConcurrentHashMap.newKeySet();
+    // Series key -> minute it was last flagged, so each anomalous minute is reported once
+    private final Map<String, Long> flaggedMinute = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> recent = new ArrayDeque<>();
+    private final ScheduledExecutorService ticker;
+    private long lastSequence;
+    
+    public AnomalyDetectionService(@Value("${payments.anomaly.alpha:0.05}") double alpha,
+                                   @Value("${payments.anomaly.threshold:4.0}") double threshold,
+                                   @Value("${payments.anomaly.min-count:5}") int minCount,
+                                   @Value("${payments.anomaly.warmup-minutes:30}") long warmupMinutes,
+                                   @Value("${payments.anomaly.tick:5s}") Duration tick,
+                                   @Value("${payments.anomaly.max-card-types:50}") int maxCardTypes) {
+        this.alpha = alpha;
+        this.threshold = threshold;
+        this.minCount = minCount;
+        this.warmupMinutes = warmupMinutes;
+        this.tickMillis = tick.toMillis();
+        this.maxCardTypes = maxCardTypes;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "anomaly-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // Close minutes of quiet series too, so their baselines see the zero counts
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+    }
+    
+    @Override
+    public void onPaymentEvent(long sequence, PaymentEvent event) {
+        synchronized (this) {
+            if (sequence <= lastSequence) return;
+            lastSequence = sequence;
+        }
+        
+        Payment payment = event.getPayment();
+        PaymentStatus status = payment.getStatus();
+        PaymentStatus previous = event.getPreviousStatus();
+        boolean attempt = status != null && !UNDECIDED.contains(status) && (previous == null || UNDECIDED.contains(previous));
+        boolean failure = OUTCOMES.contains(status) && status != previous;
+        if (!attempt && !failure) return;
+        
+        long minute = event.getOccurredAt().atZone(ZoneId.systemDefault()).toEpochSecond() / 60;
+        record(status, attempt, failure, "paymentMethod",
+                payment.getPaymentMethod() != null ? payment.getPaymentMethod().name() : null, minute, payment.getErrorMessage());
+        record(status, attempt, failure, "cardType", cardTypeKey(payment.getCardType()), minute, payment.getErrorMessage());
+    }
+    
+    /**
+     * Series anomalous in the current minute, the most recent anomalies, and the
+     * current state of every series.
+     */
+    public Map<String, Object> getAnomalies() {
+        long now = currentMinute();
+        List<Map<String, Object>> active = new ArrayList<>();
+        List<Map<String, Object>> allSeries = new ArrayList<>();
+        new TreeMap<>(series).forEach((key, s) -> {
+            s.advanceTo(now);
+            Map<String, Object> state = describe(key, s);
+            allSeries.add(state);
+            if (isAnomalous(s)) active.add(state);
+        });
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("active", active);
+        synchronized (recent) {
+            result.put("recent", new ArrayList<>(recent));
+        }
+        result.put("series", allSeries);
+        result.put("threshold", threshold);
+        result.put("minCount", minCount);
+        result.put("cardTypes", cardTypes.size());
+        return result;
+    }
+    
+    @Override
+    public String getSnapshotSection() {
+        return "anomalies";
+    }
+    
+    @Override
+    public int getSnapshotVersion() {
+        return 2;
+    }
+    
+    @Override
+    public synchronized long writeSnapshot(DataOutput out) throws IOException {
+        Map<String, AnomalySeries> copy = new TreeMap<>(series);
+        out.writeInt(copy.size());
+        for (Map.Entry<String, AnomalySeries> entry : copy.entrySet()) {
+            out.writeUTF(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+        return lastSequence;
+    }
+    
+    @Override
+    public synchronized void restoreSnapshot(DataInput in, long sequence) throws IOException {
+        series.clear();
+        cardTypes.clear();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            AnomalySeries s = new AnomalySeries(alpha);
+            s.readFrom(in);
+            series.put(key, s);
+            String[] parts = key.split("\\|", 3);
+            if (parts[1].equals("cardType") && !parts[2].equals(OTHER_CARD_TYPE)) cardTypes.add(parts[2]);
+        }
+        lastSequence = sequence;
+    }
+    
+    // An attempt counts in every outcome's series of the value, a failure only in its own
+    private void record(PaymentStatus status, boolean attempt, boolean failure, String dimension, String value,
+                        long minute, String errorMessage) {
+        if (value == null) return;
+        for (PaymentStatus outcome : OUTCOMES) {
+            boolean failed = failure && outcome == status;
+            if (!attempt && !failed) continue;
+            String key = outcome.name() + "|" + dimension + "|" + value;
+            AnomalySeries s = series.computeIfAbsent(key, k -> new AnomalySeries(alpha));
+            s.add(minute, attempt, failed, errorMessage);
+            if (failed) check(key, s);
+        }
+    }
+    
+    private void check(String key, AnomalySeries s) {
+        if (isAnomalous(s) && !Objects.equals(flaggedMinute.put(key, s.getMinute()), s.getMinute())) {
+            Map<String, Object> anomaly = describe(key, s);
+            anomaly.put("detectedAt", Instant.now().toString());
+            synchronized (recent) {
+                recent.addFirst(anomaly);
+                while (recent.size() > RECENT_ANOMALIES) recent.removeLast();
+            }
+            log.warn("Anomaly in {}: {} of {} attempts failed this minute, expected rate {}",
+                    key, anomaly.get("count"), anomaly.get("attempts"), anomaly.get("expectedRate"));
+        }
+    }
+    
+    private boolean isAnomalous(AnomalySeries s) {
+        return s.getSamples() >= warmupMinutes && s.getCount() >= minCount && s.score() >= threshold;
+    }
+    
+    private Map<String, Object> describe(String key, AnomalySeries s) {
+        String[] parts = key.split("\\|", 3);
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("outcome", parts[0]);
+        state.put("dimension", parts[1]);
+        state.put("value", parts[2]);
+        state.put("minute", Instant.ofEpochSecond(s.getMinute() * 60).toString());
+        state.put("count", s.getCount());
+        state.put("attempts", s.getAttempts());
+        state.put("rate", Math.round(s.rate() * 10000.0) / 10000.0);
+        state.put("expectedRate", Math.round(s.expectedRate() * 10000.0) / 10000.0);
+        state.put("expected", Math.round(s.expected() * 100.0) / 100.0);
+        state.put("score", Math.round(s.score() * 100.0) / 100.0);
+        state.put("lastErrorMessage", s.getLastDetail());
+        return state;
+    }
+    
+    // Upper-cased; new values beyond maxCardTypes share one series
+    private String cardTypeKey(String cardType) {
+        if (cardType == null || cardType.isBlank()) return null;
+        String key = cardType.trim().toUpperCase(Locale.ROOT);
+        if (cardTypes.contains(key)) return key;
+        synchronized (cardTypes) {
+            if (cardTypes.size() >= maxCardTypes) return OTHER_CARD_TYPE;
+            cardTypes.add(key);
+            return key;
+        }
+    }
+    
+    private void tick() {
+        long now = currentMinute();
+        series.values().forEach(s -> s.advanceTo(now));
+    }
+    
+    private static long currentMinute() {
+        return System.currentTimeMillis() / 60_000;
+    }
+}
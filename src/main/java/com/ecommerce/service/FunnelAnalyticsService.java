@@ -0,0 +1,318 @@
+package com.ecommerce.service;
+
+import com.ecommerce.analytics.FunnelAccumulator;
+import com.ecommerce.analytics.FunnelAccumulator.StuckStage;
+import com.ecommerce.event.PaymentEvent;
+import com.ecommerce.eventlog.PaymentEventLog;
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentMethod;
+import com.ecommerce.model.PaymentStatus;
+import com.ecommerce.repository.PaymentRepository;
+import com.ecommerce.snapshot.SnapshotParticipant;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lifecycle funnel (approval -> approved -> depositing -> deposited -> refund -> refunded)
+ * per orderType and paymentMethod.
+ * <p>
+ * Seeded once, before the web server starts, from a single grouped query (or an
+ * analytics snapshot), then maintained incrementally from the event log. Rendered
+ * reports are cached per grouping and rebuilt at most once per refresh interval,
+ * so under a steady stream of events readers still share one report. Each rebuild
+ * merges the groups under the service monitor, so it sees every group as of the
+ * same event, and copies only a summary of each group's stuck payments.
+ */
+@Service
+public class FunnelAnalyticsService implements SnapshotParticipant {
+    
+    private static final List<String> STUCK_ORDER_STATUSES = List.of(
+            "DEPOSIT_PENDING", "DEPOSIT_PROCESSING", "REFUND_PENDING", "REFUND_PROCESSING", "REVERSE_APPROVAL_PENDING");
+    
+    private final PaymentRepository paymentRepository;
+    private final PaymentEventLog eventLog;
+    private final long refreshNanos;
+    
+    private final Map<GroupKey, FunnelAccumulator> groups = new ConcurrentHashMap<>();
+    private final Map<Long, StuckEntry> stuckById = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final Map<String, CachedReport> reportCache = new ConcurrentHashMap<>();
+    private long lastSequence;
+    
+    public FunnelAnalyticsService(PaymentRepository paymentRepository, PaymentEventLog eventLog,
+                                  @Value("${payments.funnel.refresh:5s}") Duration refresh) {
+        this.paymentRepository = paymentRepository;
+        this.eventLog = eventLog;
+        this.refreshNanos = refresh.toNanos();
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        long sequence = eventLog.runExclusive(() -> {
+            synchronized (this) {
+                load();
+            }
+        });
+        synchronized (this) {
+            lastSequence = sequence;
+        }
+    }
+    
+    private void load() {
+        groups.clear();
+        stuckById.clear();
+        
+        for (Object[] row : paymentRepository.aggregateFunnelByOrderTypeAndMethod()) {
+            long[] counts = new long[FunnelAccumulator.Stage.values().length];
+            double[] amounts = new double[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = ((Number) row[3 + i * 2]).longValue();
+                amounts[i] = ((Number) row[4 + i * 2]).doubleValue();
+            }
+            long reversals = ((Number) row[15]).longValue();
+            double reversalAmount = ((Number) row[16]).doubleValue();
+            group(new GroupKey((String) row[0], (PaymentMethod) row[1]))
+                    .addTotals(((Number) row[2]).longValue(), counts, amounts, reversals, reversalAmount);
+        }
+        
+        List<Object[]> candidates = paymentRepository.findStuckCandidates(
+                List.of(PaymentStatus.PENDING, PaymentStatus.PROCESSING), STUCK_ORDER_STATUSES);
+        for (Object[] row : candidates) {
+            StuckStage stage = FunnelAccumulator.stuckStageOf((PaymentStatus) row[3], (String) row[4]);
+            if (stage == null) continue;
+            Instant enteredAt = row[6] != null ? (Instant) row[6] : (Instant) row[5];
+            enterStuck((Long) row[0], new GroupKey((String) row[1], (PaymentMethod) row[2]), stage, enteredAt);
+        }
+        version.incrementAndGet();
+    }
+    
+    @Override
+    public synchronized void onPaymentEvent(long sequence, PaymentEvent event) {
+        if (sequence <= lastSequence) return;
+        lastSequence = sequence;
+        
+        Payment payment = event.getPayment();
+        GroupKey key = new GroupKey(payment.getOrderType(), payment.getPaymentMethod());
+        
+        if (event.getType() == PaymentEvent.Type.CREATED) {
+            group(key).addPayment(payment);
+        }
+        
+        // Stage amounts do not change on a status update, only where the payment is waiting
+        StuckStage stage = FunnelAccumulator.stuckStageOf(payment.getStatus(), payment.getOrderStatus());
+        StuckEntry previous = stuckById.get(payment.getId());
+        if (previous == null || previous.stage != stage) {
+            if (previous != null) leaveStuck(payment.getId(), previous);
+            if (stage != null) {
+                Instant enteredAt = payment.getUpdatedAt() != null ? payment.getUpdatedAt() : payment.getCreatedAt();
+                enterStuck(payment.getId(), key, stage, enteredAt);
+            }
+        }
+        version.incrementAndGet();
+    }
+    
+    /**
+     * Funnel report grouped by "orderType", "paymentMethod" or both (default).
+     */
+    public Map<String, Object> getFunnel(String groupBy) {
+        String grouping = normalizeGrouping(groupBy);
+        long currentVersion = version.get();
+        CachedReport cached = reportCache.get(grouping);
+        if (cached != null && (cached.version == currentVersion || System.nanoTime() - cached.builtAt < refreshNanos)) {
+            return cached.report;
+        }
+        
+        Map<GroupKey, FunnelAccumulator> rollup = new TreeMap<>();
+        FunnelAccumulator total = new FunnelAccumulator();
+        long builtAt = System.nanoTime();
+        synchronized (this) {
+            currentVersion = version.get();
+            for (Map.Entry<GroupKey, FunnelAccumulator> entry : groups.entrySet()) {
+                GroupKey key = entry.getKey();
+                GroupKey rolled = new GroupKey(
+                        grouping.equals("paymentMethod") ? null : key.orderType,
+                        grouping.equals("orderType") ? null : key.paymentMethod);
+                entry.getValue().mergeInto(rollup.computeIfAbsent(rolled, k -> new FunnelAccumulator()));
+                entry.getValue().mergeInto(total);
+            }
+        }
+        
+        long now = System.currentTimeMillis() / 1000;
+        List<Map<String, Object>> groupReports = new ArrayList<>();
+        for (Map.Entry<GroupKey, FunnelAccumulator> entry : rollup.entrySet()) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            if (!grouping.equals("paymentMethod")) report.put("orderType", entry.getKey().orderType);
+            if (!grouping.equals("orderType")) {
+                report.put("paymentMethod", entry.getKey().paymentMethod != null ? entry.getKey().paymentMethod.name() : null);
+            }
+            report.putAll(entry.getValue().toMap(now));
+            groupReports.add(report);
+        }
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("groupBy", grouping);
+        result.put("groups", groupReports);
+        result.put("total", total.toMap(now));
+        result.put("generatedAt", LocalDateTime.now().toString());
+        reportCache.put(grouping, new CachedReport(currentVersion, builtAt, result));
+        return result;
+    }
+    
+    @Override
+    public String getSnapshotSection() {
+        return "funnel";
+    }
+    
+    @Override
+    public int getSnapshotVersion() {
+        return 1;
+    }
+    
+    @Override
+    public synchronized long writeSnapshot(DataOutput out) throws IOException {
+        out.writeInt(groups.size());
+        for (Map.Entry<GroupKey, FunnelAccumulator> entry : groups.entrySet()) {
+            writeKey(out, entry.getKey());
+            entry.getValue().writeTotals(out);
+        }
+        out.writeInt(stuckById.size());
+        for (Map.Entry<Long, StuckEntry> entry : stuckById.entrySet()) {
+            out.writeLong(entry.getKey());
+            writeKey(out, entry.getValue().key);
+            out.writeUTF(entry.getValue().stage.name());
+            out.writeLong(entry.getValue().enteredAt);
+        }
+        return lastSequence;
+    }
+    
+    @Override
+    public synchronized void restoreSnapshot(DataInput in, long sequence) throws IOException {
+        groups.clear();
+        stuckById.clear();
+        int groupCount = in.readInt();
+        for (int i = 0; i < groupCount; i++) {
+            group(readKey(in)).readTotals(in);
+        }
+        int stuckCount = in.readInt();
+        for (int i = 0; i < stuckCount; i++) {
+            long id = in.readLong();
+            GroupKey key = readKey(in);
+            StuckEntry entry = new StuckEntry(key, StuckStage.valueOf(in.readUTF()), in.readLong());
+            stuckById.put(id, entry);
+            group(key).enterStuck(entry.stage, entry.enteredAt);
+        }
+        lastSequence = sequence;
+        version.incrementAndGet();
+    }
+    
+    private static void writeKey(DataOutput out, GroupKey key) throws IOException {
+        out.writeUTF(key.orderType != null ? key.orderType : "");
+        out.writeUTF(key.paymentMethod != null ? key.paymentMethod.name() : "");
+    }
+    
+    private static GroupKey readKey(DataInput in) throws IOException {
+        String orderType = in.readUTF();
+        String paymentMethod = in.readUTF();
+        return new GroupKey(orderType.isEmpty() ? null : orderType,
+                paymentMethod.isEmpty() ? null : PaymentMethod.valueOf(paymentMethod));
+    }
+    
+    private FunnelAccumulator group(GroupKey key) {
+        return groups.computeIfAbsent(key, k -> new FunnelAccumulator());
+    }
+    
+    private void enterStuck(Long id, GroupKey key, StuckStage stage, Instant enteredAt) {
+        long epoch = enteredAt.getEpochSecond();
+        StuckEntry entry = new StuckEntry(key, stage, epoch);
+        stuckById.put(id, entry);
+        group(key).enterStuck(stage, epoch);
+    }
+    
+    private void leaveStuck(Long id, StuckEntry entry) {
+        stuckById.remove(id);
+        group(entry.key).leaveStuck(entry.stage, entry.enteredAt);
+    }
+    
+    private static String normalizeGrouping(String groupBy) {
+        if (groupBy == null) return "orderTypeAndPaymentMethod";
+        switch (groupBy.toLowerCase().replace("_", "")) {
+            case "ordertype":
+                return "orderType";
+            case "paymentmethod":
+                return "paymentMethod";
+            default:
+                return "orderTypeAndPaymentMethod";
+        }
+    }
+    
+    private static final class GroupKey implements Comparable<GroupKey> {
+        // Case-insensitive for display, then case-sensitive so that it agrees with equals:
+        // "Regular" and "regular" are separate groups and must not collapse in the TreeMap
+        private static final Comparator<String> ORDER_TYPE_ORDER = Comparator.nullsFirst(
+                String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder()));
+        
+        private final String orderType;
+        private final PaymentMethod paymentMethod;
+        
+        private GroupKey(String orderType, PaymentMethod paymentMethod) {
+            this.orderType = orderType;
+            this.paymentMethod = paymentMethod;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof GroupKey)) return false;
+            GroupKey other = (GroupKey) o;
+            return Objects.equals(orderType, other.orderType) && paymentMethod == other.paymentMethod;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(orderType, paymentMethod);
+        }
+        
+        @Override
+        public int compareTo(GroupKey other) {
+            int byType = ORDER_TYPE_ORDER.compare(orderType, other.orderType);
+            if (byType != 0) return byType;
+            return Comparator.nullsFirst(Comparator.<PaymentMethod>naturalOrder()).compare(paymentMethod, other.paymentMethod);
+        }
+    }
+    
+    private static final class StuckEntry {
+        private final GroupKey key;
+        private final StuckStage stage;
+        private final long enteredAt;
+        
+        private StuckEntry(GroupKey key, StuckStage stage, long enteredAt) {
+            this.key = key;
+            this.stage = stage;
+            this.enteredAt = enteredAt;
+        }
+    }
+    
+    private static final class CachedReport {
+        private final long version;
+        private final long builtAt;
+        private final Map<String, Object> report;
+        
+        private CachedReport(long version, long builtAt, Map<String, Object> report) {
+            this.version = version;
+            this.builtAt = builtAt;
+            this.report = report;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.ecommerce.service;
+
+import com.ecommerce.analytics.SpaceSaving;
+import com.ecommerce.event.PaymentEvent;
+import com.ecommerce.eventlog.PaymentEventLog;
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentStatus;
+import com.ecommerce.repository.PaymentRepository;
+import com.ecommerce.snapshot.SnapshotParticipant;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Top-k leaderboards: customers by payment amount, countries by failed payments and
+ * failure reasons (errorMessage) by count. Each board keeps a bounded
+ * {@link SpaceSaving} summary per hour plus one for all time, fed from the event log
+ * and seeded on startup from a streamed projection of the payments table.
+ * <p>
+ * A window is served by merging its closed hours once per hour (cached until the hour
+ * rolls over or a late event lands in a closed hour) and then the current hour, so
+ * the cost depends on the summary capacity, not on the number of payments.
+ * <p>
+ * Event delivery and reads take different locks: the event log hands out events
+ * while holding its own lock, so a read must not hold the service's monitor for a
+ * whole window merge. Readers only take it to pick up the summaries they need; a
+ * late event in a closed hour replaces that hour's summary with an updated copy
+ * instead of changing it, so the merge can run outside the monitor.
+ */
+@Service
+public class LeaderboardService implements SnapshotParticipant {
+    
+    public static final String CUSTOMERS = "customers";
+    public static final String COUNTRIES = "countries";
+    public static final String ERRORS = "errors";
+    private static final List<String> BOARDS = List.of(CUSTOMERS, COUNTRIES, ERRORS);
+    
+    // Statuses counted as failures, the same outcomes the anomaly detector watches
+    private static final Set<PaymentStatus> FAILURES = EnumSet.of(
+            PaymentStatus.FAILED, PaymentStatus.DECLINED, PaymentStatus.EXPIRED);
+    private static final long HOUR_SECONDS = 3600;
+    
+    private final PaymentRepository paymentRepository;
+    private final PaymentEventLog eventLog;
+    private final int capacity;
+    private final long retentionHours;
+    
+    private final Map<String, Board> boards = new LinkedHashMap<>();
+    private long lastSequence;
+    // Serializes readers and guards the merged-window caches; never taken by event delivery
+    private final Object windowLock = new Object();
+    
+    public LeaderboardService(PaymentRepository paymentRepository, PaymentEventLog eventLog,
+                              @Value("${payments.leaderboards.capacity:100}") int capacity,
+                              @Value("${payments.leaderboards.retention:30d}") Duration retention) {
+        this.paymentRepository = paymentRepository;
+        this.eventLog = eventLog;
+        this.capacity = capacity;
+        this.retentionHours = Math.max(1, retention.toHours());
+        BOARDS.forEach(name -> boards.put(name, new Board(true)));
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        // Filled in place outside the monitor: no reader can see these boards yet
+        Map<String, Board> seeded = new LinkedHashMap<>();
+        BOARDS.forEach(name -> seeded.put(name, new Board(false)));
+        long sequence = eventLog.runExclusive(() -> {
+            try (Stream<Object[]> rows = paymentRepository.streamLeaderboardRows()) {
+                rows.forEach(row -> {
+                    Instant createdAt = row[2] != null ? (Instant) row[2] : Instant.now();
+                    addCreated(seeded, (String) row[0], (Double) row[1], createdAt);
+                    if (FAILURES.contains((PaymentStatus) row[3])) {
+                        addFailure(seeded, (String) row[4], (String) row[5], row[6] != null ? (Instant) row[6] : createdAt);
+                    }
+                });
+            }
+        });
+        synchronized (this) {
+            seeded.values().forEach(b -> b.shared = true);
+            boards.putAll(seeded);
+            lastSequence = sequence;
+        }
+    }
+    
+    @Override
+    public synchronized void onPaymentEvent(long sequence, PaymentEvent event) {
+        if (sequence <= lastSequence) return;
+        lastSequence = sequence;
+        
+        Payment payment = event.getPayment();
+        Instant createdAt = payment.getCreatedAt() != null ? payment.getCreatedAt() : Instant.now();
+        Instant failedAt = payment.getUpdatedAt() != null ? payment.getUpdatedAt() : createdAt;
+        if (event.getType() == PaymentEvent.Type.CREATED) {
+            addCreated(boards, payment.getCustomerId(), payment.getAmount(), createdAt);
+            if (FAILURES.contains(payment.getStatus())) {
+                addFailure(boards, payment.getCountry(), payment.getErrorMessage(), failedAt);
+            }
+        } else if (FAILURES.contains(payment.getStatus()) && !FAILURES.contains(event.getPreviousStatus())) {
+            addFailure(boards, payment.getCountry(), payment.getErrorMessage(), failedAt);
+        }
+    }
+    
+    /**
+     * The top {@code k} of each requested board over the last {@code window} (e.g.
+     * "1h", "24h", "7d", up to the retention) or "all" for all time.
+     */
+    public Map<String, Object> getLeaderboards(String board, String window, int k) {
+        if (board != null && !BOARDS.contains(board)) {
+            throw new IllegalArgumentException("Unknown board: " + board + " (expected one of " + BOARDS + ")");
+        }
+        if (k < 1 || k > capacity) {
+            throw new IllegalArgumentException("k must be between 1 and " + capacity);
+        }
+        
+        long currentHour = Instant.now().getEpochSecond() / HOUR_SECONDS;
+        Long hours = null;
+        if (!"all".equalsIgnoreCase(window)) {
+            Duration duration;
+            try {
+                duration = DurationStyle.detectAndParse(window);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid window: " + window);
+            }
+            // Whole hours, counting the current partial hour as one
+            hours = Math.max(1, (duration.getSeconds() + HOUR_SECONDS - 1) / HOUR_SECONDS);
+            if (hours > retentionHours) {
+                throw new IllegalArgumentException("Window is longer than the " + retentionHours + "h retention");
+            }
+        }
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("window", hours != null ? hours + "h" : "all");
+        if (hours != null) {
+            result.put("from", Instant.ofEpochSecond((currentHour - hours + 1) * HOUR_SECONDS).toString());
+        }
+        Map<String, Board> current;
+        synchronized (this) {
+            current = new LinkedHashMap<>(boards);
+        }
+        Map<String, Object> boardResults = new LinkedHashMap<>();
+        synchronized (windowLock) {
+            for (Map.Entry<String, Board> entry : current.entrySet()) {
+                if (board != null && !board.equals(entry.getKey())) continue;
+                Board b = entry.getValue();
+                Map<String, Object> boardResult = new LinkedHashMap<>();
+                boardResult.put("metric", metricOf(entry.getKey()));
+                boardResult.put("entries", hours != null ? b.window(hours, currentHour).top(k) : b.allTimeTop(k));
+                boardResults.put(entry.getKey(), boardResult);
+            }
+        }
+        result.put("boards", boardResults);
+        return result;
+    }
+    
+    @Override
+    public String getSnapshotSection() {
+        return "leaderboards";
+    }
+    
+    @Override
+    public int getSnapshotVersion() {
+        return 1;
+    }
+    
+    @Override
+    public synchronized long writeSnapshot(DataOutput out) throws IOException {
+        out.writeInt(capacity);
+        out.writeInt(boards.size());
+        for (Map.Entry<String, Board> entry : boards.entrySet()) {
+            out.writeUTF(entry.getKey());
+            Board b = entry.getValue();
+            b.allTime.writeTo(out);
+            out.writeInt(b.hours.size());
+            for (Map.Entry<Long, SpaceSaving> hour : b.hours.entrySet()) {
+                out.writeLong(hour.getKey());
+                hour.getValue().writeTo(out);
+            }
+        }
+        return lastSequence;
+    }
+    
+    @Override
+    public synchronized void restoreSnapshot(DataInput in, long sequence) throws IOException {
+        if (in.readInt() != capacity) {
+            throw new IOException("Leaderboard capacity changed; rebuilding from the payments table");
+        }
+        BOARDS.forEach(name -> boards.put(name, new Board(true)));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Board b = new Board(true);
+            String name = in.readUTF();
+            b.allTime = SpaceSaving.readFrom(in, capacity);
+            int hours = in.readInt();
+            for (int h = 0; h < hours; h++) {
+                long hour = in.readLong();
+                b.hours.put(hour, SpaceSaving.readFrom(in, capacity));
+            }
+            if (boards.containsKey(name)) boards.put(name, b);
+        }
+        lastSequence = sequence;
+    }
+    
+    private static void addCreated(Map<String, Board> into, String customerId, Double amount, Instant createdAt) {
+        if (amount != null) {
+            into.get(CUSTOMERS).add(customerId, amount, createdAt);
+        }
+    }
+    
+    private static void addFailure(Map<String, Board> into, String country, String errorMessage, Instant failedAt) {
+        into.get(COUNTRIES).add(country, 1, failedAt);
+        into.get(ERRORS).add(errorMessage, 1, failedAt);
+    }
+    
+    private static String metricOf(String board) {
+        return CUSTOMERS.equals(board) ? "amount" : "failedPayments";
+    }
+    
+    private final class Board {
+        // Changed only under the service's monitor
+        SpaceSaving allTime = new SpaceSaving(capacity);
+        final TreeMap<Long, SpaceSaving> hours = new TreeMap<>();
+        // Visible to readers: closed hours are then copy-on-write
+        boolean shared;
+        // Latest hour a reader has treated as current; earlier hours are closed for writers too
+        long openHour = -1;
+        // Current hour when hours past the retention were last dropped
+        long prunedHour = -1;
+        // Bumped whenever a closed hour changes, so cached windows are merged again
+        long closedVersion;
+        
+        // Guarded by windowLock: window length in hours -> closed hours merged,
+        // valid while cachedHour and cachedVersion are current
+        final Map<Long, SpaceSaving> closedWindows = new HashMap<>();
+        long cachedHour = -1;
+        long cachedVersion = -1;
+        
+        Board(boolean shared) {
+            this.shared = shared;
+        }
+        
+        void add(String key, double weight, Instant at) {
+            if (key == null) return;
+            allTime.add(key, weight);
+            
+            long hour = at.getEpochSecond() / HOUR_SECONDS;
+            long currentHour = Math.max(Instant.now().getEpochSecond() / HOUR_SECONDS, openHour);
+            prune(currentHour);
+            if (hour <= currentHour - retentionHours) return;
+            if (hour >= currentHour || !shared) {
+                hours.computeIfAbsent(hour, h -> new SpaceSaving(capacity)).add(key, weight);
+                if (hour < currentHour) closedVersion++;
+                return;
+            }
+            // A late event in a closed hour, which a reader may be merging right now
+            SpaceSaving closed = hours.get(hour);
+            SpaceSaving updated = closed != null ? closed.copy() : new SpaceSaving(capacity);
+            updated.add(key, weight);
+            hours.put(hour, updated);
+            closedVersion++;
+        }
+        
+        List<Map<String, Object>> allTimeTop(int k) {
+            synchronized (LeaderboardService.this) {
+                return allTime.top(k);
+            }
+        }
+        
+        // Called with windowLock held
+        SpaceSaving window(long length, long currentHour) {
+            List<SpaceSaving> closedHours = null;
+            SpaceSaving current;
+            synchronized (LeaderboardService.this) {
+                openHour = Math.max(openHour, currentHour);
+                prune(currentHour);
+                if (cachedHour != currentHour || cachedVersion != closedVersion) {
+                    closedWindows.clear();
+                    cachedHour = currentHour;
+                    cachedVersion = closedVersion;
+                }
+                if (!closedWindows.containsKey(length)) {
+                    closedHours = new ArrayList<>(hours.subMap(currentHour - length + 1, true, currentHour, false).values());
+                }
+                SpaceSaving open = hours.get(currentHour);
+                current = open != null ? open.copy() : null;
+            }
+            
+            if (closedHours != null) {
+                SpaceSaving merged = new SpaceSaving(capacity);
+                closedHours.forEach(merged::merge);
+                closedWindows.put(length, merged);
+            }
+            SpaceSaving closed = closedWindows.get(length);
+            if (current == null) return closed;
+            SpaceSaving result = closed.copy();
+            result.merge(current);
+            return result;
+        }
+        
+        // Called under the service's monitor, by writers as well as readers, so an
+        // instance nobody reads from still drops hours once they leave the retention
+        private void prune(long currentHour) {
+            if (currentHour <= prunedHour) return;
+            hours.headMap(currentHour - retentionHours, true).clear();
+            prunedHour = currentHour;
+        }
+    }
+}
@@ -1,15 +1,41 @@
 package com.ecommerce.service;
 
+import com.ecommerce.analytics.AgeBuckets;
+import com.ecommerce.analytics.BucketSpec;
+import com.ecommerce.analytics.HyperLogLog;
+import com.ecommerce.cache.BoundedCache;
+import com.ecommerce.coalesce.SingleFlight;
+import com.ecommerce.datasource.DataSourceRouting;
+import com.ecommerce.dto.BucketMetricsQuery;
+import com.ecommerce.dto.ColumnarTable;
+import com.ecommerce.dto.PaymentPage;
+import com.ecommerce.dto.PaymentSearchCriteria;
 import com.ecommerce.dto.PaymentStatistics;
+import com.ecommerce.dto.PaymentSummary;
+import com.ecommerce.event.PaymentEvent;
+import com.ecommerce.ids.PaymentIdGenerator;
+import com.ecommerce.index.PaymentLookupIndex;
 import com.ecommerce.model.Payment;
 import com.ecommerce.model.PaymentMethod;
 import com.ecommerce.model.PaymentStatus;
+import com.ecommerce.partition.BucketTotals;
+import com.ecommerce.partition.PaymentPartitions;
 import com.ecommerce.repository.PaymentRepository;
+import com.ecommerce.repository.PaymentSpecifications;
+import com.ecommerce.sample.SamplePaymentFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import jakarta.annotation.PostConstruct;
 
-import java.time.LocalDateTime;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -17,18 +43,76 @@ import java.util.stream.Collectors;
 @Service
 public class PaymentService {
     
+    private static final int MAX_SEARCH_LIMIT = 500;
+    private static final int MAX_BUCKETS = 10_000;
+    private static final Set<String> SEARCH_SORT_FIELDS = Set.of("createdAt", "amount", "id");
+    // Transaction fields with few distinct values, sent once per bucket in the columnar layout
+    private static final Set<String> TRANSACTION_DICTIONARY_COLUMNS = Set.of(
+            "orderType", "currency", "paymentMethod", "paymentState", "country", "errorMessage");
+    
     private final PaymentRepository paymentRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PaymentLookupIndex lookupIndex;
+    private final PaymentStatisticsService statisticsService;
+    private final PaymentPartitions partitions;
+    private final PaymentIdGenerator ids;
+    // Identical concurrent dashboard queries (e.g. on the 5-minute refresh) share one computation
+    private final SingleFlight<String, Map<String, Object>> agedMetricsFlight;
+    private final SingleFlight<String, PaymentStatistics> statisticsFlight;
+    // Single-payment reads (drill-downs, lookups); writes go through to it after commit
+    private final BoundedCache<Long, Payment> paymentCache;
     
-    public PaymentService(PaymentRepository paymentRepository) {
+    public PaymentService(PaymentRepository paymentRepository, ApplicationEventPublisher eventPublisher,
+                          PaymentLookupIndex lookupIndex, PaymentStatisticsService statisticsService,
+                          PaymentPartitions partitions, PaymentIdGenerator ids,
+                          @Value("${payments.coalesce.timeout:10s}") Duration coalesceTimeout,
+                          @Value("${payments.cache.capacity:10000}") int cacheCapacity,
+                          @Value("${payments.cache.ttl:5m}") Duration cacheTtl) {
         this.paymentRepository = paymentRepository;
+        this.eventPublisher = eventPublisher;
+        this.lookupIndex = lookupIndex;
+        this.statisticsService = statisticsService;
+        this.partitions = partitions;
+        this.ids = ids;
+        this.agedMetricsFlight = new SingleFlight<>("aged-metrics", coalesceTimeout);
+        this.statisticsFlight = new SingleFlight<>("statistics", coalesceTimeout);
+        this.paymentCache = new BoundedCache<>("payments", cacheCapacity, cacheTtl,
+                Comparator.comparing(Payment::getUpdatedAt, Comparator.nullsFirst(Comparator.naturalOrder())));
     }
     
     @Transactional
     public Payment createPayment(Payment payment) {
-        payment.setTransactionId(generateTransactionId());
-        payment.setCreatedAt(LocalDateTime.now());
+        prepareNewPayment(payment, Instant.now());
+        Payment saved = paymentRepository.save(payment);
+        eventPublisher.publishEvent(PaymentEvent.created(saved));
+        cacheAfterCommit(saved);
+        return saved;
+    }
+    
+    // Group commit used by the write-behind ingestion pipeline: one transaction for the whole batch
+    @Transactional
+    public List<Payment> createPayments(List<Payment> payments) {
+        Instant now = Instant.now();
+        for (Payment payment : payments) {
+            prepareNewPayment(payment, now);
+        }
+        List<Payment> saved = paymentRepository.saveAll(payments);
+        saved.forEach(p -> eventPublisher.publishEvent(PaymentEvent.created(p)));
+        saved.forEach(this::cacheAfterCommit);
+        return saved;
+    }
+    
+    private void prepareNewPayment(Payment payment, Instant now) {
+        // Always insert - never let a client-supplied id turn a create into an update
+        payment.setId(null);
+        payment.setTransactionId(ids.transactionId());
+        if (payment.getPaymentReferenceId() == null || payment.getPaymentReferenceId().isBlank()) {
+            payment.setPaymentReferenceId(ids.paymentReferenceId());
+        }
+        payment.setCreatedAt(now);
+        // Set on creation too, as for seeded payments, so incremental readers such as reconciliation see new payments
+        payment.setUpdatedAt(now);
         payment.setStatus(PaymentStatus.PENDING);
-        return paymentRepository.save(payment);
     }
     
     @Transactional
@@ -36,176 +120,291 @@ public class PaymentService {
         Optional<Payment> paymentOpt = paymentRepository.findById(id);
         if (paymentOpt.isPresent()) {
             Payment payment = paymentOpt.get();
+            PaymentStatus previousStatus = payment.getStatus();
             payment.setStatus(status);
-            payment.setUpdatedAt(LocalDateTime.now());
+            payment.setUpdatedAt(Instant.now());
             if (errorMessage != null) {
                 payment.setErrorMessage(errorMessage);
             }
-            return paymentRepository.save(payment);
+            Payment saved = paymentRepository.save(payment);
+            eventPublisher.publishEvent(PaymentEvent.statusChanged(saved, previousStatus));
+            cacheAfterCommit(saved);
+            return saved;
         }
         throw new RuntimeException("Payment not found with id: " + id);
     }
     
-    public List<Payment> getAllPayments() {
-        return paymentRepository.findAllOrderByCreatedAtDesc();
+    @Transactional(readOnly = true)
+    public List<PaymentSummary> getAllPayments() {
+        return paymentRepository.findAllSummaries();
     }
     
-    public List<Payment> getPaymentsByStatus(PaymentStatus status) {
-        return paymentRepository.findByStatus(status);
+    @Transactional(readOnly = true)
+    public List<PaymentSummary> getPaymentsByStatus(PaymentStatus status) {
+        return paymentRepository.findSummariesByStatus(status);
     }
     
-    public List<Payment> getRecentPayments(int hours) {
-        LocalDateTime since = LocalDateTime.now().minusHours(hours);
-        return paymentRepository.findRecentPayments(since);
+    @Transactional(readOnly = true)
+    public List<PaymentSummary> getRecentPayments(int hours) {
+        Instant since = Instant.now().minus(hours, ChronoUnit.HOURS);
+        return paymentRepository.findRecentSummaries(since);
     }
     
     public Optional<Payment> getPaymentById(Long id) {
-        return paymentRepository.findById(id);
+        Payment cached = paymentCache.get(id);
+        if (cached != null) return Optional.of(cached.toBuilder().build());
+        
+        // Loaded from the primary: a lagging replica's row would otherwise stay cached until the TTL
+        Optional<Payment> payment = DataSourceRouting.onPrimary(() -> paymentRepository.findById(id));
+        payment.ifPresent(p -> paymentCache.put(id, p.toBuilder().build()));
+        return payment;
     }
     
-    public PaymentStatistics getPaymentStatistics() {
-        List<Payment> allPayments = paymentRepository.findAll();
+    public List<Payment> lookupPayments(String query, PaymentLookupIndex.Field field, int limit) {
+        List<Long> ids = lookupIndex.lookup(query, field, Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT)));
+        if (ids.isEmpty()) return Collections.emptyList();
         
-        long total = allPayments.size();
-        long completed = paymentRepository.countByStatus(PaymentStatus.COMPLETED);
-        long pending = paymentRepository.countByStatus(PaymentStatus.PENDING);
-        long failed = paymentRepository.countByStatus(PaymentStatus.FAILED);
-        long refunded = paymentRepository.countByStatus(PaymentStatus.REFUNDED);
+        Map<Long, Payment> byId = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            Payment cached = paymentCache.get(id);
+            if (cached != null) {
+                byId.put(id, cached.toBuilder().build());
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Payment payment : DataSourceRouting.onPrimary(() -> paymentRepository.findAllById(missing))) {
+                paymentCache.put(payment.getId(), payment.toBuilder().build());
+                byId.put(payment.getId(), payment);
+            }
+        }
+        // Keep the index order (exact matches first, newest first)
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+    
+    // Write-through once the transaction commits, so a rolled-back write never reaches the cache.
+    // The cache holds copies: entities handed to callers may still be attached and modified.
+    private void cacheAfterCommit(Payment payment) {
+        Payment committed = payment.toBuilder().build();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            paymentCache.put(committed.getId(), committed);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                paymentCache.put(committed.getId(), committed);
+            }
+        });
+    }
+    
+    public Map<String, Object> getPaymentCacheStats() {
+        return paymentCache.getStats();
+    }
+    
+    @Transactional(readOnly = true)
+    public PaymentPage searchPayments(PaymentSearchCriteria criteria) {
+        String sortBy = criteria.getSortBy() != null ? criteria.getSortBy() : "createdAt";
+        if (!SEARCH_SORT_FIELDS.contains(sortBy)) {
+            throw new IllegalArgumentException("Unsupported sort field: " + sortBy);
+        }
+        boolean descending = !"asc".equalsIgnoreCase(criteria.getDirection());
+        int limit = criteria.getLimit() == null ? 50 : Math.max(1, Math.min(criteria.getLimit(), MAX_SEARCH_LIMIT));
         
-        Double totalAmount = allPayments.stream()
-                .mapToDouble(Payment::getAmount)
-                .sum();
+        Specification<Payment> spec = Specification
+                .where(PaymentSpecifications.hasStatus(parseEnum(PaymentStatus.class, criteria.getStatus())))
+                .and(PaymentSpecifications.hasPaymentMethod(parseEnum(PaymentMethod.class, criteria.getPaymentMethod())))
+                .and(PaymentSpecifications.hasOrderType(partitions.canonicalOrderType(criteria.getOrderType())))
+                .and(PaymentSpecifications.hasCountry(criteria.getCountry()))
+                .and(PaymentSpecifications.amountBetween(criteria.getMinAmount(), criteria.getMaxAmount()))
+                .and(PaymentSpecifications.createdBetween(toInstant(criteria.getFrom()), toInstant(criteria.getTo())))
+                .and(PaymentSpecifications.matchesText(criteria.getQ()));
         
-        Double completedAmount = paymentRepository.sumAmountByStatus(PaymentStatus.COMPLETED);
-        if (completedAmount == null) completedAmount = 0.0;
+        if (criteria.getCursor() != null && !criteria.getCursor().isBlank()) {
+            spec = spec.and(keysetAfter(sortBy, criteria.getCursor(), descending));
+        }
+        
+        Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Sort sort = sortBy.equals("id")
+                ? Sort.by(direction, "id")
+                : Sort.by(direction, sortBy).and(Sort.by(direction, "id"));
         
-        double successRate = total > 0 ? (completed * 100.0) / total : 0.0;
-        double avgTransaction = total > 0 ? totalAmount / total : 0.0;
+        // Fetch one extra row to know whether another page exists without a count query
+        List<Payment> rows = paymentRepository.findBy(spec, query -> query.sortBy(sort).limit(limit + 1).all());
+        boolean hasMore = rows.size() > limit;
+        List<Payment> items = hasMore ? rows.subList(0, limit) : rows;
+        String nextCursor = hasMore ? encodeCursor(sortBy, items.get(items.size() - 1)) : null;
         
-        return new PaymentStatistics(
-                total,
-                completed,
-                pending,
-                failed,
-                refunded,
-                totalAmount,
-                completedAmount,
-                successRate,
-                avgTransaction
-        );
+        return new PaymentPage(new ArrayList<>(items), nextCursor, hasMore, limit);
+    }
+    
+    private Specification<Payment> keysetAfter(String sortBy, String cursor, boolean descending) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 3);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (parts.length != 3 || !parts[0].equals(sortBy)) {
+            throw new IllegalArgumentException("Cursor does not match sort field " + sortBy);
+        }
+        try {
+            Long lastId = Long.valueOf(parts[2]);
+            switch (sortBy) {
+                case "createdAt":
+                    return PaymentSpecifications.after(sortBy, Instant.parse(parts[1]), lastId, descending);
+                case "amount":
+                    return PaymentSpecifications.after(sortBy, Double.valueOf(parts[1]), lastId, descending);
+                default:
+                    return PaymentSpecifications.after(sortBy, lastId, lastId, descending);
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+    
+    private String encodeCursor(String sortBy, Payment last) {
+        Object value;
+        switch (sortBy) {
+            case "createdAt":
+                value = last.getCreatedAt();
+                break;
+            case "amount":
+                value = last.getAmount();
+                break;
+            default:
+                value = last.getId();
+        }
+        String raw = sortBy + "|" + value + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    // Matches enum constants the same way the aged-metrics filters do:
+    // case-insensitive and ignoring underscores ("credit_card", "creditcard", "CREDIT_CARD")
+    private <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+        if (value == null || value.isBlank() || value.equalsIgnoreCase("all")) return null;
+        String normalized = value.toLowerCase().replace("_", "");
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().toLowerCase().replace("_", "").equals(normalized)) {
+                return constant;
+            }
+        }
+        throw new IllegalArgumentException("Unknown " + type.getSimpleName() + ": " + value);
+    }
+    
+    public PaymentStatistics getPaymentStatistics() {
+        return statisticsFlight.execute("statistics", statisticsService::getStatistics);
+    }
+    
+    public Map<String, Object> getCoalescingStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("agedMetrics", agedMetricsFlight.getStats());
+        stats.put("statistics", statisticsFlight.getStats());
+        return stats;
     }
     
     public Map<String, Object> getAgedMetrics(String orderType, String paymentMethod, String paymentState, String dateFilter, String frequency) {
-        // Fetch all payments
-        List<Payment> payments = paymentRepository.findAllOrderByCreatedAtDesc();
-        LocalDateTime now = LocalDateTime.now();
-        
-        // Apply filters
-        payments = payments.stream()
-            .filter(p -> {
-                // Date filter
-                if (dateFilter != null && !dateFilter.equals("all")) {
-                    long daysDiff = ChronoUnit.DAYS.between(p.getCreatedAt(), now);
-                    if (dateFilter.equals("last_7_days") && daysDiff > 7) return false;
-                    if (dateFilter.equals("last_28_days") && daysDiff > 28) return false;
-                    if (dateFilter.equals("last_30_days") && daysDiff > 30) return false;
-                }
-                // Order type filter
-                if (orderType != null && !orderType.equals("all") && p.getOrderType() != null && !p.getOrderType().equalsIgnoreCase(orderType)) return false;
-                // Payment method filter - remove underscores and compare case-insensitively
-                if (paymentMethod != null && !paymentMethod.equals("all")) {
-                    String enumMethod = p.getPaymentMethod().name().toLowerCase().replace("_", "");
-                    String filterMethod = paymentMethod.toLowerCase().replace("_", "");
-                    if (!enumMethod.equals(filterMethod)) return false;
-                }
-                // Payment state filter - remove underscores and compare case-insensitively
-                if (paymentState != null && !paymentState.equals("all")) {
-                    String enumState = p.getStatus().name().toLowerCase().replace("_", "");
-                    String filterState = paymentState.toLowerCase().replace("_", "");
-                    if (!enumState.equals(filterState)) return false;
-                }
-                return true;
-            })
-            .collect(Collectors.toList());
+        return getAgedMetrics(orderType, paymentMethod, paymentState, dateFilter, frequency, "rows", null, true);
+    }
+    
+    /**
+     * Aged metrics with transactions either as one map per payment ("rows") or as a
+     * {@link ColumnarTable} per bucket ("columnar"), which repeats no keys or enum labels,
+     * or without transactions. Ages are measured in {@code zone} (the server's zone when null).
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getAgedMetrics(String orderType, String paymentMethod, String paymentState, String dateFilter,
+                                              String frequency, String layout, String zone, boolean includeTransactions) {
+        boolean columnar = "columnar".equalsIgnoreCase(layout);
+        ZoneId zoneId = parseZone(zone);
+        // Spellings the filters treat alike ("all"/none, CREDIT_CARD/creditcard) share a key
+        String key = String.join("|",
+            orderType == null || orderType.equals("all") ? "all" : orderType,
+            normalizeEnumFilter(paymentMethod), normalizeEnumFilter(paymentState),
+            String.valueOf(dateFilter), String.valueOf(frequency),
+            includeTransactions ? (columnar ? "columnar" : "rows") : "none", zoneId.getId());
+        return agedMetricsFlight.execute(key, () -> computeAgedMetrics(
+            orderType, paymentMethod, paymentState, dateFilter, frequency, columnar, zoneId, includeTransactions));
+    }
+    
+    private Map<String, Object> computeAgedMetrics(String orderType, String paymentMethod, String paymentState,
+                                                   String dateFilter, String frequency, boolean columnar, ZoneId zoneId,
+                                                   boolean includeTransactions) {
+        // Bucket edges on the hour (the end of the current one), so every bucket is made of
+        // whole hours of the partitions' aggregates
+        Instant now = Instant.now().truncatedTo(ChronoUnit.HOURS).plus(1, ChronoUnit.HOURS);
+        Instant cutoff = dateFilterCutoff(dateFilter, now, zoneId);
+        // The date filter keeps the hour containing its cutoff and everything after it
+        Instant since = cutoff != null ? cutoff.truncatedTo(ChronoUnit.HOURS) : null;
         
         // Get dynamic age groups based on date filter and frequency
         List<Map<String, Object>> ageGroups = getDynamicAgeGroups(dateFilter, frequency);
         
+        // Groups are consecutive one-unit ages (0, 1, 2, ...), so one boundary array covers them
+        ChronoUnit unit = ageGroups.isEmpty() ? ChronoUnit.DAYS : toChronoUnit((String) ageGroups.get(0).get("unit"));
+        AgeBuckets buckets = AgeBuckets.of(now, zoneId, unit, ageGroups.size());
+        
+        // Counts, amounts and (without a method or state filter) sketches from the orderType's
+        // partitions; rows for the transactions, for counts of ranges older than the partitions
+        // keep, and for the sketches of a filtered request that loads them anyway
+        Instant from = since != null ? since : buckets.getStart();
+        boolean aggregated = partitions.covers(from);
+        BucketTotals totals = new BucketTotals(ageGroups.size(), partitions.getSketchPrecision());
+        boolean sketched = aggregated
+            && partitions.aggregate(orderType, paymentMethod, paymentState, since, buckets::indexOf, totals);
+        
+        List<Payment> payments = Collections.emptyList();
+        if (includeTransactions || !aggregated) {
+            String orderTypeFilter = orderType == null || orderType.equals("all") ? null : orderType;
+            payments = aggregated || since != null
+                ? paymentRepository.findCreatedBetween(from, now, orderTypeFilter)
+                : paymentRepository.findAllOrderByCreatedAtDesc();
+        }
+        
+        List<List<Payment>> groupPayments = new ArrayList<>();
+        for (int i = 0; i < ageGroups.size(); i++) {
+            groupPayments.add(new ArrayList<>());
+        }
+        for (Payment p : payments) {
+            if (!matchesFilters(p, orderType, paymentMethod, paymentState)) continue;
+            // Placed by the end of its hour, like the aggregates; outside every bucket still counts in the totals
+            int index = buckets.indexOf(hourEnd(p.getCreatedAt()));
+            if (!aggregated) totals.add(index, 1, p.getAmount());
+            if (!sketched) totals.addSketches(index, p);
+            if (index >= 0 && includeTransactions) groupPayments.get(index).add(p);
+        }
+        boolean withSketches = sketched || includeTransactions || !aggregated;
+        
         // Calculate metrics for each age group based on frequency
         List<Map<String, Object>> items = new ArrayList<>();
-        for (Map<String, Object> group : ageGroups) {
-            int minValue = (int) group.get("min");
-            int maxValue = (int) group.get("max");
-            String label = (String) group.get("label");
-            String unit = (String) group.get("unit");
-            
-            List<Payment> groupPayments = payments.stream()
-                .filter(p -> {
-                    long diff = 0;
-                    switch (unit) {
-                        case "hours":
-                            diff = ChronoUnit.HOURS.between(p.getCreatedAt(), now);
-                            break;
-                        case "days":
-                            diff = ChronoUnit.DAYS.between(p.getCreatedAt(), now);
-                            break;
-                        case "weeks":
-                            diff = ChronoUnit.WEEKS.between(p.getCreatedAt(), now);
-                            break;
-                        case "months":
-                            diff = ChronoUnit.MONTHS.between(p.getCreatedAt(), now);
-                            break;
-                        default:
-                            diff = ChronoUnit.DAYS.between(p.getCreatedAt(), now);
-                    }
-                    return diff >= minValue && diff < maxValue;
-                })
-                .collect(Collectors.toList());
-            
-            int count = groupPayments.size();
-            double amount = groupPayments.stream().mapToDouble(Payment::getAmount).sum();
-            
-            // Convert Payment objects to a simpler map structure for frontend
-            List<Map<String, Object>> transactions = groupPayments.stream()
-                .map(p -> {
-                    Map<String, Object> transaction = new HashMap<>();
-                    transaction.put("id", p.getId());
-                    transaction.put("orderId", p.getOrderId());
-                    transaction.put("transactionId", p.getTransactionId());
-                    transaction.put("orderType", p.getOrderType());
-                    transaction.put("amount", p.getAmount());
-                    transaction.put("currency", p.getCurrency());
-                    transaction.put("paymentMethod", formatEnumValue(p.getPaymentMethod().name()));
-                    transaction.put("paymentState", formatEnumValue(p.getStatus().name()));
-                    transaction.put("customerName", p.getCustomerName());
-                    transaction.put("customerEmail", p.getCustomerEmail());
-                    transaction.put("customerId", p.getCustomerId());
-                    transaction.put("date", p.getCreatedAt().toString());
-                    transaction.put("lastUpdated", p.getUpdatedAt() != null ? p.getUpdatedAt().toString() : p.getCreatedAt().toString()); // Added lastUpdated field
-                    transaction.put("description", p.getDescription());
-                    transaction.put("country", p.getCountry());
-                    transaction.put("ipAddress", p.getIpAddress());
-                    transaction.put("errorMessage", p.getErrorMessage());
-                    return transaction;
-                })
-                .collect(Collectors.toList());
-            
+        for (int i = 0; i < ageGroups.size(); i++) {
             Map<String, Object> item = new HashMap<>();
-            item.put("label", label);
-            item.put("count", count);
-            item.put("amount", String.format("$%.2f", amount));
+            item.put("label", ageGroups.get(i).get("label"));
+            item.put("count", totals.getCount(i));
+            item.put("amount", String.format("$%.2f", totals.getAmount(i)));
             item.put("highlight", false); // Can be customized based on business logic
-            item.put("transactions", transactions); // Add transactions array
+            if (includeTransactions) {
+                // Convert Payment objects to a simpler map structure for frontend
+                List<Map<String, Object>> transactions = groupPayments.get(i).stream()
+                    .map(this::toTransaction)
+                    .collect(Collectors.toList());
+                // Add transactions array, or one columnar table when the client asked for it
+                item.put("transactions", columnar ? ColumnarTable.of(transactions, TRANSACTION_DICTIONARY_COLUMNS) : transactions);
+            }
+            if (withSketches) totals.writeSketchesTo(i, item);
             items.add(item);
         }
         
         // Calculate totals
-        int totalCount = payments.size();
-        double totalAmount = payments.stream().mapToDouble(Payment::getAmount).sum();
-        
         Map<String, Object> total = new HashMap<>();
-        total.put("count", totalCount);
-        total.put("amount", String.format("$%.2f", totalAmount));
+        total.put("count", totals.getTotalCount());
+        total.put("amount", String.format("$%.2f", totals.getTotalAmount()));
+        if (withSketches) totals.writeTotalSketchesTo(total);
         
         // Return result
         Map<String, Object> result = new HashMap<>();
@@ -215,6 +414,189 @@ public class PaymentService {
         return result;
     }
     
+    private static long hourEnd(Instant createdAt) {
+        return createdAt.truncatedTo(ChronoUnit.HOURS).plus(1, ChronoUnit.HOURS).toEpochMilli();
+    }
+    
+    private static ChronoUnit toChronoUnit(String unit) {
+        switch (unit) {
+            case "hours":
+                return ChronoUnit.HOURS;
+            case "weeks":
+                return ChronoUnit.WEEKS;
+            case "months":
+                return ChronoUnit.MONTHS;
+            default:
+                return ChronoUnit.DAYS;
+        }
+    }
+    
+    private static ZoneId parseZone(String zone) {
+        if (zone == null || zone.isBlank()) return ZoneId.systemDefault();
+        try {
+            return ZoneId.of(zone);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Unknown time zone: " + zone);
+        }
+    }
+    
+    private static String normalizeEnumFilter(String value) {
+        return value == null || value.equals("all") ? "all" : value.toLowerCase().replace("_", "");
+    }
+    
+    private static boolean matchesFilters(Payment p, String orderType, String paymentMethod, String paymentState) {
+        // Order type filter
+        if (orderType != null && !orderType.equals("all") && p.getOrderType() != null && !p.getOrderType().equalsIgnoreCase(orderType)) return false;
+        // Payment method filter - remove underscores and compare case-insensitively
+        if (paymentMethod != null && !paymentMethod.equals("all")) {
+            String enumMethod = p.getPaymentMethod().name().toLowerCase().replace("_", "");
+            String filterMethod = paymentMethod.toLowerCase().replace("_", "");
+            if (!enumMethod.equals(filterMethod)) return false;
+        }
+        // Payment state filter - remove underscores and compare case-insensitively
+        if (paymentState != null && !paymentState.equals("all")) {
+            String enumState = p.getStatus().name().toLowerCase().replace("_", "");
+            String filterState = paymentState.toLowerCase().replace("_", "");
+            if (!enumState.equals(filterState)) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Aged metrics over an arbitrary range and bucket width in a given zone. Each
+     * payment's bucket is computed from its timestamp (see {@link BucketSpec}), so
+     * "last 6 hours at 5-minute resolution" costs one pass over the range's payments.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getBucketMetrics(BucketMetricsQuery query) {
+        ZoneId zone = parseZone(query.getZone());
+        Instant to = query.getTo() != null ? parseInstant(query.getTo(), zone) : Instant.now();
+        Instant from = query.getFrom() != null ? parseInstant(query.getFrom(), zone) : BucketSpec.before(to, query.getLast(), zone);
+        BucketSpec spec = BucketSpec.of(from, to, query.getBucket(), zone);
+        if (spec.getBucketCount() > MAX_BUCKETS) {
+            throw new IllegalArgumentException("Range needs " + spec.getBucketCount() + " buckets, at most " + MAX_BUCKETS + " are allowed");
+        }
+        
+        // Only [from, to) is read, and sketches are allocated for buckets that get a payment:
+        // thousands of minute buckets are mostly empty
+        Instant since = spec.bucketStart(0).toInstant();
+        String orderTypeFilter = query.getOrderType() == null || query.getOrderType().equals("all") ? null : query.getOrderType();
+        List<Payment> payments = paymentRepository.findCreatedBetween(since, to, orderTypeFilter);
+        
+        int buckets = spec.getBucketCount();
+        BucketTotals totals = new BucketTotals(buckets, HyperLogLog.DEFAULT_PRECISION);
+        List<List<Payment>> bucketPayments = new ArrayList<>();
+        if (query.isIncludeTransactions()) {
+            for (int i = 0; i < buckets; i++) bucketPayments.add(new ArrayList<>());
+        }
+        
+        for (Payment p : payments) {
+            int index = spec.indexOf(p.getCreatedAt().toEpochMilli());
+            if (index < 0 || !matchesFilters(p, query.getOrderType(), query.getPaymentMethod(), query.getPaymentState())) continue;
+            totals.add(index, 1, p.getAmount());
+            totals.addSketches(index, p);
+            if (query.isIncludeTransactions()) bucketPayments.get(index).add(p);
+        }
+        
+        boolean columnar = "columnar".equalsIgnoreCase(query.getLayout());
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0; i < buckets; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("label", spec.label(i));
+            item.put("start", spec.bucketStart(i).toOffsetDateTime().toString());
+            item.put("end", spec.bucketEnd(i).toOffsetDateTime().toString());
+            item.put("count", totals.getCount(i));
+            item.put("amount", String.format("$%.2f", totals.getAmount(i)));
+            if (query.isIncludeTransactions()) {
+                List<Map<String, Object>> transactions = bucketPayments.get(i).stream()
+                    .map(this::toTransaction)
+                    .collect(Collectors.toList());
+                item.put("transactions", columnar ? ColumnarTable.of(transactions, TRANSACTION_DICTIONARY_COLUMNS) : transactions);
+            }
+            totals.writeSketchesTo(i, item);
+            items.add(item);
+        }
+        
+        Map<String, Object> total = new LinkedHashMap<>();
+        total.put("count", totals.getTotalCount());
+        total.put("amount", String.format("$%.2f", totals.getTotalAmount()));
+        totals.writeTotalSketchesTo(total);
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("from", spec.bucketStart(0).toOffsetDateTime().toString());
+        result.put("to", to.atZone(zone).toOffsetDateTime().toString());
+        result.put("zone", zone.getId());
+        result.put("bucket", spec.getWidth());
+        result.put("items", items);
+        result.put("total", total);
+        return result;
+    }
+    
+    // ISO instant or offset date-time, else a local date-time or date in the given zone
+    private static Instant parseInstant(String value, ZoneId zone) {
+        try {
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException ignored) {
+            // not an offset date-time
+        }
+        try {
+            return LocalDateTime.parse(value).atZone(zone).toInstant();
+        } catch (DateTimeParseException ignored) {
+            // not a local date-time
+        }
+        try {
+            return LocalDate.parse(value).atStartOfDay(zone).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date/time: " + value);
+        }
+    }
+    
+    // Latest createdAt the date filter excludes: more than N whole days before now in the zone
+    private static Instant dateFilterCutoff(String dateFilter, Instant now, ZoneId zone) {
+        if (dateFilter == null) return null;
+        switch (dateFilter) {
+            case "last_7_days":
+                return now.atZone(zone).minusDays(8).toInstant();
+            case "last_28_days":
+                return now.atZone(zone).minusDays(29).toInstant();
+            case "last_30_days":
+                return now.atZone(zone).minusDays(31).toInstant();
+            default:
+                return null;
+        }
+    }
+    
+    // Search filters and transaction dates are in the server's zone, as before timestamps became instants
+    private static Instant toInstant(LocalDateTime local) {
+        return local != null ? local.atZone(ZoneId.systemDefault()).toInstant() : null;
+    }
+    
+    private static LocalDateTime toLocal(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+    }
+    
+    private Map<String, Object> toTransaction(Payment p) {
+        Map<String, Object> transaction = new LinkedHashMap<>();
+        transaction.put("id", p.getId());
+        transaction.put("orderId", p.getOrderId());
+        transaction.put("transactionId", p.getTransactionId());
+        transaction.put("orderType", p.getOrderType());
+        transaction.put("amount", p.getAmount());
+        transaction.put("currency", p.getCurrency());
+        transaction.put("paymentMethod", formatEnumValue(p.getPaymentMethod().name()));
+        transaction.put("paymentState", formatEnumValue(p.getStatus().name()));
+        transaction.put("customerName", p.getCustomerName());
+        transaction.put("customerEmail", p.getCustomerEmail());
+        transaction.put("customerId", p.getCustomerId());
+        transaction.put("date", toLocal(p.getCreatedAt()).toString());
+        transaction.put("lastUpdated", toLocal(p.getUpdatedAt() != null ? p.getUpdatedAt() : p.getCreatedAt()).toString()); // Added lastUpdated field
+        transaction.put("description", p.getDescription());
+        transaction.put("country", p.getCountry());
+        transaction.put("ipAddress", p.getIpAddress());
+        transaction.put("errorMessage", p.getErrorMessage());
+        return transaction;
+    }
+    
     private List<Map<String, Object>> getDynamicAgeGroups(String dateFilter, String frequency) {
         List<Map<String, Object>> groups = new ArrayList<>();
         
@@ -332,21 +714,14 @@ public class PaymentService {
         
         System.out.println("🚀 Generating comprehensive payment data for 90 days...");
         
-        String[] customerNames = {"John Doe", "Jane Smith", "Bob Johnson", "Alice Williams", "Charlie Brown", 
-                                  "David Miller", "Emma Wilson", "Frank Davis", "Grace Lee", "Henry Taylor"};
-        String[] countries = {"USA", "UK", "Canada", "Australia", "Germany", "France", "Japan", "Brazil"};
-        String[] orderTypes = {"Regular", "Subscription", "Loyalty", "CVC_No_Show_Penality", "Onetime", "CWAV_Telemedicine"};
-        String[] cardBrands = {"VISA", "DISCOVER", "AMEX", "MASTERCARD"};
-        PaymentMethod[] methods = PaymentMethod.values();
-        
         Random random = new Random();
+        SamplePaymentFactory factory = new SamplePaymentFactory(random, ids.getGenerator());
         LocalDateTime now = LocalDateTime.now();
         
         // Generate ~10-15 payments per day for 90 days = 900-1350 payments
         int totalPayments = 1000;
         int paymentsPerDay = totalPayments / 90;
         
-        int creditCardCounter = 0;
         int paymentCounter = 1;
         
         // Generate payments for 90 days (from 89 days ago to today)
@@ -365,254 +740,22 @@ public class PaymentService {
             for (int p = 0; p < paymentsForDay; p++) {
                 if (paymentCounter > totalPayments) break;
                 
-                Payment payment = new Payment();
-                
-                // Generate unique IDs
-                payment.setTransactionId(generateTransactionId());
-                payment.setPaymentReferenceId("PREF" + UUID.randomUUID().toString().replace("-", "").substring(0, 12).toUpperCase());
-                payment.setOrderId("ORD" + String.format("%06d", paymentCounter));
-                
-                // Customer details
-                payment.setCustomerId("CUST" + String.format("%05d", (paymentCounter % customerNames.length) + 1));
-                payment.setCustomerName(customerNames[paymentCounter % customerNames.length]);
-                payment.setCustomerEmail(payment.getCustomerName().toLowerCase().replace(" ", ".") + "@example.com");
-                
-                // Amount and currency
-                payment.setAmount(Math.round((random.nextDouble() * 500 + 10) * 100.0) / 100.0);
-                payment.setCurrency("USD");
-                
-                // Request time and creation time (within the day)
+                // Request time within the day
                 // day 0 = 89 days ago, day 1 = 88 days ago, ..., day 89 = today
                 LocalDateTime requestTime = now.minusDays(89 - day)
                     .withHour(random.nextInt(24))
                     .withMinute(random.nextInt(60))
                     .withSecond(random.nextInt(60));
-                payment.setCreatedAt(requestTime);
-                
-                // Payment method selection
-                PaymentMethod method = methods[paymentCounter % methods.length];
-                payment.setPaymentMethod(method);
-            
-                
-                // Rule 1: Validation status and card type
-                String validationStatus;
-                if (method == PaymentMethod.CREDIT_CARD) {
-                    // For credit cards, assign actual card brand
-                    payment.setCardType(cardBrands[creditCardCounter % cardBrands.length]);
-                    creditCardCounter++;
-                    
-                    // 70% VALID, 20% INVALID, 10% PENDING for credit cards
-                    double validRand = random.nextDouble();
-                    if (validRand < 0.70) {
-                        validationStatus = "VALID";
-                    } else if (validRand < 0.90) {
-                        validationStatus = "INVALID";
-                    } else {
-                        validationStatus = "PENDING";
-                    }
-                    payment.setValidationStatus(validationStatus);
-                } else {
-                    // For non-credit card methods, no card type
-                    payment.setCardType(null);
-                    
-                    // 80% VALID, 15% INVALID, 5% PENDING for other methods
-                    double validRand = random.nextDouble();
-                    if (validRand < 0.80) {
-                        validationStatus = "VALID";
-                    } else if (validRand < 0.95) {
-                        validationStatus = "INVALID";
-                    } else {
-                        validationStatus = "PENDING";
-                    }
-                    payment.setValidationStatus(validationStatus);
-                }
-                
-                // Order type and other details
-                payment.setOrderType(orderTypes[paymentCounter % orderTypes.length]);
-                payment.setDescription("Order payment #" + paymentCounter);
-                payment.setIpAddress("192.168." + (paymentCounter % 255) + "." + ((paymentCounter * 7) % 255));
-                payment.setCountry(countries[paymentCounter % countries.length]);
-            
-                
-                // Set approval amount
-                Double baseAmount = payment.getAmount();
-                payment.setApprovalAmount(baseAmount);
-                
-                // Rule 2: Only if validation_status is VALID then Approval can be success, else DECLINED
-                PaymentStatus approvalStatus;
-                String orderStatus;
-                
-                if ("VALID".equals(validationStatus)) {
-                    // Rule 5: Check if approval is expired (older than 7 days)
-                    long daysSinceRequest = ChronoUnit.DAYS.between(requestTime, now);
-                    if (daysSinceRequest > 7 && random.nextDouble() < 0.05) { // 5% chance of expiration for old requests
-                        approvalStatus = PaymentStatus.EXPIRED;
-                    } else {
-                        // 75% SUCCESS, 15% PROCESSING/PENDING, 5% CANCELLED, 5% FAILED
-                        double rand = random.nextDouble();
-                        if (rand < 0.75) {
-                            approvalStatus = PaymentStatus.SUCCESS;
-                        } else if (rand < 0.85) {
-                            approvalStatus = (random.nextDouble() < 0.5) ? PaymentStatus.PROCESSING : PaymentStatus.PENDING;
-                        } else if (rand < 0.90) {
-                            approvalStatus = PaymentStatus.CANCELLED;
-                        } else {
-                            approvalStatus = PaymentStatus.FAILED;
-                        }
-                    }
-                } else if ("INVALID".equals(validationStatus)) {
-                    // Invalid validation always leads to DECLINED or FAILED
-                    approvalStatus = (random.nextDouble() < 0.7) ? PaymentStatus.DECLINED : PaymentStatus.FAILED;
-                } else { // PENDING validation
-                    // Pending validation means processing or pending status
-                    approvalStatus = (random.nextDouble() < 0.6) ? PaymentStatus.PROCESSING : PaymentStatus.PENDING;
-                }
-                
-                payment.setStatus(approvalStatus);
-                
-                // Rule 3: Approved amount = 0 for non-success states
-                if (approvalStatus == PaymentStatus.SUCCESS) {
-                    // Can be partial (85-100%) or complete
-                    if (random.nextDouble() < 0.85) {
-                        payment.setApprovedAmount(baseAmount);
-                    } else {
-                        double percentage = 0.85 + (random.nextDouble() * 0.15);
-                        payment.setApprovedAmount(Math.round(baseAmount * percentage * 100.0) / 100.0);
-                    }
-                } else {
-                    // Failed, Declined, Pending, Processing, Expired, Cancelled -> 0
-                    payment.setApprovedAmount(0.0);
-                }
-            
+                Payment payment = factory.create(paymentCounter, requestTime, now);
+                // Stamped with the payment's own time so ID order matches createdAt
+                payment.setTransactionId(ids.getGenerator().at(PaymentIdGenerator.TRANSACTION_PREFIX, payment.getCreatedAt()));
                 
-                Double approvedAmt = payment.getApprovedAmount();
-                
-                // Rule 6: Only if Approval is Success, process Deposit
-                PaymentStatus depositStatus = null;
-                if (approvalStatus == PaymentStatus.SUCCESS && approvedAmt > 0) {
-                    payment.setDepositingAmount(approvedAmt);
-                    
-                    // 85% deposit success, 15% deposit pending/processing/failed
-                    double depositRand = random.nextDouble();
-                    if (depositRand < 0.85) {
-                        depositStatus = PaymentStatus.SUCCESS;
-                        // Rule 8: Deposited amount = full amount only for success
-                        if (random.nextDouble() < 0.90) {
-                            payment.setDepositedAmount(approvedAmt);
-                        } else {
-                            double percentage = 0.90 + (random.nextDouble() * 0.10);
-                            payment.setDepositedAmount(Math.round(approvedAmt * percentage * 100.0) / 100.0);
-                        }
-                    } else {
-                        // Deposit not successful - set deposited amount to 0
-                        payment.setDepositedAmount(0.0);
-                        
-                        if (depositRand < 0.90) {
-                            depositStatus = PaymentStatus.PENDING;
-                        } else if (depositRand < 0.95) {
-                            depositStatus = PaymentStatus.PROCESSING;
-                        } else {
-                            depositStatus = PaymentStatus.FAILED;
-                        }
-                        
-                        // Rule 4: Reverse Approval happens when deposit is pending
-                        if (depositStatus == PaymentStatus.PENDING || depositStatus == PaymentStatus.PROCESSING) {
-                            payment.setReversingApprovalAmount(approvedAmt);
-                            payment.setReversingApprovedAmount(approvedAmt);
-                        }
-                    }
-                } else {
-                    // No deposit if approval not successful
-                    payment.setDepositingAmount(0.0);
-                    payment.setDepositedAmount(0.0);
-                    payment.setReversingApprovalAmount(0.0);
-                    payment.setReversingApprovedAmount(0.0);
-                }
-                
-                Double depositedAmt = payment.getDepositedAmount();
-                
-                // Rule 7: Only if Deposit is success, it can go for refund
-                PaymentStatus refundStatus = null;
-                if (depositStatus == PaymentStatus.SUCCESS && depositedAmt != null && depositedAmt > 0) {
-                    // 12% chance of refund
-                    if (random.nextDouble() < 0.12) {
-                        payment.setRefundAmount(depositedAmt);
-                        
-                        // 80% full refund, 20% partial refund
-                        double refundRand = random.nextDouble();
-                        if (refundRand < 0.75) {
-                            refundStatus = PaymentStatus.SUCCESS;
-                            if (random.nextDouble() < 0.80) {
-                                payment.setRefundedAmount(depositedAmt);
-                            } else {
-                                double percentage = 0.75 + (random.nextDouble() * 0.25);
-                                payment.setRefundedAmount(Math.round(depositedAmt * percentage * 100.0) / 100.0);
-                            }
-                        } else {
-                            // Refund pending/processing
-                            refundStatus = (random.nextDouble() < 0.6) ? PaymentStatus.PENDING : PaymentStatus.PROCESSING;
-                            payment.setRefundedAmount(0.0);
-                        }
-                        
-                        // Set reversing amounts for refunds
-                        payment.setReversingApprovalAmount(approvedAmt);
-                        payment.setReversingApprovedAmount(approvedAmt);
-                    } else {
-                        payment.setRefundAmount(0.0);
-                        payment.setRefundedAmount(0.0);
-                    }
-                } else {
-                    payment.setRefundAmount(0.0);
-                    payment.setRefundedAmount(0.0);
-                }
-                
-                // Rule 9: Set order status based on the latest successful stage
-                if (refundStatus == PaymentStatus.SUCCESS && payment.getRefundedAmount() != null && payment.getRefundedAmount() > 0) {
-                    orderStatus = "REFUND_" + refundStatus.toString();
-                } else if (refundStatus != null && refundStatus != PaymentStatus.SUCCESS) {
-                    orderStatus = "REFUND_" + refundStatus.toString();
-                } else if (depositStatus == PaymentStatus.SUCCESS && depositedAmt != null && depositedAmt > 0) {
-                    orderStatus = "DEPOSIT_" + depositStatus.toString();
-                } else if (depositStatus != null && depositStatus != PaymentStatus.SUCCESS) {
-                    orderStatus = "DEPOSIT_" + depositStatus.toString();
-                } else if (payment.getReversingApprovalAmount() != null && payment.getReversingApprovalAmount() > 0) {
-                    orderStatus = "REVERSE_APPROVAL_PENDING";
-                } else {
-                    orderStatus = "APPROVAL_" + approvalStatus.toString();
-                }
-                
-                payment.setOrderStatus(orderStatus);
-                
-                // Update timestamp
-                payment.setUpdatedAt(requestTime.plusMinutes(random.nextInt(120)));
-                
-                // Set error messages based on payment status
-                if (approvalStatus == PaymentStatus.FAILED) {
-                    String[] failReasons = {"Insufficient funds", "Card declined by issuer", "Invalid card details", "Bank processing error", "Transaction limit exceeded"};
-                    payment.setErrorMessage(failReasons[paymentCounter % failReasons.length]);
-                } else if (approvalStatus == PaymentStatus.DECLINED) {
-                    payment.setErrorMessage("Payment declined - validation failed");
-                } else if (approvalStatus == PaymentStatus.EXPIRED) {
-                    payment.setErrorMessage("Crossed 7 days");
-                } else if (approvalStatus == PaymentStatus.PROCESSING) {
-                    payment.setErrorMessage("Payment is being processed");
-                } else if (approvalStatus == PaymentStatus.PENDING) {
-                    payment.setErrorMessage("Payment is pending approval");
-                } else if (approvalStatus == PaymentStatus.CANCELLED) {
-                    payment.setErrorMessage("Payment cancelled by user");
-                } else if (approvalStatus == PaymentStatus.SUCCESS) {
-                    payment.setErrorMessage(null);
-                }
-                
-                paymentRepository.save(payment);
+                Payment saved = paymentRepository.save(payment);
+                eventPublisher.publishEvent(PaymentEvent.created(saved));
                 paymentCounter++;
             }
         }
         
         System.out.println("✅ Successfully generated " + (paymentCounter - 1) + " payments for 90 days!");
     }
-    
-    private String generateTransactionId() {
-        return "TXN" + UUID.randomUUID().toString().replace("-", "").substring(0, 16).toUpperCase();
-    }
 }
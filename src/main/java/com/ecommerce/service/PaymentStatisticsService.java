@@ -0,0 +1,135 @@
+package com.ecommerce.service;
+
+import com.ecommerce.dto.PaymentStatistics;
+import com.ecommerce.event.PaymentEvent;
+import com.ecommerce.eventlog.PaymentEventLog;
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentStatus;
+import com.ecommerce.repository.PaymentRepository;
+import com.ecommerce.snapshot.SnapshotParticipant;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Payment count and amount per status, kept in memory so /statistics does not scan
+ * the payments table. Seeded from one grouped query before the web server starts
+ * (with payment commits held at the event log's commit gate, so an event sequenced
+ * after the seed is never also counted by it) and maintained from the event log;
+ * saved in analytics snapshots.
+ */
+@Service
+public class PaymentStatisticsService implements SnapshotParticipant {
+    
+    private static final PaymentStatus[] STATUSES = PaymentStatus.values();
+    
+    private final PaymentRepository paymentRepository;
+    private final PaymentEventLog eventLog;
+    
+    private final long[] counts = new long[STATUSES.length];
+    private final double[] amounts = new double[STATUSES.length];
+    private long lastSequence;
+    
+    public PaymentStatisticsService(PaymentRepository paymentRepository, PaymentEventLog eventLog) {
+        this.paymentRepository = paymentRepository;
+        this.eventLog = eventLog;
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        long sequence = eventLog.runExclusive(() -> {
+            synchronized (this) {
+                Arrays.fill(counts, 0);
+                Arrays.fill(amounts, 0);
+                for (Object[] row : paymentRepository.aggregateByStatus()) {
+                    int status = ((PaymentStatus) row[0]).ordinal();
+                    counts[status] = ((Number) row[1]).longValue();
+                    amounts[status] = ((Number) row[2]).doubleValue();
+                }
+            }
+        });
+        synchronized (this) {
+            lastSequence = sequence;
+        }
+    }
+    
+    @Override
+    public synchronized void onPaymentEvent(long sequence, PaymentEvent event) {
+        if (sequence <= lastSequence) return;
+        lastSequence = sequence;
+        
+        Payment payment = event.getPayment();
+        double amount = payment.getAmount() != null ? payment.getAmount() : 0.0;
+        if (event.getType() == PaymentEvent.Type.STATUS_CHANGED && event.getPreviousStatus() != null) {
+            counts[event.getPreviousStatus().ordinal()]--;
+            amounts[event.getPreviousStatus().ordinal()] -= amount;
+        }
+        counts[payment.getStatus().ordinal()]++;
+        amounts[payment.getStatus().ordinal()] += amount;
+    }
+    
+    public synchronized PaymentStatistics getStatistics() {
+        long total = 0;
+        double totalAmount = 0;
+        for (int i = 0; i < STATUSES.length; i++) {
+            total += counts[i];
+            totalAmount += amounts[i];
+        }
+        long completed = counts[PaymentStatus.COMPLETED.ordinal()];
+        
+        double successRate = total > 0 ? (completed * 100.0) / total : 0.0;
+        double avgTransaction = total > 0 ? totalAmount / total : 0.0;
+        
+        return new PaymentStatistics(
+                total,
+                completed,
+                counts[PaymentStatus.PENDING.ordinal()],
+                counts[PaymentStatus.FAILED.ordinal()],
+                counts[PaymentStatus.REFUNDED.ordinal()],
+                totalAmount,
+                amounts[PaymentStatus.COMPLETED.ordinal()],
+                successRate,
+                avgTransaction
+        );
+    }
+    
+    @Override
+    public String getSnapshotSection() {
+        return "statistics";
+    }
+    
+    @Override
+    public int getSnapshotVersion() {
+        return 1;
+    }
+    
+    @Override
+    public synchronized long writeSnapshot(DataOutput out) throws IOException {
+        // Keyed by status name so adding a status does not shift the other counters
+        out.writeInt(STATUSES.length);
+        for (PaymentStatus status : STATUSES) {
+            out.writeUTF(status.name());
+            out.writeLong(counts[status.ordinal()]);
+            out.writeDouble(amounts[status.ordinal()]);
+        }
+        return lastSequence;
+    }
+    
+    @Override
+    public synchronized void restoreSnapshot(DataInput in, long sequence) throws IOException {
+        Arrays.fill(counts, 0);
+        Arrays.fill(amounts, 0);
+        int entries = in.readInt();
+        for (int i = 0; i < entries; i++) {
+            PaymentStatus status = PaymentStatus.valueOf(in.readUTF());
+            counts[status.ordinal()] = in.readLong();
+            amounts[status.ordinal()] = in.readDouble();
+        }
+        lastSequence = sequence;
+    }
+}
@@ -0,0 +1,245 @@
+package com.ecommerce.service;
+
+import com.ecommerce.datasource.DataSourceRouting;
+import com.ecommerce.event.PaymentEvent;
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentStatus;
+import com.ecommerce.repository.PaymentRepository;
+import com.ecommerce.scheduler.HierarchicalTimingWheel;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches payments waiting in a non-terminal state (PENDING/PROCESSING, or an order in
+ * REVERSE_APPROVAL_PENDING) and acts when they wait too long: first flag, then
+ * escalate, then - with {@code payments.stuck.auto-expire} - expire with e.g. "Crossed 7 days"
+ * for the configured {@code expire-after} (reversal-pending orders are only escalated, their approval already succeeded).
+ * Auto-expiry is off by default: it writes status changes to payments, and on startup
+ * it would expire every old non-terminal payment at once.
+ * <p>
+ * Each waiting payment holds one timer in a hierarchical timing wheel, registered or
+ * cancelled from payment events, so there is no periodic sweep of the payments table.
+ */
+@Service
+public class StuckPaymentDetector {
+    
+    private static final Logger log = LoggerFactory.getLogger(StuckPaymentDetector.class);
+    
+    public enum Stage {
+        WAITING,
+        FLAGGED,
+        ESCALATED
+    }
+    
+    private final PaymentRepository paymentRepository;
+    private final PaymentService paymentService;
+    private final Duration flagAfter;
+    private final Duration escalateAfter;
+    private final Duration expireAfter;
+    private final String expireMessage;
+    private final boolean autoExpire;
+    private final long tickMillis;
+    
+    private final HierarchicalTimingWheel<Long> wheel;
+    private final Map<Long, Watch> watches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker;
+    
+    public StuckPaymentDetector(PaymentRepository paymentRepository,
+                                PaymentService paymentService,
+                                @Value("${payments.stuck.flag-after:1h}") Duration flagAfter,
+                                @Value("${payments.stuck.escalate-after:24h}") Duration escalateAfter,
+                                @Value("${payments.stuck.expire-after:7d}") Duration expireAfter,
+                                @Value("${payments.stuck.auto-expire:false}") boolean autoExpire,
+                                @Value("${payments.stuck.tick:1s}") Duration tick,
+                                @Value("${payments.stuck.wheel-size:512}") int wheelSize) {
+        this.paymentRepository = paymentRepository;
+        this.paymentService = paymentService;
+        this.flagAfter = flagAfter;
+        this.escalateAfter = escalateAfter;
+        this.expireAfter = expireAfter;
+        this.expireMessage = "Crossed " + describe(expireAfter);
+        this.autoExpire = autoExpire;
+        this.tickMillis = tick.toMillis();
+        this.wheel = new HierarchicalTimingWheel<>(tickMillis, wheelSize, System.currentTimeMillis());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stuck-payment-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // From the primary, so no payment committed before startup is missing
+        List<Object[]> candidates = DataSourceRouting.onPrimary(() -> paymentRepository.findStuckCandidates(
+                List.of(PaymentStatus.PENDING, PaymentStatus.PROCESSING), List.of("REVERSE_APPROVAL_PENDING")));
+        for (Object[] row : candidates) {
+            Instant enteredAt = row[6] != null ? (Instant) row[6] : (Instant) row[5];
+            watch((Long) row[0], (PaymentStatus) row[3], (String) row[4], enteredAt);
+        }
+        log.info("Watching {} non-terminal payments", watches.size());
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPaymentEvent(PaymentEvent event) {
+        Payment payment = event.getPayment();
+        Instant enteredAt = payment.getUpdatedAt() != null ? payment.getUpdatedAt() : payment.getCreatedAt();
+        watch(payment.getId(), payment.getStatus(), payment.getOrderStatus(), enteredAt);
+    }
+    
+    /**
+     * Payments currently flagged or escalated, longest waiting first.
+     */
+    public Map<String, Object> getStuckPayments() {
+        List<Map<String, Object>> stuck = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        watches.forEach((id, watch) -> {
+            if (watch.stage == Stage.WAITING) return;
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("paymentId", id);
+            entry.put("stage", watch.stage.name());
+            entry.put("reason", watch.reversal ? "REVERSE_APPROVAL_PENDING" : watch.status.name());
+            entry.put("waitingHours", Math.round((now - watch.enteredAtMillis) / 36000.0) / 100.0);
+            stuck.add(entry);
+        });
+        stuck.sort(Comparator.comparingDouble(e -> -((Double) e.get("waitingHours"))));
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("watching", watches.size());
+        synchronized (wheel) {
+            result.put("pendingTimers", wheel.size());
+        }
+        result.put("stuck", stuck);
+        return result;
+    }
+    
+    private void watch(Long id, PaymentStatus status, String orderStatus, Instant enteredAt) {
+        boolean reversal = "REVERSE_APPROVAL_PENDING".equals(orderStatus);
+        boolean waiting = status == PaymentStatus.PENDING || status == PaymentStatus.PROCESSING || reversal;
+        
+        synchronized (wheel) {
+            Watch previous = watches.remove(id);
+            if (previous != null && previous.timer != null) {
+                wheel.cancel(previous.timer);
+            }
+            if (!waiting) return;
+            
+            // PENDING -> PROCESSING keeps waiting from the original entry time and keeps its
+            // stage, so an escalated payment is not flagged and escalated again
+            long enteredAtMillis = previous != null
+                    ? previous.enteredAtMillis
+                    : enteredAt.toEpochMilli();
+            Watch watch = new Watch(status, reversal, enteredAtMillis);
+            watches.put(id, watch);
+            schedule(id, watch, previous != null ? previous.stage : Stage.WAITING);
+        }
+    }
+    
+    private void schedule(Long id, Watch watch, Stage stage) {
+        watch.stage = stage;
+        Duration next;
+        switch (stage) {
+            case WAITING:
+                next = flagAfter;
+                break;
+            case FLAGGED:
+                next = escalateAfter;
+                break;
+            default:
+                if (watch.reversal || !autoExpire) {
+                    watch.timer = null;
+                    return;
+                }
+                next = expireAfter;
+        }
+        watch.timer = wheel.schedule(id, watch.enteredAtMillis + next.toMillis());
+    }
+    
+    private void tick() {
+        List<Long> toExpire = new ArrayList<>();
+        try {
+            synchronized (wheel) {
+                wheel.advanceTo(System.currentTimeMillis(), id -> {
+                    Watch watch = watches.get(id);
+                    if (watch == null) return;
+                    switch (watch.stage) {
+                        case WAITING:
+                            schedule(id, watch, Stage.FLAGGED);
+                            break;
+                        case FLAGGED:
+                            log.warn("Escalating payment {} waiting in {} since {}", id,
+                                    watch.reversal ? "REVERSE_APPROVAL_PENDING" : watch.status,
+                                    Instant.ofEpochMilli(watch.enteredAtMillis));
+                            schedule(id, watch, Stage.ESCALATED);
+                            break;
+                        default:
+                            toExpire.add(id);
+                    }
+                });
+            }
+            
+            // Database writes happen outside the wheel lock; the resulting status event
+            // cancels the watch through onPaymentEvent
+            for (Long id : toExpire) {
+                try {
+                    paymentService.updatePaymentStatus(id, PaymentStatus.EXPIRED, expireMessage);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to expire stuck payment {}: {}", id, e.getMessage());
+                    synchronized (wheel) {
+                        Watch watch = watches.remove(id);
+                        if (watch != null && watch.timer != null) wheel.cancel(watch.timer);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the periodic tick
+            log.error("Stuck payment detector tick failed", e);
+        }
+    }
+    
+    // "7 days", "36 hours", "90 minutes"; ISO-8601 for anything finer
+    private static String describe(Duration duration) {
+        if (duration.isZero() || duration.toMillis() % 60_000 != 0) return duration.toString();
+        if (duration.toMinutes() % (24 * 60) == 0) return plural(duration.toDays(), "day");
+        if (duration.toMinutes() % 60 == 0) return plural(duration.toHours(), "hour");
+        return plural(duration.toMinutes(), "minute");
+    }
+    
+    private static String plural(long amount, String unit) {
+        return amount + " " + unit + (amount == 1 ? "" : "s");
+    }
+    
+    private static final class Watch {
+        private final PaymentStatus status;
+        private final boolean reversal;
+        private final long enteredAtMillis;
+        private Stage stage = Stage.WAITING;
+        private HierarchicalTimingWheel.Timer<Long> timer;
+        
+        private Watch(PaymentStatus status, boolean reversal, long enteredAtMillis) {
+            this.status = status;
+            this.reversal = reversal;
+            this.enteredAtMillis = enteredAtMillis;
+        }
+    }
+}
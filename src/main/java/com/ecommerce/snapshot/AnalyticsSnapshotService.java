@@ -0,0 +1,240 @@
+package com.ecommerce.snapshot;
+
+import com.ecommerce.eventlog.PaymentEventLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically saves derived analytics state (statistics counters, funnel
+ * accumulators, ...) to a compact binary snapshot and restores it on startup, so a
+ * restart does not have to rescan the payments table.
+ * <p>
+ * The restore runs once all singletons exist and before the web server starts.
+ * Each participant's section records the event sequence it was taken at; after
+ * loading, the event log is replayed from there to catch up. Participants that
+ * are not restored (snapshots disabled, no snapshot, other layout version, log
+ * compacted past the snapshot) are then rebuilt from the database, also before the
+ * web server starts, so no request sees them empty.
+ * <p>
+ * File layout (big-endian): magic, format version, created-at millis, section count,
+ * then per section: name, layout version, sequence, length and the section bytes.
+ */
+@Service
+public class AnalyticsSnapshotService implements SmartInitializingSingleton {
+    
+    private static final Logger log = LoggerFactory.getLogger(AnalyticsSnapshotService.class);
+    
+    private static final int MAGIC = 0x50333630; // "P360"
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_NAME = "analytics.snapshot";
+    
+    private final List<SnapshotParticipant> participants;
+    private final PaymentEventLog eventLog;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Path file;
+    private final Duration interval;
+    
+    private ScheduledExecutorService scheduler;
+    private volatile Map<String, Object> lastSnapshot = Map.of();
+    private volatile Map<String, Object> lastRestore = Map.of();
+    
+    public AnalyticsSnapshotService(List<SnapshotParticipant> participants,
+                                    PaymentEventLog eventLog,
+                                    ObjectMapper objectMapper,
+                                    @Value("${payments.snapshot.enabled:false}") boolean enabled,
+                                    @Value("${payments.snapshot.dir:data/snapshots}") String directory,
+                                    @Value("${payments.snapshot.interval:5m}") Duration interval) {
+        this.participants = participants;
+        this.eventLog = eventLog;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.file = Paths.get(directory).resolve(FILE_NAME);
+        this.interval = interval;
+    }
+    
+    @Override
+    public void afterSingletonsInstantiated() {
+        Set<SnapshotParticipant> restored = restoreIfPossible();
+        for (SnapshotParticipant participant : participants) {
+            if (!restored.contains(participant)) participant.rebuild();
+        }
+    }
+    
+    private Set<SnapshotParticipant> restoreIfPossible() {
+        if (!enabled) return Set.of();
+        if (!eventLog.isEnabled()) {
+            log.warn("Analytics snapshots need payments.event-log.enabled to catch up after a restore; not restoring");
+            return Set.of();
+        }
+        if (!Files.exists(file)) return Set.of();
+        
+        long started = System.nanoTime();
+        Set<SnapshotParticipant> restored = Set.of();
+        try {
+            restored = restore();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not restore analytics snapshot {}, rebuilding from the database", file, e);
+        }
+        Map<String, Object> restore = new LinkedHashMap<>(lastRestore);
+        restore.put("durationMs", (System.nanoTime() - started) / 1_000_000);
+        lastRestore = restore;
+        return restored;
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "analytics-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::snapshotQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        snapshotQuietly();
+    }
+    
+    /**
+     * Writes a snapshot of every participant to a temporary file and moves it over
+     * the previous one, so a crash mid-write leaves the old snapshot intact.
+     */
+    public synchronized Map<String, Object> snapshot() throws IOException {
+        long started = System.nanoTime();
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+        
+        Map<String, Object> sections = new LinkedHashMap<>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(participants.size());
+            for (SnapshotParticipant participant : participants) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                long sequence = participant.writeSnapshot(new DataOutputStream(bytes));
+                out.writeUTF(participant.getSnapshotSection());
+                out.writeInt(participant.getSnapshotVersion());
+                out.writeLong(sequence);
+                out.writeInt(bytes.size());
+                bytes.writeTo(out);
+                sections.put(participant.getSnapshotSection(), Map.of("sequence", sequence, "bytes", bytes.size()));
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("file", file.toAbsolutePath().toString());
+        result.put("bytes", Files.size(file));
+        result.put("sections", sections);
+        result.put("durationMs", (System.nanoTime() - started) / 1_000_000);
+        result.put("takenAt", Instant.now().toString());
+        lastSnapshot = result;
+        return result;
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("interval", interval.toString());
+        stats.put("lastSnapshot", lastSnapshot);
+        stats.put("lastRestore", lastRestore);
+        return stats;
+    }
+    
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to write analytics snapshot {}", file, e);
+        }
+    }
+    
+    private Set<SnapshotParticipant> restore() throws IOException {
+        Map<String, SnapshotParticipant> byName = new HashMap<>();
+        participants.forEach(p -> byName.put(p.getSnapshotSection(), p));
+        
+        List<SnapshotParticipant> restored = new ArrayList<>();
+        long replayFrom = Long.MAX_VALUE;
+        Map<String, Object> sections = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not an analytics snapshot");
+            int formatVersion = in.readInt();
+            if (formatVersion != FORMAT_VERSION) throw new IOException("Unsupported snapshot format " + formatVersion);
+            in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                int version = in.readInt();
+                long sequence = in.readLong();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                
+                SnapshotParticipant participant = byName.get(name);
+                String outcome;
+                if (participant == null) {
+                    outcome = "unknown section";
+                } else if (participant.getSnapshotVersion() != version) {
+                    outcome = "version " + version + " != " + participant.getSnapshotVersion();
+                } else if (!eventLog.canReplayFrom(sequence)) {
+                    outcome = "event log cannot replay from " + sequence;
+                } else {
+                    try {
+                        participant.restoreSnapshot(new DataInputStream(new ByteArrayInputStream(bytes)), sequence);
+                        restored.add(participant);
+                        replayFrom = Math.min(replayFrom, sequence + 1);
+                        outcome = "restored at " + sequence;
+                    } catch (IOException | RuntimeException e) {
+                        // Not marked restored, so the participant rebuilds from the database
+                        log.warn("Could not restore snapshot section {}", name, e);
+                        outcome = "failed: " + e.getMessage();
+                    }
+                }
+                sections.put(name, outcome);
+            }
+        }
+        
+        long replayed = 0;
+        if (!restored.isEmpty()) {
+            long[] delivered = new long[1];
+            eventLog.replay(replayFrom, Integer.MAX_VALUE, record -> {
+                var event = record.toPaymentEvent(objectMapper);
+                for (SnapshotParticipant participant : restored) {
+                    participant.onPaymentEvent(record.getSequence(), event);
+                }
+                delivered[0]++;
+            });
+            replayed = delivered[0];
+        }
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("file", file.toAbsolutePath().toString());
+        result.put("sections", sections);
+        result.put("replayedEvents", replayed);
+        lastRestore = result;
+        log.info("Restored analytics snapshot {}: {}, replayed {} events", file, sections, replayed);
+        return new HashSet<>(restored);
+    }
+}
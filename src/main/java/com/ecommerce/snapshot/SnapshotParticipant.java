@@ -0,0 +1,45 @@
+package com.ecommerce.snapshot;
+
+import com.ecommerce.eventlog.PaymentEventSubscriber;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Derived in-memory state that can be saved to and restored from an analytics
+ * snapshot. The state must be fed from the event log, so that after a restore the
+ * log can be replayed from the sequence the snapshot was taken at.
+ */
+public interface SnapshotParticipant extends PaymentEventSubscriber {
+    
+    /**
+     * Seeds the state from the payments table. Called once before the web server
+     * starts, unless the state was restored from a snapshot; state that starts empty
+     * (e.g. anomaly baselines) keeps this no-op.
+     */
+    default void rebuild() {
+    }
+    
+    /**
+     * Name of this participant's section in the snapshot file.
+     */
+    String getSnapshotSection();
+    
+    /**
+     * Layout version of the section; bump it whenever {@link #writeSnapshot} changes.
+     * Sections written with another version are ignored and the state is rebuilt.
+     */
+    int getSnapshotVersion();
+    
+    /**
+     * Writes the current state and returns the last event sequence it includes.
+     */
+    long writeSnapshot(DataOutput out) throws IOException;
+    
+    /**
+     * Replaces the current state with a section written at {@code sequence}. Events
+     * at or before {@code sequence} must be ignored from then on.
+     */
+    void restoreSnapshot(DataInput in, long sequence) throws IOException;
+}
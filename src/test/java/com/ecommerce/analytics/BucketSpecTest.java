@@ -0,0 +1,127 @@
+package com.ecommerce.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketSpecTest {
+    
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+    
+    @Test
+    void springForwardDayIsOneBucketOf23Hours() {
+        // Midnight 2024-03-09 to midnight 2024-03-12, New York; clocks go 02:00 -> 03:00 on the 10th
+        BucketSpec spec = BucketSpec.of(Instant.parse("2024-03-09T05:00:00Z"), Instant.parse("2024-03-12T04:00:00Z"), "1d", NEW_YORK);
+        
+        assertEquals(3, spec.getBucketCount());
+        assertEquals(ZonedDateTime.of(2024, 3, 10, 0, 0, 0, 0, NEW_YORK), spec.bucketStart(1));
+        assertEquals(ZonedDateTime.of(2024, 3, 11, 0, 0, 0, 0, NEW_YORK), spec.bucketEnd(1));
+        assertEquals(Duration.ofHours(23), Duration.between(spec.bucketStart(1), spec.bucketEnd(1)));
+        assertEquals("2024-03-10", spec.label(1));
+        
+        // Last millisecond of the 10th (EDT) and first of the 11th
+        assertEquals(1, spec.indexOf(Instant.parse("2024-03-11T03:59:59.999Z").toEpochMilli()));
+        assertEquals(2, spec.indexOf(Instant.parse("2024-03-11T04:00:00Z").toEpochMilli()));
+        // Just before and just after the gap
+        assertEquals(1, spec.indexOf(Instant.parse("2024-03-10T06:59:59Z").toEpochMilli()));
+        assertEquals(1, spec.indexOf(Instant.parse("2024-03-10T07:00:00Z").toEpochMilli()));
+    }
+    
+    @Test
+    void fallBackDayIsOneBucketOf25Hours() {
+        // Clocks go 02:00 -> 01:00 on 2024-11-03, so 01:30 happens twice
+        BucketSpec spec = BucketSpec.of(Instant.parse("2024-11-02T04:00:00Z"), Instant.parse("2024-11-05T05:00:00Z"), "1d", NEW_YORK);
+        
+        assertEquals(3, spec.getBucketCount());
+        assertEquals(Duration.ofHours(25), Duration.between(spec.bucketStart(1), spec.bucketEnd(1)));
+        assertEquals(1, spec.indexOf(Instant.parse("2024-11-03T05:30:00Z").toEpochMilli()));
+        assertEquals(1, spec.indexOf(Instant.parse("2024-11-03T06:30:00Z").toEpochMilli()));
+        assertEquals(1, spec.indexOf(Instant.parse("2024-11-04T04:59:59.999Z").toEpochMilli()));
+        assertEquals(2, spec.indexOf(Instant.parse("2024-11-04T05:00:00Z").toEpochMilli()));
+    }
+    
+    @Test
+    void hourlyBucketsAreElapsedTimeAcrossFallBack() {
+        BucketSpec spec = BucketSpec.of(Instant.parse("2024-11-03T04:00:00Z"), Instant.parse("2024-11-03T09:00:00Z"), "1h", NEW_YORK);
+        
+        assertEquals(5, spec.getBucketCount());
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < spec.getBucketCount(); i++) {
+            labels.add(spec.label(i));
+            assertEquals(Duration.ofHours(1), Duration.between(spec.bucketStart(i), spec.bucketEnd(i)));
+        }
+        // The repeated local hour gets a bucket of its own each time
+        assertEquals(List.of("2024-11-03 00:00", "2024-11-03 01:00", "2024-11-03 01:00", "2024-11-03 02:00", "2024-11-03 03:00"), labels);
+        assertEquals(ZoneOffset.ofHours(-4), spec.bucketStart(1).getOffset());
+        assertEquals(ZoneOffset.ofHours(-5), spec.bucketStart(2).getOffset());
+        assertEquals(2, spec.indexOf(Instant.parse("2024-11-03T06:30:00Z").toEpochMilli()));
+    }
+    
+    @Test
+    void monthsFollowTheLocalCalendar() {
+        BucketSpec spec = BucketSpec.of(Instant.parse("2024-01-15T12:00:00Z"), Instant.parse("2024-04-10T00:00:00Z"), "1mo", NEW_YORK);
+        
+        assertEquals(4, spec.getBucketCount());
+        assertEquals(ZonedDateTime.of(2024, 1, 1, 0, 0, 0, 0, NEW_YORK), spec.bucketStart(0));
+        assertEquals("2024-03", spec.label(2));
+        // 23:30 on 31 March in New York is already April in UTC
+        assertEquals(2, spec.indexOf(Instant.parse("2024-04-01T03:30:00Z").toEpochMilli()));
+        assertEquals(3, spec.indexOf(Instant.parse("2024-04-01T04:00:00Z").toEpochMilli()));
+        // The last bucket ends at 'to', not at the end of April
+        assertEquals(Instant.parse("2024-04-10T00:00:00Z"), spec.bucketEnd(3).toInstant());
+    }
+    
+    @Test
+    void weeksStartOnMonday() {
+        // Wednesday 2024-03-06 to Wednesday 2024-03-20, across the spring-forward Sunday
+        BucketSpec spec = BucketSpec.of(Instant.parse("2024-03-06T15:00:00Z"), Instant.parse("2024-03-20T15:00:00Z"), "1w", NEW_YORK);
+        
+        assertEquals(3, spec.getBucketCount());
+        assertEquals("Week of 2024-03-04", spec.label(0));
+        assertEquals("Week of 2024-03-11", spec.label(1));
+        // Sunday 23:59 EDT is still the week of the 4th
+        assertEquals(0, spec.indexOf(Instant.parse("2024-03-11T03:59:00Z").toEpochMilli()));
+        assertEquals(1, spec.indexOf(Instant.parse("2024-03-11T04:00:00Z").toEpochMilli()));
+    }
+    
+    @Test
+    void timestampsOutsideTheRangeHaveNoBucket() {
+        Instant from = Instant.parse("2024-06-01T10:07:00Z");
+        Instant to = Instant.parse("2024-06-01T11:00:00Z");
+        BucketSpec spec = BucketSpec.of(from, to, "15m", ZoneOffset.UTC);
+        
+        // The first bucket starts at 'from' truncated to the minute
+        assertEquals(4, spec.getBucketCount());
+        assertEquals(0, spec.indexOf(from.toEpochMilli()));
+        assertEquals(-1, spec.indexOf(from.minusMillis(60_001).toEpochMilli()));
+        assertEquals(-1, spec.indexOf(to.toEpochMilli()));
+        assertEquals(3, spec.indexOf(to.toEpochMilli() - 1));
+    }
+    
+    @Test
+    void beforeCountsDaysOnTheZonesCalendar() {
+        Instant midnight = Instant.parse("2024-03-11T04:00:00Z");
+        assertEquals(Instant.parse("2024-03-10T05:00:00Z"), BucketSpec.before(midnight, "1d", NEW_YORK));
+        assertEquals(Instant.parse("2024-03-10T04:00:00Z"), BucketSpec.before(midnight, "24h", NEW_YORK));
+        assertEquals(Instant.parse("2024-02-11T05:00:00Z"), BucketSpec.before(midnight, "1mo", NEW_YORK));
+    }
+    
+    @Test
+    void rejectsBadWidthsAndEmptyRanges() {
+        Instant from = Instant.parse("2024-06-01T00:00:00Z");
+        Instant to = from.plusSeconds(3600);
+        assertThrows(IllegalArgumentException.class, () -> BucketSpec.of(from, to, "0m", ZoneOffset.UTC));
+        assertThrows(IllegalArgumentException.class, () -> BucketSpec.of(from, to, "5s", ZoneOffset.UTC));
+        assertThrows(IllegalArgumentException.class, () -> BucketSpec.of(from, to, null, ZoneOffset.UTC));
+        assertThrows(IllegalArgumentException.class, () -> BucketSpec.of(to, from, "1h", ZoneOffset.UTC));
+        assertEquals("1mo", BucketSpec.of(from, to, " 1MO ", ZoneOffset.UTC).getWidth());
+    }
+}
@@ -0,0 +1,97 @@
+package com.ecommerce.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DDSketchTest {
+    
+    private static final double[] QUANTILES = {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 0.999};
+    
+    @Test
+    void quantilesAreWithinTheRelativeAccuracy() {
+        for (double accuracy : new double[]{0.01, 0.02, 0.05}) {
+            DDSketch sketch = new DDSketch(accuracy);
+            List<Double> values = lognormalAmounts(50_000, 42);
+            values.forEach(sketch::add);
+            Collections.sort(values);
+            
+            for (double q : QUANTILES) {
+                double exact = values.get((int) Math.floor(q * (values.size() - 1)));
+                assertEquals(exact, sketch.quantile(q), exact * accuracy * (1 + 1e-9), "accuracy " + accuracy + ", q " + q);
+            }
+        }
+    }
+    
+    @Test
+    void extremesAreExactAndEmptyIsNull() {
+        DDSketch sketch = new DDSketch();
+        assertNull(sketch.quantile(0.5));
+        
+        for (double value : new double[]{12.5, 0.0, 9_999.99, 430.0}) {
+            sketch.add(value);
+        }
+        sketch.add(null);
+        sketch.add(-1.0);
+        sketch.add(Double.NaN);
+        assertEquals(4, sketch.getCount());
+        assertEquals(0.0, sketch.quantile(0));
+        assertEquals(9_999.99, sketch.quantile(1));
+        // Zeros fall in their own bin
+        assertEquals(0.0, sketch.quantile(0.2));
+    }
+    
+    @Test
+    void mergeEqualsSketchOfAllValues() {
+        List<Double> values = lognormalAmounts(20_000, 7);
+        DDSketch all = new DDSketch();
+        DDSketch left = new DDSketch();
+        DDSketch right = new DDSketch();
+        for (int i = 0; i < values.size(); i++) {
+            all.add(values.get(i));
+            (i % 3 == 0 ? left : right).add(values.get(i));
+        }
+        
+        DDSketch merged = left.copy();
+        merged.merge(right);
+        assertEquals(all.getCount(), merged.getCount());
+        for (double q : QUANTILES) {
+            assertEquals(all.quantile(q), merged.quantile(q), "q " + q);
+        }
+        assertThrows(IllegalArgumentException.class, () -> merged.merge(new DDSketch(0.05)));
+    }
+    
+    @Test
+    void roundTripsThroughItsBinaryForm() throws IOException {
+        DDSketch sketch = new DDSketch();
+        lognormalAmounts(1_000, 3).forEach(sketch::add);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sketch.writeTo(new DataOutputStream(bytes));
+        
+        DDSketch restored = DDSketch.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(sketch.getCount(), restored.getCount());
+        for (double q : QUANTILES) {
+            assertEquals(sketch.quantile(q), restored.quantile(q));
+        }
+    }
+    
+    // Payment-like amounts: mostly tens to hundreds, with a long tail
+    private static List<Double> lognormalAmounts(int count, long seed) {
+        Random random = new Random(seed);
+        List<Double> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(Math.round(Math.exp(4 + 1.5 * random.nextGaussian()) * 100.0) / 100.0);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,94 @@
+package com.ecommerce.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+    
+    @Test
+    void estimatesLargeCardinalitiesWithinThreeStandardErrors() {
+        for (int precision : new int[]{10, 12, 14}) {
+            HyperLogLog sketch = new HyperLogLog(precision);
+            int distinct = 200_000;
+            for (int i = 0; i < distinct; i++) {
+                sketch.add("CUST" + i);
+            }
+            // Standard error is 1.04 / sqrt(2^precision)
+            double tolerance = 3 * 1.04 / Math.sqrt(1 << precision);
+            assertEquals(distinct, sketch.cardinality(), distinct * tolerance, "precision " + precision);
+        }
+    }
+    
+    @Test
+    void countsSmallCardinalitiesAlmostExactly() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 100; i++) {
+            sketch.add("user" + i + "@example.com");
+        }
+        assertEquals(100, sketch.cardinality(), 2);
+        assertEquals(0, new HyperLogLog().cardinality());
+    }
+    
+    @Test
+    void ignoresDuplicatesAndNulls() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 1_000; i++) {
+                sketch.add("CUST" + i);
+            }
+            sketch.add(null);
+        }
+        assertEquals(1_000, sketch.cardinality(), 1_000 * 3 * 0.0163);
+    }
+    
+    @Test
+    void mergeEqualsSketchOfTheUnion() {
+        HyperLogLog left = new HyperLogLog();
+        HyperLogLog right = new HyperLogLog();
+        HyperLogLog union = new HyperLogLog();
+        for (int i = 0; i < 60_000; i++) {
+            left.add("CUST" + i);
+            union.add("CUST" + i);
+        }
+        // Overlaps the left half by 20,000 values
+        for (int i = 40_000; i < 100_000; i++) {
+            right.add("CUST" + i);
+            union.add("CUST" + i);
+        }
+        
+        HyperLogLog merged = left.copy();
+        merged.merge(right);
+        assertEquals(union.cardinality(), merged.cardinality());
+        assertEquals(100_000, merged.cardinality(), 100_000 * 3 * 0.0163);
+        // The copy was merged, not the original
+        assertEquals(60_000, left.cardinality(), 60_000 * 3 * 0.0163);
+    }
+    
+    @Test
+    void rejectsMergingDifferentPrecisions() {
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(10).merge(new HyperLogLog(12)));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(3));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(19));
+    }
+    
+    @Test
+    void roundTripsThroughItsBinaryForm() throws IOException {
+        HyperLogLog sketch = new HyperLogLog(10);
+        for (int i = 0; i < 5_000; i++) {
+            sketch.add("ORD" + i);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sketch.writeTo(new DataOutputStream(bytes));
+        
+        HyperLogLog restored = HyperLogLog.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(10, restored.getPrecision());
+        assertEquals(sketch.cardinality(), restored.cardinality());
+    }
+}
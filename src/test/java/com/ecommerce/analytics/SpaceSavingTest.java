@@ -0,0 +1,142 @@
+package com.ecommerce.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpaceSavingTest {
+    
+    @Test
+    void isExactWhileKeysFitTheCapacity() {
+        SpaceSaving summary = new SpaceSaving(10);
+        summary.add("CUST1", 100);
+        summary.add("CUST2", 40);
+        summary.add("CUST1", 25.5);
+        summary.add("CUST3", 0);
+        summary.add(null, 10);
+        
+        List<Map<String, Object>> top = summary.top(5);
+        assertEquals(2, top.size());
+        assertEntry(top.get(0), "CUST1", 125.5, 0);
+        assertEntry(top.get(1), "CUST2", 40, 0);
+    }
+    
+    @Test
+    void tracksEveryKeyHeavierThanTotalOverCapacity() {
+        int capacity = 20;
+        SpaceSaving summary = new SpaceSaving(capacity);
+        Map<String, Double> exact = new HashMap<>();
+        double total = 0;
+        Random random = new Random(11);
+        for (int i = 0; i < 100_000; i++) {
+            // A few heavy customers among many light ones, interleaved
+            String key = random.nextInt(2) == 0 ? "HEAVY" + random.nextInt(5) : "LIGHT" + random.nextInt(5_000);
+            double weight = 1 + random.nextInt(100);
+            summary.add(key, weight);
+            exact.merge(key, weight, Double::sum);
+            total += weight;
+        }
+        
+        Map<String, Map<String, Object>> reported = byKey(summary.top(capacity));
+        assertEquals(capacity, reported.size());
+        for (Map.Entry<String, Double> entry : exact.entrySet()) {
+            if (entry.getValue() > total / capacity) {
+                assertTrue(reported.containsKey(entry.getKey()), entry.getKey() + " must be tracked");
+            }
+        }
+        assertOverestimatesWithinError(reported, exact);
+        assertTrue(top(summary, 5).stream().allMatch(key -> key.startsWith("HEAVY")));
+    }
+    
+    @Test
+    void topIsHeaviestFirstAndLimitedToK() {
+        SpaceSaving summary = new SpaceSaving(10);
+        for (int i = 1; i <= 8; i++) {
+            summary.add("K" + i, i * 10);
+        }
+        assertEquals(List.of("K8", "K7", "K6"), top(summary, 3));
+        assertTrue(summary.top(0).isEmpty());
+    }
+    
+    @Test
+    void mergeKeepsWeightsOverestimatesWithinError() {
+        int capacity = 15;
+        SpaceSaving first = new SpaceSaving(capacity);
+        SpaceSaving second = new SpaceSaving(capacity);
+        Map<String, Double> exact = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 40_000; i++) {
+            String key = random.nextInt(2) == 0 ? "HEAVY" + random.nextInt(3) : "LIGHT" + random.nextInt(2_000);
+            double weight = 1 + random.nextInt(20);
+            (i % 2 == 0 ? first : second).add(key, weight);
+            exact.merge(key, weight, Double::sum);
+        }
+        
+        SpaceSaving merged = first.copy();
+        merged.merge(second);
+        Map<String, Map<String, Object>> reported = byKey(merged.top(capacity));
+        assertTrue(reported.size() <= capacity);
+        assertOverestimatesWithinError(reported, exact);
+        assertEquals(Set.of("HEAVY0", "HEAVY1", "HEAVY2"), new HashSet<>(top(merged, 3)));
+        
+        assertThrows(IllegalArgumentException.class, () -> merged.merge(new SpaceSaving(capacity + 1)));
+    }
+    
+    @Test
+    void mergingIntoAnEmptySummaryCopiesIt() {
+        SpaceSaving summary = new SpaceSaving(5);
+        summary.add("A", 3);
+        summary.add("B", 7);
+        SpaceSaving empty = new SpaceSaving(5);
+        empty.merge(summary);
+        assertEquals(summary.top(5), empty.top(5));
+    }
+    
+    @Test
+    void roundTripsThroughItsBinaryForm() throws IOException {
+        SpaceSaving summary = new SpaceSaving(3);
+        for (String key : new String[]{"A", "B", "C", "D", "A", "E", "A"}) {
+            summary.add(key, 1);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        summary.writeTo(new DataOutputStream(bytes));
+        
+        SpaceSaving restored = SpaceSaving.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 3);
+        assertEquals(summary.top(3), restored.top(3));
+    }
+    
+    private static void assertOverestimatesWithinError(Map<String, Map<String, Object>> reported, Map<String, Double> exact) {
+        for (Map.Entry<String, Map<String, Object>> entry : reported.entrySet()) {
+            double value = (Double) entry.getValue().get("value");
+            double error = (Double) entry.getValue().get("error");
+            double actual = exact.getOrDefault(entry.getKey(), 0.0);
+            assertTrue(value >= actual - 1e-6, entry.getKey() + " underestimated");
+            assertTrue(value - error <= actual + 1e-6, entry.getKey() + " over by more than its error");
+        }
+    }
+    
+    private static void assertEntry(Map<String, Object> entry, String key, double value, double error) {
+        assertEquals(key, entry.get("key"));
+        assertEquals(value, (Double) entry.get("value"), 1e-9);
+        assertEquals(error, (Double) entry.get("error"), 1e-9);
+    }
+    
+    private static Map<String, Map<String, Object>> byKey(List<Map<String, Object>> entries) {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        entries.forEach(entry -> result.put((String) entry.get("key"), entry));
+        return result;
+    }
+    
+    private static List<String> top(SpaceSaving summary, int k) {
+        List<String> keys = new ArrayList<>();
+        summary.top(k).forEach(entry -> keys.add((String) entry.get("key")));
+        return keys;
+    }
+}
@@ -0,0 +1,232 @@
+package com.ecommerce.eventlog;
+
+import com.ecommerce.event.PaymentEvent;
+import com.ecommerce.model.Payment;
+import com.ecommerce.model.PaymentMethod;
+import com.ecommerce.model.PaymentStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentEventLogTest {
+    
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final List<PaymentEventLog> opened = new ArrayList<>();
+    
+    @TempDir
+    Path directory;
+    
+    @AfterEach
+    void closeLogs() throws IOException {
+        for (PaymentEventLog log : opened) {
+            log.close();
+        }
+    }
+    
+    @Test
+    void replaysEveryRecordInOrderAfterReopening() throws IOException {
+        PaymentEventLog log = open(DataSize.ofMegabytes(1));
+        Instant createdAt = Instant.parse("2024-11-03T05:30:00.123Z");
+        assertEquals(1, log.append(PaymentEvent.created(payment(1, createdAt))));
+        assertEquals(2, log.append(PaymentEvent.created(payment(2, createdAt))));
+        assertEquals(3, log.append(PaymentEvent.statusChanged(payment(1, createdAt), PaymentStatus.PENDING)));
+        log.close();
+        
+        PaymentEventLog reopened = open(DataSize.ofMegabytes(1));
+        assertEquals(3, reopened.lastSequence());
+        List<EventLogRecord> records = reopened.read(1, 100);
+        assertEquals(List.of(1L, 2L, 3L), sequences(records));
+        assertEquals(List.of(1L, 2L, 1L), records.stream().map(EventLogRecord::getPaymentId).collect(Collectors.toList()));
+        assertEquals(PaymentEvent.Type.STATUS_CHANGED, records.get(2).getType());
+        assertEquals(PaymentStatus.PENDING, records.get(2).getPreviousStatus());
+        assertNull(records.get(0).getPreviousStatus());
+        
+        // Payload timestamps are instants, independent of the server's zone
+        Payment replayed = records.get(0).payment(objectMapper);
+        assertEquals(createdAt, replayed.getCreatedAt());
+        assertEquals("TXN1", replayed.getTransactionId());
+        
+        assertEquals(List.of(2L), sequences(reopened.read(2, 1)));
+        assertTrue(reopened.read(4, 10).isEmpty());
+        assertEquals(4, reopened.append(PaymentEvent.created(payment(3, createdAt))));
+    }
+    
+    @Test
+    void recoversFromATruncatedTail() throws IOException {
+        PaymentEventLog log = open(DataSize.ofMegabytes(1));
+        for (long id = 1; id <= 3; id++) {
+            log.append(PaymentEvent.created(payment(id, Instant.now())));
+        }
+        log.close();
+        
+        // The process died while the third record was being written
+        Path segment = onlySegment();
+        List<Integer> offsets = recordOffsets(segment);
+        assertEquals(3, offsets.size());
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(offsets.get(2) + 20);
+        }
+        
+        PaymentEventLog reopened = open(DataSize.ofMegabytes(1));
+        assertEquals(2, reopened.lastSequence());
+        assertEquals(List.of(1L, 2L), sequences(reopened.read(1, 100)));
+        
+        // The next append reuses the lost sequence and overwrites the torn bytes
+        assertEquals(3, reopened.append(PaymentEvent.created(payment(30, Instant.now()))));
+        reopened.close();
+        List<EventLogRecord> records = open(DataSize.ofMegabytes(1)).read(1, 100);
+        assertEquals(List.of(1L, 2L, 3L), sequences(records));
+        assertEquals(30, records.get(2).getPaymentId());
+    }
+    
+    @Test
+    void stopsAtARecordWithABadChecksum() throws IOException {
+        PaymentEventLog log = open(DataSize.ofMegabytes(1));
+        for (long id = 1; id <= 3; id++) {
+            log.append(PaymentEvent.created(payment(id, Instant.now())));
+        }
+        log.close();
+        
+        // A torn write: the length made it to disk but part of the body did not
+        Path segment = onlySegment();
+        int second = recordOffsets(segment).get(1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer body = ByteBuffer.allocate(1);
+            channel.read(body, second + 12);
+            body.put(0, (byte) ~body.get(0));
+            body.rewind();
+            channel.write(body, second + 12);
+        }
+        
+        PaymentEventLog reopened = open(DataSize.ofMegabytes(1));
+        assertEquals(1, reopened.lastSequence());
+        assertEquals(List.of(1L), sequences(reopened.read(1, 100)));
+    }
+    
+    @Test
+    void rollsSegmentsAndReplaysAcrossThem() throws IOException {
+        PaymentEventLog log = open(DataSize.ofKilobytes(4));
+        for (long id = 1; id <= 60; id++) {
+            log.append(PaymentEvent.created(payment(id, Instant.now())));
+        }
+        log.close();
+        assertTrue(segments().size() > 3, "expected several segments");
+        
+        PaymentEventLog reopened = open(DataSize.ofKilobytes(4));
+        assertEquals(60, reopened.lastSequence());
+        List<EventLogRecord> records = reopened.read(1, 1_000);
+        assertEquals(60, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i + 1, records.get(i).getSequence());
+        }
+        // Resuming mid-way starts in the right segment
+        assertEquals(List.of(37L, 38L, 39L), sequences(reopened.read(37, 3)));
+        List<Long> continued = new ArrayList<>();
+        assertEquals(61, reopened.replay(55, 100, record -> continued.add(record.getSequence())));
+        assertEquals(List.of(55L, 56L, 57L, 58L, 59L, 60L), continued);
+    }
+    
+    @Test
+    void deliversEventsToSubscribersInSequenceOrder() throws Exception {
+        List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+        List<Long> paymentIds = Collections.synchronizedList(new ArrayList<>());
+        PaymentEventSubscriber subscriber = (sequence, event) -> {
+            delivered.add(sequence);
+            paymentIds.add(event.getPayment().getId());
+        };
+        PaymentEventLog log = open(DataSize.ofMegabytes(1), subscriber);
+        for (long id = 1; id <= 20; id++) {
+            log.onPaymentEvent(PaymentEvent.created(payment(id, Instant.now())));
+        }
+        
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (log.deliveredThrough() < 20 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(20, log.deliveredThrough());
+        List<Long> expected = new ArrayList<>();
+        for (long i = 1; i <= 20; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, delivered);
+        assertEquals(expected, paymentIds);
+        assertEquals(20, log.read(1, 100).size());
+    }
+    
+    private PaymentEventLog open(DataSize segmentSize, PaymentEventSubscriber... subscribers) throws IOException {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        for (int i = 0; i < subscribers.length; i++) {
+            beans.addBean("subscriber" + i, subscribers[i]);
+        }
+        PaymentEventLog log = new PaymentEventLog(objectMapper, beans.getBeanProvider(PaymentEventSubscriber.class),
+                true, directory.toString(), segmentSize, false, Duration.ofDays(7), 1_000);
+        log.open();
+        opened.add(log);
+        return log;
+    }
+    
+    private static Payment payment(long id, Instant createdAt) {
+        return Payment.builder()
+                .id(id)
+                .transactionId("TXN" + id)
+                .paymentReferenceId("REF" + id)
+                .customerId("CUST" + id)
+                .customerName("Customer " + id)
+                .customerEmail("customer" + id + "@example.com")
+                .amount(10.0 * id)
+                .currency("USD")
+                .status(PaymentStatus.SUCCESS)
+                .paymentMethod(PaymentMethod.CREDIT_CARD)
+                .orderType("Regular")
+                .createdAt(createdAt)
+                .updatedAt(createdAt)
+                .build();
+    }
+    
+    private static List<Long> sequences(List<EventLogRecord> records) {
+        return records.stream().map(EventLogRecord::getSequence).collect(Collectors.toList());
+    }
+    
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+    
+    private Path onlySegment() throws IOException {
+        List<Path> segments = segments();
+        assertEquals(1, segments.size());
+        return segments.get(0);
+    }
+    
+    // Start of each record: [int length][int crc32][body], ended by a zero length
+    private static List<Integer> recordOffsets(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        List<Integer> offsets = new ArrayList<>();
+        int position = 0;
+        while (position + 4 <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            if (length == 0) break;
+            offsets.add(position);
+            position += 8 + length;
+        }
+        return offsets;
+    }
+}
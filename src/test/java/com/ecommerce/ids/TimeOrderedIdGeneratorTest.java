@@ -0,0 +1,129 @@
+package com.ecommerce.ids;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeOrderedIdGeneratorTest {
+    
+    @Test
+    void idsStrictlyIncreaseEvenPastTheSequenceLimit() {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(1);
+        long previous = generator.nextId();
+        // Far more than 4096 per millisecond, so the sequence overflows into the next one
+        for (int i = 0; i < 1_000_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous, "id went backwards or repeated");
+            previous = id;
+        }
+    }
+    
+    @Test
+    void idsAreUniqueAndIncreasingPerThreadAcrossThreads() throws Exception {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(7);
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                workers.add(executor.submit(() -> {
+                    long previous = -1;
+                    for (int i = 0; i < 100_000; i++) {
+                        long id = generator.nextId();
+                        assertTrue(id > previous);
+                        assertTrue(seen.add(id), "duplicate id " + id);
+                        previous = id;
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(800_000, seen.size());
+    }
+    
+    @Test
+    void stringOrderIsTimeOrder() {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(3);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(generator.next("TXN"));
+        }
+        List<String> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        assertEquals(ids, sorted);
+        assertTrue(ids.stream().allMatch(id -> id.length() == "TXN".length() + 13));
+    }
+    
+    @Test
+    void timestampIsEncodedInTheId() {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(0);
+        Instant before = Instant.ofEpochMilli(System.currentTimeMillis());
+        String id = generator.next("PAY");
+        Instant after = Instant.ofEpochMilli(System.currentTimeMillis());
+        
+        Instant stamped = TimeOrderedIdGenerator.timestampOf(id);
+        assertFalse(stamped.isBefore(before));
+        assertFalse(stamped.isAfter(after));
+        
+        Instant past = Instant.parse("2024-06-30T12:34:56.789Z");
+        assertEquals(past, TimeOrderedIdGenerator.timestampOf(generator.at("PAY", past)));
+        assertThrows(IllegalArgumentException.class, () -> TimeOrderedIdGenerator.timestampOf("short"));
+        assertThrows(IllegalArgumentException.class, () -> TimeOrderedIdGenerator.timestampOf("PAY0000000000U00"));
+    }
+    
+    @Test
+    void lowerBoundsMapATimeRangeToAnIdRange() {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(TimeOrderedIdGenerator.MAX_NODE_ID);
+        Instant from = Instant.parse("2025-02-01T00:00:00Z");
+        Instant to = from.plusSeconds(3600);
+        String lower = TimeOrderedIdGenerator.lowerBound("ORD", from);
+        String upper = TimeOrderedIdGenerator.lowerBound("ORD", to);
+        
+        assertTrue(generator.at("ORD", from).compareTo(lower) >= 0);
+        assertTrue(generator.at("ORD", to.minusMillis(1)).compareTo(upper) < 0);
+        assertTrue(generator.at("ORD", to).compareTo(upper) >= 0);
+        assertTrue(generator.at("ORD", from.minusMillis(1)).compareTo(lower) < 0);
+    }
+    
+    @Test
+    void backfilledIdsAtOneInstantAreDistinct() {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(2);
+        TimeOrderedIdGenerator other = new TimeOrderedIdGenerator(3);
+        Instant at = Instant.parse("2024-12-24T18:00:00Z");
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 4_096; i++) {
+            assertTrue(ids.add(generator.at("TXN", at)));
+        }
+        // A different node never collides, whatever its sequence
+        assertTrue(ids.add(other.at("TXN", at)));
+    }
+    
+    @Test
+    void encodingRoundTrips() {
+        Random random = new Random(9);
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong() >>> 1;
+            assertEquals(value, TimeOrderedIdGenerator.decode(TimeOrderedIdGenerator.encode(value)));
+        }
+        assertEquals("0000000000000", TimeOrderedIdGenerator.encode(0));
+        // Crockford base32 decodes case-insensitively
+        assertEquals(TimeOrderedIdGenerator.decode("00000000000ZZ"), TimeOrderedIdGenerator.decode("00000000000zz"));
+    }
+    
+    @Test
+    void rejectsNodeIdsOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIdGenerator(-1));
+        assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIdGenerator(TimeOrderedIdGenerator.MAX_NODE_ID + 1));
+    }
+}
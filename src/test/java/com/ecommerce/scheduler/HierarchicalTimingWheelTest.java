@@ -0,0 +1,120 @@
+package com.ecommerce.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchicalTimingWheelTest {
+    
+    private static final long TICK = 10;
+    private static final int WHEEL_SIZE = 8;
+    
+    @Test
+    void timersFireOnTheFirstTickAtOrAfterTheirDeadline() {
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, 0);
+        Random random = new Random(1);
+        long[] deadlines = new long[2_000];
+        long[] firedAt = new long[deadlines.length];
+        for (int i = 0; i < deadlines.length; i++) {
+            // Spread over four levels: 80ms, 640ms, 5.12s, 40.96s
+            deadlines[i] = 1 + random.nextInt(40_000);
+            wheel.schedule(i, deadlines[i]);
+        }
+        
+        for (long now = TICK; now <= 40_000; now += TICK) {
+            long tick = now;
+            wheel.advanceTo(now, i -> {
+                assertEquals(0, firedAt[i], "fired twice");
+                firedAt[i] = tick;
+            });
+        }
+        
+        assertEquals(0, wheel.size());
+        for (int i = 0; i < deadlines.length; i++) {
+            long expected = (deadlines[i] + TICK - 1) / TICK * TICK;
+            assertEquals(expected, firedAt[i], "deadline " + deadlines[i]);
+        }
+    }
+    
+    @Test
+    void farTimersCascadeDownAndFireOnTime() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, 0);
+        // Level 0 covers 80ms; this one starts three levels up
+        long deadline = 7_777;
+        wheel.schedule("far", deadline);
+        
+        List<String> fired = new ArrayList<>();
+        wheel.advanceTo(7_770, fired::add);
+        assertTrue(fired.isEmpty(), "fired before its deadline");
+        assertEquals(1, wheel.size());
+        wheel.advanceTo(7_779, fired::add);
+        assertTrue(fired.isEmpty(), "fired before the next tick");
+        wheel.advanceTo(7_780, fired::add);
+        assertEquals(List.of("far"), fired);
+        assertEquals(0, wheel.size());
+    }
+    
+    @Test
+    void oneLargeAdvanceFiresEverythingDue() {
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, 1_000);
+        for (int i = 1; i <= 100; i++) {
+            wheel.schedule(i, 1_000 + i * 97L);
+        }
+        
+        List<Integer> fired = new ArrayList<>();
+        wheel.advanceTo(1_000 + 50 * 97, fired::add);
+        assertEquals(50, fired.size());
+        // In deadline order, since each deadline has a later tick than the one before
+        for (int i = 0; i < fired.size(); i++) {
+            assertEquals(i + 1, fired.get(i));
+        }
+        assertEquals(50, wheel.size());
+    }
+    
+    @Test
+    void pastDeadlinesFireOnTheNextTick() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, 5_000);
+        wheel.schedule("late", 1_000);
+        List<String> fired = new ArrayList<>();
+        wheel.advanceTo(5_009, fired::add);
+        assertTrue(fired.isEmpty());
+        wheel.advanceTo(5_010, fired::add);
+        assertEquals(List.of("late"), fired);
+    }
+    
+    @Test
+    void cancelledTimersNeverFire() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, 0);
+        HierarchicalTimingWheel.Timer<String> near = wheel.schedule("near", 30);
+        HierarchicalTimingWheel.Timer<String> far = wheel.schedule("far", 3_000);
+        wheel.schedule("kept", 3_000);
+        assertEquals(3, wheel.size());
+        
+        wheel.cancel(near);
+        wheel.cancel(far);
+        wheel.cancel(far);
+        assertFalse(near.isPending());
+        assertFalse(far.isPending());
+        assertEquals(1, wheel.size());
+        
+        List<String> fired = new ArrayList<>();
+        wheel.advanceTo(10_000, fired::add);
+        assertEquals(List.of("kept"), fired);
+        assertEquals(0, wheel.size());
+    }
+    
+    @Test
+    void clockStartsOnATickBoundary() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, 1_005);
+        assertEquals(1_000, wheel.currentTime());
+        wheel.advanceTo(1_029, s -> { });
+        assertEquals(1_020, wheel.currentTime());
+        
+        assertThrows(IllegalArgumentException.class, () -> new HierarchicalTimingWheel<>(0, WHEEL_SIZE, 0));
+        assertThrows(IllegalArgumentException.class, () -> new HierarchicalTimingWheel<>(TICK, 1, 0));
+    }
+}